@@ -0,0 +1,164 @@
+package org.eclipse.egit.bc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.egit.bc.core.ChangedPathIndex;
+import org.eclipse.egit.bc.core.PreviousCommitFinder;
+import org.eclipse.egit.bc.core.PreviousCommitFinder.PreviousCommit;
+import org.eclipse.egit.bc.core.PreviousPathResolver;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * History lookups on synthetic repositories: the revision of a file in the
+ * tree of HEAD as done for "Compare with HEAD", the previous commits and the
+ * previous path of a file as done for "Compare with Previous".
+ * <p>
+ * Lookups with changed-path filters use a sidecar index built during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HistoryBenchmark {
+
+	/** Shape of the repository */
+	@Param({ "linear", "merges", "renames" })
+	public String shape;
+
+	/** Number of commits of linear and rename histories */
+	@Param({ "5000" })
+	public int depth;
+
+	/** Number of files */
+	@Param({ "500" })
+	public int width;
+
+	private Repository repository;
+
+	private File sidecarDirectory;
+
+	private ChangedPathIndex index;
+
+	private RevCommit headCommit;
+
+	private RevCommit parentCommit;
+
+	/**
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File directory = File.createTempFile("history", ".git"); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		if ("merges".equals(shape)) //$NON-NLS-1$
+			repository = SyntheticRepository.merges(directory, depth / 20,
+					6, width);
+		else if ("renames".equals(shape)) //$NON-NLS-1$
+			repository = SyntheticRepository.renames(directory, depth, width);
+		else
+			repository = SyntheticRepository.linear(directory, depth, width);
+
+		sidecarDirectory = File.createTempFile("paths", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		sidecarDirectory.delete();
+		index = new ChangedPathIndex(repository, sidecarDirectory);
+		index.update(repository, NullProgressMonitor.INSTANCE);
+		index.refresh();
+
+		ObjectId headId = repository.resolve("HEAD"); //$NON-NLS-1$
+		RevWalk rw = new RevWalk(repository);
+		try {
+			headCommit = rw.parseCommit(headId);
+			parentCommit = rw.parseCommit(headCommit.getParent(0));
+		} finally {
+			rw.release();
+		}
+	}
+
+	/**
+	 * Cleans up.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticRepository.delete(repository);
+		File[] files = sidecarDirectory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		sidecarDirectory.delete();
+	}
+
+	/**
+	 * @return the revision of the target in HEAD
+	 * @throws IOException
+	 */
+	@Benchmark
+	public Revision headRevision() throws IOException {
+		RevisionResolver resolver = new RevisionResolver(repository);
+		try {
+			return resolver.resolve(SyntheticRepository.TARGET, headCommit);
+		} finally {
+			resolver.release();
+		}
+	}
+
+	/**
+	 * @return the previous commits of the target
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<PreviousCommit> previousCommits() throws IOException {
+		return PreviousCommitFinder.find(repository, null,
+				SyntheticRepository.TARGET);
+	}
+
+	/**
+	 * @return the previous commits of the target
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<PreviousCommit> previousCommitsWithFilters()
+			throws IOException {
+		return PreviousCommitFinder.find(repository, index,
+				SyntheticRepository.TARGET);
+	}
+
+	/**
+	 * @return the path of the target in the parent of HEAD
+	 * @throws IOException
+	 */
+	@Benchmark
+	public String previousPath() throws IOException {
+		ObjectReader reader = repository.newObjectReader();
+		try {
+			return PreviousPathResolver.getPreviousPath(repository, reader,
+					headCommit, parentCommit, SyntheticRepository.TARGET);
+		} finally {
+			reader.release();
+		}
+	}
+}
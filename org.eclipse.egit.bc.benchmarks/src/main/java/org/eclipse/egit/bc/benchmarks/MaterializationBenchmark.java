@@ -0,0 +1,101 @@
+package org.eclipse.egit.bc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.egit.bc.core.BlobWriter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing a revision to disk, the work done by
+ * <code>BeyondCompareUtil.storeVersionTempFile</code> on a cache miss: raw
+ * bytes through {@link BlobWriter}, or transcoded to another encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MaterializationBenchmark {
+
+	/** Blobs above this size are streamed, as with the default preference */
+	private static final long STREAM_THRESHOLD = 1024 * 1024;
+
+	/** Blob size in bytes */
+	@Param({ "4096", "1048576", "33554432" })
+	public int size;
+
+	/** Whether the blob is text or random binary content */
+	@Param({ "text", "binary" })
+	public String content;
+
+	private Repository repository;
+
+	private ObjectId blobId;
+
+	private File target;
+
+	/**
+	 * @throws IOException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File directory = File.createTempFile("materialization", ".git"); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		if ("binary".equals(content)) //$NON-NLS-1$
+			repository = SyntheticRepository.binary(directory, size);
+		else
+			// lines of the synthetic text are about 55 bytes long
+			repository = SyntheticRepository.text(directory, size / 55 + 1);
+		blobId = repository.resolve("HEAD:" + SyntheticRepository.TARGET); //$NON-NLS-1$
+		target = File.createTempFile("revision", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Cleans up.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		target.delete();
+		SyntheticRepository.delete(repository);
+	}
+
+	/**
+	 * @return bytes written
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long writeRaw() throws IOException {
+		ObjectLoader loader = repository.open(blobId);
+		return BlobWriter.write(loader, target, STREAM_THRESHOLD, null);
+	}
+
+	/**
+	 * @return length of the file written
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long writeTranscoded() throws IOException {
+		ObjectLoader loader = repository.open(blobId);
+		BlobWriter.transcode(loader.openStream(), "ISO-8859-1", "UTF-8", //$NON-NLS-1$ //$NON-NLS-2$
+				target, null);
+		return target.length();
+	}
+}
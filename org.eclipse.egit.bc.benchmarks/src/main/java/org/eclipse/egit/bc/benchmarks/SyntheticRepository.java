@@ -0,0 +1,324 @@
+package org.eclipse.egit.bc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * Generates bare repositories of a given shape directly through the object
+ * inserter, without a working tree.
+ * <p>
+ * Every shape contains the file {@link #TARGET}, which is changed only in
+ * the first two commits, so that looking up its last change has to walk
+ * through the whole history. In the rename shape it is changed in the last
+ * two commits instead, the last one renaming it.
+ */
+public class SyntheticRepository {
+
+	/** Path of the file whose history is looked up */
+	public static final String TARGET = "src/main/target/Target.java"; //$NON-NLS-1$
+
+	/** Path {@link #TARGET} had before it was renamed */
+	public static final String RENAMED_TARGET = "src/old/target/OldTarget.java"; //$NON-NLS-1$
+
+	private static final String[] WORDS = { "repository", "commit", "tree", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			"blob", "walk", "filter", "index", "merge", "parent", "revision", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+			"compare", "path", "rename", "stage", "object", "reader" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	private final Repository repository;
+
+	private final ObjectInserter inserter;
+
+	private final Random random = new Random(42);
+
+	private TreeMap<String, ObjectId> files = new TreeMap<String, ObjectId>();
+
+	private ObjectId head;
+
+	private int time = 1000000000;
+
+	private SyntheticRepository(Repository repository) {
+		this.repository = repository;
+		this.inserter = repository.newObjectInserter();
+	}
+
+	/**
+	 * Deep linear history: every commit changes one of <code>width</code>
+	 * files.
+	 *
+	 * @param directory
+	 *            git directory to create
+	 * @param depth
+	 *            number of commits
+	 * @param width
+	 *            number of files
+	 * @return the repository
+	 * @throws IOException
+	 */
+	public static Repository linear(File directory, int depth, int width)
+			throws IOException {
+		SyntheticRepository r = new SyntheticRepository(create(directory));
+		r.putText(TARGET, 200);
+		for (int i = 0; i < width; i++)
+			r.putText(filePath(i), 50);
+		r.commit(r.head);
+		r.modify(TARGET);
+		r.commit(r.head);
+		for (int i = 2; i < depth; i++) {
+			r.modify(filePath(r.random.nextInt(width)));
+			r.commit(r.head);
+		}
+		return r.finish();
+	}
+
+	/**
+	 * Wide merges: <code>rounds</code> times, <code>branches</code> side
+	 * branches of a few commits each are merged in a single octopus merge.
+	 *
+	 * @param directory
+	 *            git directory to create
+	 * @param rounds
+	 *            number of merges
+	 * @param branches
+	 *            number of branches merged at a time
+	 * @param width
+	 *            number of files
+	 * @return the repository
+	 * @throws IOException
+	 */
+	public static Repository merges(File directory, int rounds, int branches,
+			int width) throws IOException {
+		SyntheticRepository r = new SyntheticRepository(create(directory));
+		r.putText(TARGET, 200);
+		for (int i = 0; i < width; i++)
+			r.putText(filePath(i), 50);
+		r.commit(r.head);
+		r.modify(TARGET);
+		r.commit(r.head);
+		for (int round = 0; round < rounds; round++) {
+			ObjectId base = r.head;
+			TreeMap<String, ObjectId> merged = new TreeMap<String, ObjectId>(
+					r.files);
+			List<ObjectId> parents = new ArrayList<ObjectId>();
+			parents.add(base);
+			for (int b = 0; b < branches; b++) {
+				r.files = new TreeMap<String, ObjectId>(merged);
+				ObjectId tip = base;
+				for (int c = 0; c < 3; c++) {
+					// each branch works on files of its own
+					String path = filePath((b * 7 + c + round) % width);
+					r.modify(path);
+					merged.put(path, r.files.get(path));
+					tip = r.commit(tip);
+				}
+				parents.add(tip);
+			}
+			r.files = merged;
+			r.commit(parents.toArray(new ObjectId[parents.size()]));
+		}
+		return r.finish();
+	}
+
+	/**
+	 * Heavy renames: every commit renames a few files and modifies them
+	 * slightly, and adds and deletes others. {@link #TARGET} is renamed from
+	 * {@link #RENAMED_TARGET} in the last commit.
+	 *
+	 * @param directory
+	 *            git directory to create
+	 * @param depth
+	 *            number of commits
+	 * @param width
+	 *            number of files
+	 * @return the repository
+	 * @throws IOException
+	 */
+	public static Repository renames(File directory, int depth, int width)
+			throws IOException {
+		SyntheticRepository r = new SyntheticRepository(create(directory));
+		r.putText(RENAMED_TARGET, 200);
+		for (int i = 0; i < width; i++)
+			r.putText(filePath(i), 50);
+		r.commit(r.head);
+		int next = width;
+		for (int i = 1; i < depth - 2; i++) {
+			List<String> paths = new ArrayList<String>(r.files.keySet());
+			for (int j = 0; j < 5; j++) {
+				String from = paths.get(r.random.nextInt(paths.size()));
+				if (from.equals(RENAMED_TARGET) || !r.files.containsKey(from))
+					continue;
+				String to = filePath(next++);
+				r.files.put(to, r.files.remove(from));
+				r.modify(to);
+			}
+			String removed = paths.get(r.random.nextInt(paths.size()));
+			if (!removed.equals(RENAMED_TARGET))
+				r.files.remove(removed);
+			r.putText(filePath(next++), 50);
+			r.commit(r.head);
+		}
+		r.modify(RENAMED_TARGET);
+		r.commit(r.head);
+		r.files.put(TARGET, r.files.remove(RENAMED_TARGET));
+		r.modify(TARGET);
+		for (int j = 0; j < 50; j++) {
+			// competing deletes and adds in the same commit
+			String from = r.files.firstKey().equals(TARGET) ? r.files
+					.lastKey() : r.files.firstKey();
+			r.files.remove(from);
+			r.putText(filePath(next++), 50);
+		}
+		r.commit(r.head);
+		return r.finish();
+	}
+
+	/**
+	 * A single commit containing a binary blob.
+	 *
+	 * @param directory
+	 *            git directory to create
+	 * @param size
+	 *            size of the blob in bytes
+	 * @return the repository
+	 * @throws IOException
+	 */
+	public static Repository binary(File directory, int size)
+			throws IOException {
+		SyntheticRepository r = new SyntheticRepository(create(directory));
+		byte[] content = new byte[size];
+		r.random.nextBytes(content);
+		r.files.put(TARGET, r.inserter.insert(Constants.OBJ_BLOB, content));
+		r.commit(r.head);
+		return r.finish();
+	}
+
+	/**
+	 * A single commit containing a text blob.
+	 *
+	 * @param directory
+	 *            git directory to create
+	 * @param lines
+	 *            number of lines of the blob
+	 * @return the repository
+	 * @throws IOException
+	 */
+	public static Repository text(File directory, int lines)
+			throws IOException {
+		SyntheticRepository r = new SyntheticRepository(create(directory));
+		r.putText(TARGET, lines);
+		r.commit(r.head);
+		return r.finish();
+	}
+
+	/**
+	 * Deletes a repository created by this class.
+	 *
+	 * @param repository
+	 */
+	public static void delete(Repository repository) {
+		repository.close();
+		delete(repository.getDirectory());
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	private static Repository create(File directory) throws IOException {
+		Repository repository = new FileRepositoryBuilder().setGitDir(
+				directory).build();
+		repository.create(true);
+		return repository;
+	}
+
+	private static String filePath(int i) {
+		return "src/dir" + (i % 20) + "/sub" + (i % 3) + "/File" + i + ".java"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	private void putText(String path, int lines) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++)
+			sb.append(line()).append('\n');
+		files.put(path, insert(sb.toString()));
+	}
+
+	/** Replaces a few lines, keeping the file similar for rename detection */
+	private void modify(String path) throws IOException {
+		String[] lines = new String(repository.open(files.get(path))
+				.getCachedBytes(), "UTF-8").split("\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < 3; i++)
+			lines[random.nextInt(lines.length)] = line();
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line).append('\n');
+		files.put(path, insert(sb.toString()));
+	}
+
+	private String line() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8; i++)
+			sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		return sb.toString();
+	}
+
+	private ObjectId insert(String content) throws IOException {
+		return inserter.insert(Constants.OBJ_BLOB, content.getBytes("UTF-8")); //$NON-NLS-1$
+	}
+
+	private ObjectId commit(ObjectId... parents) throws IOException {
+		DirCache index = DirCache.newInCore();
+		DirCacheBuilder builder = index.builder();
+		for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+			DirCacheEntry entry = new DirCacheEntry(file.getKey());
+			entry.setFileMode(FileMode.REGULAR_FILE);
+			entry.setObjectId(file.getValue());
+			builder.add(entry);
+		}
+		builder.finish();
+
+		PersonIdent ident = new PersonIdent("Bench", "bench@example.org", //$NON-NLS-1$ //$NON-NLS-2$
+				time++ * 1000L, 0);
+		CommitBuilder commit = new CommitBuilder();
+		commit.setTreeId(index.writeTree(inserter));
+		for (ObjectId parent : parents)
+			if (parent != null)
+				commit.addParentId(parent);
+		commit.setAuthor(ident);
+		commit.setCommitter(ident);
+		commit.setMessage("commit " + time); //$NON-NLS-1$
+		head = inserter.insert(commit);
+		return head;
+	}
+
+	private Repository finish() throws IOException {
+		inserter.flush();
+		inserter.release();
+		RefUpdate update = repository.updateRef(Constants.R_HEADS
+				+ Constants.MASTER);
+		update.setNewObjectId(head);
+		update.setForceUpdate(true);
+		update.update();
+		return repository;
+	}
+}
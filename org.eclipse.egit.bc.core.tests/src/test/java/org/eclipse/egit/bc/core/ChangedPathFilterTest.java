@@ -0,0 +1,75 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.junit.Test;
+
+public class ChangedPathFilterTest {
+
+	/** Bit positions of the empty path, from t0095-bloom.sh of C Git */
+	private static final int[] EMPTY_PATH_HASHES = { 0x5615800c, 0x5b966560,
+			0x61174ab4, 0x66983008, 0x6c19155c, 0x7199fab0, 0x771ae004 };
+
+	@Test
+	public void testHashesMatchCGit() {
+		for (int version : new int[] { ChangedPathFilter.VERSION_1,
+				ChangedPathFilter.VERSION_2 }) {
+			int[] hashes = new Key("").getHashes(version); //$NON-NLS-1$
+			for (int i = 0; i < ChangedPathFilter.NUM_HASHES; i++)
+				assertEquals(EMPTY_PATH_HASHES[i], hashes[0] + i * hashes[1]);
+		}
+	}
+
+	@Test
+	public void testVersionsDifferForNonAsciiPaths() {
+		Key ascii = new Key("dir/file.txt"); //$NON-NLS-1$
+		assertEquals(ascii.getHashes(ChangedPathFilter.VERSION_1)[0],
+				ascii.getHashes(ChangedPathFilter.VERSION_2)[0]);
+		Key umlaut = new Key("d\u00e4t\u00e4.txt"); //$NON-NLS-1$
+		assertFalse(umlaut.getHashes(ChangedPathFilter.VERSION_1)[0] == umlaut
+				.getHashes(ChangedPathFilter.VERSION_2)[0]);
+	}
+
+	@Test
+	public void testFilterContainsAllPaths() {
+		List<String> paths = paths(100);
+		byte[] filter = ChangedPathFilter.create(paths);
+		assertEquals(100 * ChangedPathFilter.BITS_PER_ENTRY / 8, filter.length);
+		for (String path : paths)
+			assertEquals(ChangedPathFilter.MAYBE,
+					ChangedPathFilter.contains(filter, new Key(path)));
+	}
+
+	@Test
+	public void testEmptyFilter() {
+		byte[] filter = ChangedPathFilter.create(Collections
+				.<String> emptyList());
+		assertEquals(1, filter.length);
+		assertEquals(ChangedPathFilter.NO,
+				ChangedPathFilter.contains(filter, new Key("a.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.UNKNOWN,
+				ChangedPathFilter.contains(new byte[0], new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testTooManyPathsMatchEverything() {
+		byte[] filter = ChangedPathFilter
+				.create(paths(ChangedPathFilter.MAX_CHANGED_PATHS + 1));
+		assertEquals(1, filter.length);
+		assertEquals(ChangedPathFilter.MAYBE,
+				ChangedPathFilter.contains(filter, new Key("other.txt"))); //$NON-NLS-1$
+	}
+
+	private static List<String> paths(int count) {
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < count; i++)
+			paths.add("dir" + (i % 10) + "/file" + i + ".txt"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return paths;
+	}
+}
@@ -0,0 +1,143 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.Test;
+
+/**
+ * Line ending conversions on checkout, following the rules of C Git for the
+ * <code>text</code>, <code>eol</code> and <code>crlf</code> attributes,
+ * <code>core.autocrlf</code> and <code>core.eol</code>.
+ */
+public class CheckoutFiltersTest extends RepositoryTestCase {
+
+	@Test
+	public void testNoConversionByDefault() throws Exception {
+		configure("false", "lf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(get("a.txt").isIdentity()); //$NON-NLS-1$
+		assertNull(get("a.txt").getSignature()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testTextWithCoreEol() throws Exception {
+		write(".gitattributes", "*.txt text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("false", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.bin")); //$NON-NLS-1$
+		configure("false", "lf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.txt")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testTextAuto() throws Exception {
+		write(".gitattributes", "* text=auto\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("false", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("autocrlf", signature("a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testEolAttribute() throws Exception {
+		write(".gitattributes", "*.bat eol=crlf\n*.sh eol=lf\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("true", "lf"); //$NON-NLS-1$ //$NON-NLS-2$
+		// eol implies text, whatever the configuration says
+		assertEquals("crlf", signature("run.bat")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("run.sh")); //$NON-NLS-1$
+		configure("input", "lf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("run.bat")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testAutoCrlf() throws Exception {
+		write(".gitattributes", "*.png -text\n*.txt text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("true", "lf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("autocrlf", signature("a.java")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.png")); //$NON-NLS-1$
+		configure("input", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.java")); //$NON-NLS-1$
+		assertNull(signature("a.txt")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testLegacyCrlfAttribute() throws Exception {
+		write(".gitattributes", "*.c crlf\n*.h -crlf\n*.in crlf=input\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("false", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("a.c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.h")); //$NON-NLS-1$
+		assertNull(signature("a.in")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testLaterSourcesOverride() throws Exception {
+		write(".gitattributes", "*.txt text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		write("sub/.gitattributes", "*.txt -text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("false", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("sub/a.txt")); //$NON-NLS-1$
+		assertEquals("crlf", signature("other/a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// core.attributesFile, set up by RepositoryTestCase
+		write("../attributes", "*.java text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		write(".git/info/attributes", "a.txt -text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("crlf", signature("A.java")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(signature("a.txt")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testConversion() throws Exception {
+		write(".gitattributes", "*.txt text\n*.dat text=auto\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		configure("false", "crlf"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertArrayEquals(Constants.encode("a\r\nb\r\n"), //$NON-NLS-1$
+				read("a.txt", Constants.encode("a\nb\n"))); //$NON-NLS-1$ //$NON-NLS-2$
+		byte[] binary = { 'a', '\n', 0, 'b', '\n' };
+		assertArrayEquals(binary, read("a.dat", binary)); //$NON-NLS-1$
+	}
+
+	private void configure(String autoCrlf, String eol) throws IOException {
+		StoredConfig config = repository.getConfig();
+		config.setString("core", null, "autocrlf", autoCrlf); //$NON-NLS-1$ //$NON-NLS-2$
+		config.setString("core", null, "eol", eol); //$NON-NLS-1$ //$NON-NLS-2$
+		config.save();
+	}
+
+	private CheckoutFilter get(String path) throws IOException {
+		return new CheckoutFilters(repository).get(path);
+	}
+
+	private String signature(String path) throws IOException {
+		return get(path).getSignature();
+	}
+
+	private byte[] read(String path, byte[] content) throws IOException {
+		ObjectInserter inserter = repository.newObjectInserter();
+		ObjectId id;
+		try {
+			id = inserter.insert(Constants.OBJ_BLOB, content);
+			inserter.flush();
+		} finally {
+			inserter.release();
+		}
+		InputStream in = get(path).open(repository.open(id));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				out.write(buf, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads commit-graph files laid out as written by C Git.
+ */
+public class CommitGraphTest {
+
+	private static final int SIGNATURE = 0x43475048;
+
+	private static final int OIDF = 0x4f494446;
+
+	private static final int OIDL = 0x4f49444c;
+
+	private static final int BIDX = 0x42494458;
+
+	private static final int BDAT = 0x42444154;
+
+	private static final ObjectId FIRST = commitId("first"); //$NON-NLS-1$
+
+	private static final ObjectId SECOND = commitId("second"); //$NON-NLS-1$
+
+	private static final ObjectId MISSING = commitId("missing"); //$NON-NLS-1$
+
+	private File objects;
+
+	private File info;
+
+	@Before
+	public void setUp() throws Exception {
+		objects = File.createTempFile("egit-bc-objects", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		info = new File(objects, "info"); //$NON-NLS-1$
+		if (!objects.delete() || !info.mkdirs())
+			throw new IOException("Could not create " + info); //$NON-NLS-1$
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.delete(objects, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+
+	@Test
+	public void testNoCommitGraph() throws Exception {
+		CommitGraph graph = new CommitGraph(objects);
+		graph.refresh();
+		assertFalse(graph.hasFilters());
+		assertEquals(ChangedPathFilter.UNKNOWN,
+				graph.contains(FIRST, new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testSingleFile() throws Exception {
+		Map<ObjectId, byte[]> filters = new TreeMap<ObjectId, byte[]>();
+		filters.put(FIRST, filter("a.txt")); //$NON-NLS-1$
+		filters.put(SECOND, filter("dir/b.txt", "dir")); //$NON-NLS-1$ //$NON-NLS-2$
+		write(new File(info, "commit-graph"), 1, filters, true); //$NON-NLS-1$
+
+		CommitGraph graph = new CommitGraph(objects);
+		graph.refresh();
+		assertTrue(graph.hasFilters());
+		assertTrue(graph.hasFilter(FIRST));
+		assertTrue(graph.hasFilter(SECOND));
+		assertFalse(graph.hasFilter(MISSING));
+		assertEquals(ChangedPathFilter.MAYBE,
+				graph.contains(FIRST, new Key("a.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.NO,
+				graph.contains(FIRST, new Key("dir"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.MAYBE,
+				graph.contains(SECOND, new Key("dir"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.MAYBE,
+				graph.contains(SECOND, new Key("dir/b.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.NO,
+				graph.contains(SECOND, new Key("a.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.UNKNOWN,
+				graph.contains(MISSING, new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testWithoutFilters() throws Exception {
+		Map<ObjectId, byte[]> filters = new TreeMap<ObjectId, byte[]>();
+		filters.put(FIRST, filter("a.txt")); //$NON-NLS-1$
+		write(new File(info, "commit-graph"), 1, filters, false); //$NON-NLS-1$
+
+		CommitGraph graph = new CommitGraph(objects);
+		graph.refresh();
+		assertFalse(graph.hasFilters());
+		assertFalse(graph.hasFilter(FIRST));
+		assertEquals(ChangedPathFilter.UNKNOWN,
+				graph.contains(FIRST, new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testChain() throws Exception {
+		File chainDir = new File(info, "commit-graphs"); //$NON-NLS-1$
+		chainDir.mkdirs();
+		Map<ObjectId, byte[]> base = new TreeMap<ObjectId, byte[]>();
+		base.put(FIRST, filter("a.txt")); //$NON-NLS-1$
+		write(new File(chainDir, "graph-1111.graph"), 1, base, true); //$NON-NLS-1$
+		Map<ObjectId, byte[]> top = new TreeMap<ObjectId, byte[]>();
+		top.put(SECOND, filter("b.txt")); //$NON-NLS-1$
+		write(new File(chainDir, "graph-2222.graph"), 1, top, true); //$NON-NLS-1$
+		OutputStream out = new FileOutputStream(new File(chainDir,
+				"commit-graph-chain")); //$NON-NLS-1$
+		try {
+			out.write(Constants.encodeASCII("1111\n2222\n")); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+
+		CommitGraph graph = new CommitGraph(objects);
+		graph.refresh();
+		assertEquals(ChangedPathFilter.MAYBE,
+				graph.contains(FIRST, new Key("a.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.NO,
+				graph.contains(FIRST, new Key("b.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.MAYBE,
+				graph.contains(SECOND, new Key("b.txt"))); //$NON-NLS-1$
+		assertEquals(ChangedPathFilter.NO,
+				graph.contains(SECOND, new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testUnsupportedVersion() throws Exception {
+		Map<ObjectId, byte[]> filters = new TreeMap<ObjectId, byte[]>();
+		filters.put(FIRST, filter("a.txt")); //$NON-NLS-1$
+		write(new File(info, "commit-graph"), 2, filters, true); //$NON-NLS-1$
+
+		CommitGraph graph = new CommitGraph(objects);
+		try {
+			graph.refresh();
+			fail("unsupported commit-graph was read"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// expected
+		}
+		// reported once, not on every lookup
+		graph.refresh();
+		assertFalse(graph.hasFilters());
+		assertEquals(ChangedPathFilter.UNKNOWN,
+				graph.contains(FIRST, new Key("a.txt"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testRefreshAfterRewrite() throws Exception {
+		File file = new File(info, "commit-graph"); //$NON-NLS-1$
+		Map<ObjectId, byte[]> filters = new TreeMap<ObjectId, byte[]>();
+		filters.put(FIRST, filter("a.txt")); //$NON-NLS-1$
+		write(file, 1, filters, true);
+		CommitGraph graph = new CommitGraph(objects);
+		graph.refresh();
+		assertFalse(graph.hasFilter(SECOND));
+
+		filters.put(SECOND, filter("b.txt")); //$NON-NLS-1$
+		write(file, 1, filters, true);
+		graph.refresh();
+		assertTrue(graph.hasFilter(SECOND));
+	}
+
+	private static byte[] filter(String... paths) {
+		return ChangedPathFilter.create(Arrays.asList(paths));
+	}
+
+	private static ObjectId commitId(String message) {
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_COMMIT,
+				Constants.encode(message));
+	}
+
+	/**
+	 * Writes a commit-graph file with the fanout, commit id and, if
+	 * requested, changed-path filter chunks. The commit data chunk is left
+	 * out as it is not read.
+	 */
+	private static void write(File file, int version,
+			Map<ObjectId, byte[]> filters, boolean withFilters)
+			throws IOException {
+		ByteArrayOutputStream fanout = new ByteArrayOutputStream();
+		ByteArrayOutputStream ids = new ByteArrayOutputStream();
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream fanoutOut = new DataOutputStream(fanout);
+		DataOutputStream indexOut = new DataOutputStream(index);
+		DataOutputStream dataOut = new DataOutputStream(data);
+		dataOut.writeInt(ChangedPathFilter.VERSION_2);
+		dataOut.writeInt(ChangedPathFilter.NUM_HASHES);
+		dataOut.writeInt(ChangedPathFilter.BITS_PER_ENTRY);
+		int count = 0;
+		int end = 0;
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int b = 0; b < 256; b++) {
+			for (Map.Entry<ObjectId, byte[]> entry : filters.entrySet()) {
+				if (entry.getKey().getFirstByte() != b)
+					continue;
+				entry.getKey().copyRawTo(raw, 0);
+				ids.write(raw);
+				dataOut.write(entry.getValue());
+				end += entry.getValue().length;
+				indexOut.writeInt(end);
+				count++;
+			}
+			fanoutOut.writeInt(count);
+		}
+
+		byte[][] chunks = withFilters ? new byte[][] { fanout.toByteArray(),
+				ids.toByteArray(), index.toByteArray(), data.toByteArray() }
+				: new byte[][] { fanout.toByteArray(), ids.toByteArray() };
+		int[] chunkIds = { OIDF, OIDL, BIDX, BDAT };
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(SIGNATURE);
+			out.writeByte(version);
+			out.writeByte(1); // SHA-1
+			out.writeByte(chunks.length);
+			out.writeByte(0); // no base graphs
+			long offset = 8 + (chunks.length + 1) * 12;
+			for (int i = 0; i < chunks.length; i++) {
+				out.writeInt(chunkIds[i]);
+				out.writeLong(offset);
+				offset += chunks[i].length;
+			}
+			out.writeInt(0);
+			out.writeLong(offset);
+			for (byte[] chunk : chunks)
+				out.write(chunk);
+			out.write(new byte[Constants.OBJECT_ID_LENGTH]); // checksum
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GitAttributesTest extends RepositoryTestCase {
+
+	@Test
+	public void testMissingFile() throws Exception {
+		GitAttributes attributes = GitAttributes.load(new File(directory,
+				"missing"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(apply(attributes, "a.txt").isEmpty()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		GitAttributes attributes = load("", //$NON-NLS-1$
+				"# comment\n*.txt text eol=crlf -diff !merge\n"); //$NON-NLS-1$
+		Map<String, String> result = new HashMap<String, String>();
+		result.put("merge", "union"); //$NON-NLS-1$ //$NON-NLS-2$
+		attributes.apply("a.txt", result); //$NON-NLS-1$
+		assertEquals(GitAttributes.SET, result.get("text")); //$NON-NLS-1$
+		assertEquals("crlf", result.get("eol")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.UNSET, result.get("diff")); //$NON-NLS-1$
+		assertFalse(result.containsKey("merge")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testBinaryMacro() throws Exception {
+		Map<String, String> result = apply(load("", "*.png binary\n"), "a.png"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(GitAttributes.UNSET, result.get("text")); //$NON-NLS-1$
+		assertEquals(GitAttributes.UNSET, result.get("diff")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testLaterRulesOverride() throws Exception {
+		GitAttributes attributes = load("", "* text\n*.png -text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "a.txt").get("text")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.UNSET, apply(attributes, "a.png").get("text")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testPatterns() throws Exception {
+		GitAttributes attributes = load("", "*.txt a\n" //$NON-NLS-1$ //$NON-NLS-2$
+				+ "/root.md b\n" //$NON-NLS-1$
+				+ "doc/*.md c\n" //$NON-NLS-1$
+				+ "**/gen/** d\n" //$NON-NLS-1$
+				+ "file[0-9].c e\n" //$NON-NLS-1$
+				+ "build/ f\n"); //$NON-NLS-1$
+		// patterns without a slash match the name in any directory
+		assertEquals(GitAttributes.SET, apply(attributes, "x/y/a.txt").get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		// patterns with a slash match the whole path
+		assertEquals(GitAttributes.SET, apply(attributes, "root.md").get("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(apply(attributes, "x/root.md").get("b")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "doc/a.md").get("c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(apply(attributes, "doc/x/a.md").get("c")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "gen/a/b.java").get("d")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "x/gen/b.java").get("d")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "file1.c").get("e")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(apply(attributes, "filex.c").get("e")); //$NON-NLS-1$ //$NON-NLS-2$
+		// directories carry no attributes
+		assertNull(apply(attributes, "build/a.txt").get("f")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testNestedFileIsRelative() throws Exception {
+		GitAttributes attributes = load("sub/", "/a.txt text\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(GitAttributes.SET, apply(attributes, "sub/a.txt").get("text")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(apply(attributes, "a.txt").get("text")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(apply(attributes, "sub/x/a.txt").get("text")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private GitAttributes load(String base, String content) throws IOException {
+		return GitAttributes.load(write(base + ".gitattributes", content), base); //$NON-NLS-1$
+	}
+
+	private static Map<String, String> apply(GitAttributes attributes,
+			String path) {
+		Map<String, String> result = new HashMap<String, String>();
+		attributes.apply(path, result);
+		return result;
+	}
+}
@@ -0,0 +1,155 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.egit.bc.core.PreviousCommitFinder.PreviousCommit;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class PreviousCommitFinderTest extends RepositoryTestCase {
+
+	@Test
+	public void testEmptyRepository() throws Exception {
+		assertTrue(PreviousCommitFinder.find(repository, null, "a.txt") //$NON-NLS-1$
+				.isEmpty());
+	}
+
+	@Test
+	public void testParentOfLastChange() throws Exception {
+		write("a.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		write("b.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		write("a.txt", "2\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("change a"); //$NON-NLS-1$
+		write("b.txt", "2\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("change b"); //$NON-NLS-1$
+
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, "a.txt"); //$NON-NLS-1$
+		assertEquals(1, previous.size());
+		assertEquals(first, previous.get(0).getCommit());
+		assertEquals("a.txt", previous.get(0).getPath()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testWholeRepository() throws Exception {
+		write("a.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		write("b.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("add b"); //$NON-NLS-1$
+
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, ""); //$NON-NLS-1$
+		assertEquals(1, previous.size());
+		assertEquals(first, previous.get(0).getCommit());
+	}
+
+	@Test
+	public void testAddedFile() throws Exception {
+		write("a.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("first"); //$NON-NLS-1$
+		write("b.txt", "unrelated\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("add b"); //$NON-NLS-1$
+
+		assertTrue(PreviousCommitFinder.find(repository, null, "b.txt") //$NON-NLS-1$
+				.isEmpty());
+	}
+
+	@Test
+	public void testRename() throws Exception {
+		write("old/Name.java", lines(20, -1)); //$NON-NLS-1$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		delete("old/Name.java"); //$NON-NLS-1$
+		write("new/Name.java", lines(20, 3)); //$NON-NLS-1$
+		commit("move"); //$NON-NLS-1$
+
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, "new/Name.java"); //$NON-NLS-1$
+		assertEquals(1, previous.size());
+		assertEquals(first, previous.get(0).getCommit());
+		assertEquals("old/Name.java", previous.get(0).getPath()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testMergeChangingFile() throws Exception {
+		write("a.txt", lines(10, -1)); //$NON-NLS-1$
+		commit("base"); //$NON-NLS-1$
+		git.branchCreate().setName("side").call(); //$NON-NLS-1$
+		write("a.txt", lines(10, 8)); //$NON-NLS-1$
+		RevCommit master = commit("change end"); //$NON-NLS-1$
+		git.checkout().setName("side").call(); //$NON-NLS-1$
+		write("a.txt", lines(10, 1)); //$NON-NLS-1$
+		RevCommit side = commit("change start"); //$NON-NLS-1$
+		git.checkout().setName(Constants.MASTER).call();
+		merge(side);
+
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, "a.txt"); //$NON-NLS-1$
+		assertEquals(2, previous.size());
+		assertEquals(master, previous.get(0).getCommit());
+		assertEquals(side, previous.get(1).getCommit());
+		assertEquals("a.txt", previous.get(0).getPath()); //$NON-NLS-1$
+		assertEquals("a.txt", previous.get(1).getPath()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testMergeTakingFileFromOneSide() throws Exception {
+		write("a.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("base"); //$NON-NLS-1$
+		git.branchCreate().setName("side").call(); //$NON-NLS-1$
+		write("b.txt", "1\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("add b"); //$NON-NLS-1$
+		git.checkout().setName("side").call(); //$NON-NLS-1$
+		write("a.txt", "2\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		commit("change a"); //$NON-NLS-1$
+		write("a.txt", "3\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit side = commit("change a again"); //$NON-NLS-1$
+		git.checkout().setName(Constants.MASTER).call();
+		merge(side);
+
+		// the merge took a.txt from the side branch, whose head changed it
+		// last
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, "a.txt"); //$NON-NLS-1$
+		assertEquals(1, previous.size());
+		assertEquals(side.getParent(0), previous.get(0).getCommit());
+	}
+
+	@Test
+	public void testMergeRenamingOnOneSide() throws Exception {
+		write("Old.java", lines(20, -1)); //$NON-NLS-1$
+		commit("base"); //$NON-NLS-1$
+		git.branchCreate().setName("side").call(); //$NON-NLS-1$
+		delete("Old.java"); //$NON-NLS-1$
+		write("New.java", lines(20, -1)); //$NON-NLS-1$
+		RevCommit master = commit("rename"); //$NON-NLS-1$
+		git.checkout().setName("side").call(); //$NON-NLS-1$
+		write("Old.java", lines(20, 15)); //$NON-NLS-1$
+		RevCommit side = commit("change"); //$NON-NLS-1$
+		git.checkout().setName(Constants.MASTER).call();
+		// resolved by hand, as the rename is not detected by the merge
+		git.merge().include(side).setStrategy(MergeStrategy.OURS)
+				.setCommit(false).call();
+		write("New.java", lines(20, 15)); //$NON-NLS-1$
+		assertEquals(2, commit("merge").getParentCount()); //$NON-NLS-1$
+
+		List<PreviousCommit> previous = PreviousCommitFinder.find(repository,
+				null, "New.java"); //$NON-NLS-1$
+		assertEquals(2, previous.size());
+		assertEquals(master, previous.get(0).getCommit());
+		assertEquals("New.java", previous.get(0).getPath()); //$NON-NLS-1$
+		assertEquals(side, previous.get(1).getCommit());
+		assertEquals("Old.java", previous.get(1).getPath()); //$NON-NLS-1$
+	}
+
+	private void merge(RevCommit commit) throws Exception {
+		MergeResult result = git.merge().include(commit).call();
+		assertEquals(MergeResult.MergeStatus.MERGED, result.getMergeStatus());
+	}
+}
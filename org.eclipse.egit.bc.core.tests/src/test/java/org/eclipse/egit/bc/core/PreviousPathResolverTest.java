@@ -0,0 +1,76 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class PreviousPathResolverTest extends RepositoryTestCase {
+
+	@Test
+	public void testUnchangedPath() throws Exception {
+		write("a.txt", "a\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		write("a.txt", "b\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit second = commit("second"); //$NON-NLS-1$
+		assertEquals("a.txt", resolve(second, first, "a.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testRename() throws Exception {
+		write("src/Old.java", lines(20, -1)); //$NON-NLS-1$
+		write("src/Other.java", lines(30, -1)); //$NON-NLS-1$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		delete("src/Old.java"); //$NON-NLS-1$
+		write("src/New.java", lines(20, -1)); //$NON-NLS-1$
+		RevCommit second = commit("rename"); //$NON-NLS-1$
+		assertEquals("src/Old.java", resolve(second, first, "src/New.java")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testRenameWithChanges() throws Exception {
+		write("a/Name.java", lines(20, -1)); //$NON-NLS-1$
+		write("b/Unrelated.java", "class Unrelated {}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		delete("a/Name.java"); //$NON-NLS-1$
+		delete("b/Unrelated.java"); //$NON-NLS-1$
+		write("c/Name.java", lines(20, 7)); //$NON-NLS-1$
+		RevCommit second = commit("move and change"); //$NON-NLS-1$
+		assertEquals("a/Name.java", resolve(second, first, "c/Name.java")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSameContentPrefersNearestPath() throws Exception {
+		write("x/deep/File.txt", lines(10, -1)); //$NON-NLS-1$
+		write("y/File.txt", lines(10, -1)); //$NON-NLS-1$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		delete("x/deep/File.txt"); //$NON-NLS-1$
+		delete("y/File.txt"); //$NON-NLS-1$
+		write("y/Renamed.txt", lines(10, -1)); //$NON-NLS-1$
+		RevCommit second = commit("rename"); //$NON-NLS-1$
+		assertEquals("y/File.txt", resolve(second, first, "y/Renamed.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testAddedFile() throws Exception {
+		write("a.txt", lines(10, -1)); //$NON-NLS-1$
+		RevCommit first = commit("first"); //$NON-NLS-1$
+		write("b.txt", "something else entirely\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		RevCommit second = commit("add"); //$NON-NLS-1$
+		assertEquals("b.txt", resolve(second, first, "b.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private String resolve(RevCommit head, RevCommit previous, String path)
+			throws IOException {
+		ObjectReader reader = repository.newObjectReader();
+		try {
+			return PreviousPathResolver.getPreviousPath(repository, reader,
+					head, previous, path);
+		} finally {
+			reader.release();
+		}
+	}
+}
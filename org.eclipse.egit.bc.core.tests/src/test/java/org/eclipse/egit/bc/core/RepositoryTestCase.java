@@ -0,0 +1,128 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Base of the tests needing a repository with a working tree. Every test
+ * gets a new repository in a temporary directory, configured so that the
+ * settings of the user running the tests do not leak in.
+ */
+public abstract class RepositoryTestCase {
+
+	/** Temporary directory holding the repository, deleted after the test */
+	protected File directory;
+
+	protected Repository repository;
+
+	protected Git git;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("egit-bc-test", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		if (!directory.delete() || !directory.mkdir())
+			throw new IOException("Could not create " + directory); //$NON-NLS-1$
+		git = Git.init().setDirectory(new File(directory, "repo")).call(); //$NON-NLS-1$
+		repository = git.getRepository();
+		StoredConfig config = repository.getConfig();
+		config.setString("user", null, "name", "Test"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		config.setString("user", null, "email", "test@example.com"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		config.setString("core", null, "autocrlf", "false"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		config.setString("core", null, "attributesfile", new File( //$NON-NLS-1$ //$NON-NLS-2$
+				directory, "attributes").getPath()); //$NON-NLS-1$
+		config.save();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		repository.close();
+		FileUtils.delete(directory, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+
+	/**
+	 * Writes a file of the working tree.
+	 *
+	 * @param path
+	 *            repository relative path
+	 * @param content
+	 * @return the file
+	 * @throws IOException
+	 */
+	protected File write(String path, String content) throws IOException {
+		File file = new File(repository.getWorkTree(), path);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(Constants.encode(content));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Deletes a file of the working tree.
+	 *
+	 * @param path
+	 *            repository relative path
+	 * @throws IOException
+	 */
+	protected void delete(String path) throws IOException {
+		FileUtils.delete(new File(repository.getWorkTree(), path));
+	}
+
+	/**
+	 * Commits all changes of the working tree, including deletions.
+	 *
+	 * @param message
+	 * @return the parsed commit
+	 * @throws Exception
+	 */
+	protected RevCommit commit(String message) throws Exception {
+		git.add().addFilepattern(".").call(); //$NON-NLS-1$
+		git.add().setUpdate(true).addFilepattern(".").call(); //$NON-NLS-1$
+		return parse(git.commit().setMessage(message).call());
+	}
+
+	/**
+	 * @param id
+	 * @return the commit with its headers parsed, usable without a walk
+	 * @throws IOException
+	 */
+	protected RevCommit parse(ObjectId id) throws IOException {
+		RevWalk rw = new RevWalk(repository);
+		try {
+			return rw.parseCommit(id);
+		} finally {
+			rw.release();
+		}
+	}
+
+	/**
+	 * @param lines
+	 *            number of lines
+	 * @param changed
+	 *            line to change, -1 for none
+	 * @return text long enough for rename detection by content similarity
+	 */
+	protected static String lines(int lines, int changed) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < lines; i++)
+			text.append(i == changed ? "changed line " : "line number ") //$NON-NLS-1$ //$NON-NLS-2$
+					.append(i).append('\n');
+		return text.toString();
+	}
+}
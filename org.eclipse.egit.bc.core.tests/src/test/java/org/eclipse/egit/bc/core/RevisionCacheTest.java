@@ -0,0 +1,181 @@
+package org.eclipse.egit.bc.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.egit.bc.core.RevisionCache.ContentWriter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RevisionCacheTest {
+
+	/** Access times have millisecond resolution */
+	private static final long TICK = 20;
+
+	private File root;
+
+	private RevisionCache cache;
+
+	private int writes;
+
+	@Before
+	public void setUp() throws Exception {
+		root = File.createTempFile("egit-bc-cache", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		if (!root.delete() || !root.mkdir())
+			throw new IOException("Could not create " + root); //$NON-NLS-1$
+		cache = new RevisionCache(root);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.delete(root, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+
+	@Test
+	public void testEntryIsWrittenOnce() throws Exception {
+		ObjectId id = blobId("content"); //$NON-NLS-1$
+		assertNull(cache.lookup(id, null));
+		File file = cache.get(id, null, "A.java", writer("content")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("A.java", file.getName()); //$NON-NLS-1$
+		assertEquals("content", read(file)); //$NON-NLS-1$
+		assertEquals(file, cache.get(id, null, "B.java", writer("other"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(file, cache.lookup(id, null));
+		assertEquals(1, writes);
+	}
+
+	@Test
+	public void testVariantsAreKeptApart() throws Exception {
+		ObjectId id = blobId("a\nb\n"); //$NON-NLS-1$
+		File plain = cache.get(id, null, "a.txt", writer("a\nb\n")); //$NON-NLS-1$ //$NON-NLS-2$
+		File crlf = cache.get(id, "crlf", "a.txt", writer("a\r\nb\r\n")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertFalse(plain.equals(crlf));
+		assertEquals("a\nb\n", read(plain)); //$NON-NLS-1$
+		assertEquals("a\r\nb\r\n", read(crlf)); //$NON-NLS-1$
+		assertEquals(crlf, cache.lookup(id, "crlf")); //$NON-NLS-1$
+		assertNull(cache.lookup(id, "autocrlf")); //$NON-NLS-1$
+		assertEquals(2, writes);
+	}
+
+	@Test
+	public void testEntryStaysBelowRoot() throws Exception {
+		ObjectId id = blobId("content"); //$NON-NLS-1$
+		File file = cache.get(id, "../../lfs/x", "a.txt", writer("content")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(new File(root, id.name().substring(0, 2)), file
+				.getParentFile().getParentFile());
+	}
+
+	@Test
+	public void testEntriesAreFoundOnDisk() throws Exception {
+		ObjectId id = blobId("content"); //$NON-NLS-1$
+		File file = cache.get(id, "crlf", "a.txt", writer("content")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		RevisionCache other = new RevisionCache(root);
+		assertEquals(file, other.lookup(id, "crlf")); //$NON-NLS-1$
+		assertNull(other.lookup(id, null));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		File a = add("a"); //$NON-NLS-1$
+		File b = add("b"); //$NON-NLS-1$
+		File c = add("c"); //$NON-NLS-1$
+		Thread.sleep(TICK);
+		assertEquals(a, cache.lookup(blobId("a"), null)); //$NON-NLS-1$
+
+		assertEquals(1, cache.evict(Long.MAX_VALUE, 2, 0));
+		assertFalse(b.exists());
+		assertEquals(a, cache.lookup(blobId("a"), null)); //$NON-NLS-1$
+		assertEquals(c, cache.lookup(blobId("c"), null)); //$NON-NLS-1$
+		assertEquals(0, cache.evict(Long.MAX_VALUE, 2, 0));
+	}
+
+	@Test
+	public void testEvictionBySize() throws Exception {
+		add("a"); //$NON-NLS-1$
+		add("b"); //$NON-NLS-1$
+		File c = add("c"); //$NON-NLS-1$
+		assertEquals(2, cache.evict(1, Integer.MAX_VALUE, 0));
+		assertEquals(c, cache.lookup(blobId("c"), null)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testPinnedEntryIsKept() throws Exception {
+		File a = add("a"); //$NON-NLS-1$
+		File b = add("b"); //$NON-NLS-1$
+		cache.pin(a);
+		cache.pin(a);
+		assertEquals(1, cache.evict(Long.MAX_VALUE, 0, 0));
+		assertFalse(b.exists());
+		cache.unpin(a);
+		assertEquals(0, cache.evict(Long.MAX_VALUE, 0, 0));
+		cache.unpin(a);
+		assertEquals(1, cache.evict(Long.MAX_VALUE, 0, 0));
+		assertFalse(a.exists());
+	}
+
+	@Test
+	public void testRecentlyUsedEntryIsKept() throws Exception {
+		add("a"); //$NON-NLS-1$
+		assertEquals(0, cache.evict(0, 0, 60000));
+		assertNotNull(cache.lookup(blobId("a"), null)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testAccessTimesAreSaved() throws Exception {
+		File a = add("a"); //$NON-NLS-1$
+		File b = add("b"); //$NON-NLS-1$
+		Thread.sleep(TICK);
+		cache.lookup(blobId("a"), null); //$NON-NLS-1$
+		cache.saveAccessTimes();
+		assertTrue(new File(root, RevisionCache.ACCESS_INDEX).isFile());
+
+		// without the saved times a, written first, would be the oldest
+		RevisionCache other = new RevisionCache(root);
+		assertEquals(1, other.evict(Long.MAX_VALUE, 1, 0));
+		assertFalse(b.exists());
+		assertEquals(a, other.lookup(blobId("a"), null)); //$NON-NLS-1$
+	}
+
+	private File add(String content) throws Exception {
+		File file = cache.get(blobId(content), null, content + ".txt", //$NON-NLS-1$
+				writer(content));
+		Thread.sleep(TICK);
+		return file;
+	}
+
+	private ContentWriter writer(final String content) {
+		return new ContentWriter() {
+			public void write(File target) throws IOException {
+				writes++;
+				OutputStream out = new FileOutputStream(target);
+				try {
+					out.write(Constants.encode(content));
+				} finally {
+					out.close();
+				}
+			}
+		};
+	}
+
+	private static ObjectId blobId(String content) {
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+				Constants.encode(content));
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(IO.readFully(file), "UTF-8"); //$NON-NLS-1$
+	}
+}
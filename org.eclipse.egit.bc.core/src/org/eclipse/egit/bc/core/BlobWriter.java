@@ -0,0 +1,207 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * Writes blob content to disk as raw bytes, or transcoded if requested.
+ * <p>
+ * The content of the {@link ObjectLoader} is streamed into a
+ * {@link FileChannel} through a direct buffer that is reused by the calling
+ * thread, so no character decoding or encoding takes place and the file on
+ * disk is byte-identical to the blob.
+ * <p>
+ * The size of the blob is checked before its content is touched. Only small
+ * blobs are loaded into the heap and written with a single call, everything
+ * above the streaming threshold is read through
+ * {@link ObjectLoader#openStream()}.
+ */
+public class BlobWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	private BlobWriter() {
+		// utility class
+	}
+
+	/**
+	 * Writes the blob to the target file, replacing any existing content.
+	 *
+	 * @param loader
+	 *            loader of the blob
+	 * @param target
+	 *            file to write
+	 * @param streamThreshold
+	 *            blobs larger than this number of bytes are never loaded
+	 *            into the heap as a whole
+	 * @param monitor
+	 *            progress is reported in KB, may be <code>null</code>
+	 * @return number of bytes written
+	 * @throws IOException
+	 *             if reading or writing fails or the monitor was cancelled
+	 */
+	public static long write(ObjectLoader loader, File target,
+			long streamThreshold, ProgressMonitor monitor) throws IOException {
+		if (isStreamed(loader, streamThreshold))
+			return write(loader.openStream(), target, monitor);
+
+		byte[] content = loader.getCachedBytes((int) loader.getSize());
+		FileOutputStream out = new FileOutputStream(target);
+		try {
+			FileChannel dst = out.getChannel();
+			ByteBuffer buf = ByteBuffer.wrap(content);
+			while (buf.hasRemaining())
+				dst.write(buf);
+		} finally {
+			out.close();
+		}
+		if (monitor != null)
+			monitor.update(content.length >>> 10);
+		return content.length;
+	}
+
+	/**
+	 * @param loader
+	 *            loader of the blob
+	 * @param streamThreshold
+	 *            size in bytes above which blobs are streamed
+	 * @return whether the blob has to be streamed instead of being loaded
+	 *         into the heap
+	 */
+	public static boolean isStreamed(ObjectLoader loader, long streamThreshold) {
+		long size = loader.getSize();
+		return loader.isLarge() || size > streamThreshold
+				|| size > Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Streams the input to the target file, replacing any existing content.
+	 * The input stream is closed.
+	 *
+	 * @param in
+	 *            content to write
+	 * @param target
+	 *            file to write
+	 * @param monitor
+	 *            progress is reported in KB, may be <code>null</code>
+	 * @return number of bytes written
+	 * @throws IOException
+	 *             if reading or writing fails or the monitor was cancelled
+	 */
+	public static long write(InputStream in, File target,
+			ProgressMonitor monitor) throws IOException {
+		if (monitor == null)
+			monitor = NullProgressMonitor.INSTANCE;
+		ReadableByteChannel src = Channels.newChannel(in);
+		FileOutputStream out = new FileOutputStream(target);
+		try {
+			FileChannel dst = out.getChannel();
+			ByteBuffer buf = BUFFER.get();
+			buf.clear();
+			long total = 0;
+			long reported = 0;
+			while (src.read(buf) != -1) {
+				buf.flip();
+				while (buf.hasRemaining())
+					total += dst.write(buf);
+				buf.clear();
+				if (monitor.isCancelled())
+					throw new InterruptedIOException(target.getName());
+				int kb = (int) ((total - reported) >>> 10);
+				if (kb > 0) {
+					monitor.update(kb);
+					reported += ((long) kb) << 10;
+				}
+			}
+			return total;
+		} finally {
+			try {
+				out.close();
+			} finally {
+				src.close();
+			}
+		}
+	}
+
+	/**
+	 * Decodes the input and writes it to the target file in another
+	 * encoding, replacing any existing content. The input stream is closed.
+	 *
+	 * @param in
+	 *            content to write
+	 * @param encoding
+	 *            encoding of the content
+	 * @param targetEncoding
+	 *            encoding of the file
+	 * @param target
+	 *            file to write
+	 * @param monitor
+	 *            progress is reported in KB of characters, may be
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if reading or writing fails or the monitor was cancelled
+	 */
+	public static void transcode(InputStream in, String encoding,
+			String targetEncoding, File target, ProgressMonitor monitor)
+			throws IOException {
+		if (monitor == null)
+			monitor = NullProgressMonitor.INSTANCE;
+		Reader reader = null;
+		Writer writer = null;
+		try {
+			char[] part = new char[8192];
+			long chars = 0;
+			int read = 0;
+			reader = new InputStreamReader(in, encoding);
+			writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(target, false), targetEncoding));
+			while ((read = reader.read(part)) != -1) {
+				if (monitor.isCancelled())
+					throw new InterruptedIOException(target.getName());
+				writer.write(part, 0, read);
+				// characters approximate bytes well enough for progress
+				int kb = (int) (((chars + read) >>> 10) - (chars >>> 10));
+				chars += read;
+				if (kb > 0)
+					monitor.update(kb);
+			}
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException ex) {
+				}
+			}
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException ex) {
+				}
+			} else
+				in.close();
+		}
+	}
+}
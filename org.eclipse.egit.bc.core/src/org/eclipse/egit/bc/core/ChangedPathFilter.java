@@ -0,0 +1,204 @@
+package org.eclipse.egit.bc.core;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Bloom filter over the paths a commit changed compared to its first parent.
+ * <p>
+ * The layout and hashing are the ones of the changed-path filters in the
+ * commit-graph files written by C Git: each key is hashed twice with 32 bit
+ * murmur3 using fixed seeds, the i-th bit position is derived from
+ * <code>hash0 + i * hash1</code> and bit <code>n</code> of the filter is bit
+ * <code>n % 8</code> of byte <code>n / 8</code>. A filter contains every
+ * changed file and all of its leading directories.
+ */
+public class ChangedPathFilter {
+
+	/** Filter version hashing signed bytes, written by C Git by default */
+	public static final int VERSION_1 = 1;
+
+	/** Filter version with correct murmur3 hashing of non-ASCII paths */
+	public static final int VERSION_2 = 2;
+
+	/** Number of hash functions used by C Git */
+	public static final int NUM_HASHES = 7;
+
+	/** Number of filter bits per changed path used by C Git */
+	public static final int BITS_PER_ENTRY = 10;
+
+	/** Commits changing more paths get a filter matching every path */
+	public static final int MAX_CHANGED_PATHS = 512;
+
+	/** Result of {@link #contains} if the filter has no information */
+	public static final int UNKNOWN = -1;
+
+	/** Result of {@link #contains} if the path was certainly not changed */
+	public static final int NO = 0;
+
+	/** Result of {@link #contains} if the path may have been changed */
+	public static final int MAYBE = 1;
+
+	private static final int SEED0 = 0x293ae76f;
+
+	private static final int SEED1 = 0x7e646e2c;
+
+	private static final byte[] TRUNCATED = new byte[] { (byte) 0xff };
+
+	/**
+	 * A path hashed for both filter versions.
+	 */
+	public static class Key {
+		private final String path;
+
+		private final int[] v1;
+
+		private final int[] v2;
+
+		/**
+		 * @param path
+		 *            repository relative path of a file or directory
+		 */
+		public Key(String path) {
+			this.path = path;
+			byte[] raw = Constants.encode(path);
+			v1 = new int[] { murmur3(SEED0, raw, true),
+					murmur3(SEED1, raw, true) };
+			v2 = new int[] { murmur3(SEED0, raw, false),
+					murmur3(SEED1, raw, false) };
+		}
+
+		/**
+		 * @return the hashed path
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		int[] getHashes(int version) {
+			return version == VERSION_1 ? v1 : v2;
+		}
+	}
+
+	private ChangedPathFilter() {
+		// utility class
+	}
+
+	/**
+	 * Tests whether a filter stored in a buffer contains a key.
+	 *
+	 * @param data
+	 *            buffer holding the filter
+	 * @param offset
+	 *            start of the filter in the buffer
+	 * @param length
+	 *            length of the filter in bytes
+	 * @param key
+	 * @param version
+	 *            {@link #VERSION_1} or {@link #VERSION_2}
+	 * @param numHashes
+	 *            number of hash functions of the filter
+	 * @return {@link #NO}, {@link #MAYBE} or {@link #UNKNOWN}
+	 */
+	public static int contains(ByteBuffer data, int offset,
+			int length, Key key, int version, int numHashes) {
+		if (length <= 0)
+			return UNKNOWN;
+		long bits = length * 8L;
+		int[] hashes = key.getHashes(version);
+		for (int i = 0; i < numHashes; i++) {
+			long pos = ((hashes[0] + i * hashes[1]) & 0xffffffffL) % bits;
+			if ((data.get(offset + (int) (pos >>> 3)) & (1 << (pos & 7))) == 0)
+				return NO;
+		}
+		return MAYBE;
+	}
+
+	/**
+	 * Tests whether a filter contains a key.
+	 *
+	 * @param filter
+	 *            filter created by {@link #create(Collection)}
+	 * @param key
+	 * @return {@link #NO}, {@link #MAYBE} or {@link #UNKNOWN}
+	 */
+	public static int contains(byte[] filter, Key key) {
+		return contains(ByteBuffer.wrap(filter), 0, filter.length,
+				key, VERSION_2, NUM_HASHES);
+	}
+
+	/**
+	 * Creates a version 2 filter.
+	 *
+	 * @param paths
+	 *            the changed paths including their leading directories
+	 * @return the filter, a filter matching everything if there are too many
+	 *         paths
+	 */
+	public static byte[] create(Collection<String> paths) {
+		if (paths.size() > MAX_CHANGED_PATHS)
+			return TRUNCATED;
+		int length = Math.max(1, (paths.size() * BITS_PER_ENTRY + 7) / 8);
+		byte[] filter = new byte[length];
+		long bits = length * 8L;
+		for (String path : paths) {
+			int[] hashes = new Key(path).getHashes(VERSION_2);
+			for (int i = 0; i < NUM_HASHES; i++) {
+				long pos = ((hashes[0] + i * hashes[1]) & 0xffffffffL) % bits;
+				filter[(int) (pos >>> 3)] |= 1 << (pos & 7);
+			}
+		}
+		return filter;
+	}
+
+	/**
+	 * 32 bit murmur3. Version 1 filters of C Git sign-extend the bytes of the
+	 * data, which only makes a difference for non-ASCII paths.
+	 */
+	private static int murmur3(int seed, byte[] data, boolean signed) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = seed;
+		int len4 = data.length / 4;
+		for (int i = 0; i < len4; i++) {
+			int k = get(data, 4 * i, signed)
+					| get(data, 4 * i + 1, signed) << 8
+					| get(data, 4 * i + 2, signed) << 16
+					| get(data, 4 * i + 3, signed) << 24;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+		}
+		int tail = len4 * 4;
+		int k1 = 0;
+		switch (data.length & 3) {
+		case 3:
+			k1 ^= get(data, tail + 2, signed) << 16;
+			//$FALL-THROUGH$
+		case 2:
+			k1 ^= get(data, tail + 1, signed) << 8;
+			//$FALL-THROUGH$
+		case 1:
+			k1 ^= get(data, tail, signed);
+			k1 *= c1;
+			k1 = Integer.rotateLeft(k1, 15);
+			k1 *= c2;
+			h ^= k1;
+		}
+		h ^= data.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int get(byte[] data, int i, boolean signed) {
+		return signed ? data[i] : data[i] & 0xff;
+	}
+}
@@ -0,0 +1,103 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Changed-path filters of all commits of a repository.
+ * <p>
+ * Filters are taken from the commit-graph of C Git if it has any. Commits
+ * not covered by it, or all commits if the repository has no commit-graph,
+ * are looked up in a sidecar index maintained by the plugin.
+ */
+public class ChangedPathIndex {
+
+	private final CommitGraph graph;
+
+	private final ChangedPathSidecar sidecar;
+
+	/**
+	 * @param repository
+	 * @param sidecarDirectory
+	 *            directory holding the sidecar indexes of all repositories
+	 */
+	public ChangedPathIndex(Repository repository, File sidecarDirectory) {
+		graph = new CommitGraph(new File(repository.getDirectory(), "objects")); //$NON-NLS-1$
+		sidecar = new ChangedPathSidecar(sidecarDirectory,
+				getSidecarName(repository));
+	}
+
+	/**
+	 * Rereads the commit-graph if it was rewritten.
+	 *
+	 * @throws IOException
+	 */
+	public void refresh() throws IOException {
+		graph.refresh();
+	}
+
+	/**
+	 * @param commit
+	 * @param key
+	 * @return whether the commit changed the path compared to its first
+	 *         parent, as one of the results of
+	 *         {@link ChangedPathFilter#contains(byte[], Key)}
+	 */
+	public int contains(AnyObjectId commit, Key key) {
+		int result = graph.contains(commit, key);
+		if (result == ChangedPathFilter.UNKNOWN)
+			result = sidecar.contains(commit, key);
+		return result;
+	}
+
+	/**
+	 * Adds the commits of HEAD and all local branches which have no filter
+	 * yet to the sidecar index.
+	 *
+	 * @param repository
+	 * @param monitor
+	 *            may be <code>null</code>
+	 * @throws IOException
+	 */
+	public void update(Repository repository, ProgressMonitor monitor)
+			throws IOException {
+		graph.refresh();
+		List<ObjectId> starts = new ArrayList<ObjectId>();
+		Ref head = repository.getRef(Constants.HEAD);
+		if (head != null && head.getObjectId() != null)
+			starts.add(head.getObjectId());
+		for (Ref ref : repository.getRefDatabase()
+				.getRefs(Constants.R_HEADS).values())
+			if (ref.getObjectId() != null && !starts.contains(ref.getObjectId()))
+				starts.add(ref.getObjectId());
+		if (!starts.isEmpty())
+			sidecar.update(repository, starts, graph.hasFilters() ? graph
+					: null, monitor);
+	}
+
+	/**
+	 * Closes the files of the sidecar index. They are opened again when
+	 * needed.
+	 */
+	public void close() {
+		sidecar.close();
+	}
+
+	private static String getSidecarName(Repository repository) {
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(Constants.encode(repository.getDirectory()
+				.getAbsolutePath()));
+		return ObjectId.fromRaw(md.digest()).name();
+	}
+}
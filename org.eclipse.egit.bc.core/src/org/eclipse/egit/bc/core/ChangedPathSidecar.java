@@ -0,0 +1,549 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Changed-path filters maintained by the plugin for commits that are not
+ * covered by a commit-graph of C Git.
+ * <p>
+ * The filters are appended to a file as they are computed, so an interrupted
+ * update is continued by the next one. After a complete update the start
+ * commits are remembered as tips whose history is fully indexed, later
+ * updates only visit the commits added since.
+ * <p>
+ * Only the ids of the indexed commits and the positions of their filters are
+ * kept in memory, in a sorted table of a few bytes per commit. Filters are
+ * read from the file when a commit is looked up, the most recently used ones
+ * are cached. Filters computed by a running update are held until they are
+ * flushed and added to the table.
+ */
+public class ChangedPathSidecar {
+
+	private static final int MAGIC = 0x42435049; // BCPI
+
+	private static final int VERSION = 1;
+
+	private static final int MAX_TIPS = 64;
+
+	private static final int FLUSH_INTERVAL = 256;
+
+	private static final int MAX_FILTER_LENGTH = 4096;
+
+	/** Maximum number of appended filters held before adding them to the table */
+	private static final int MAX_APPENDED = 4096;
+
+	/** Maximum number of filters read from the file kept in memory */
+	private static final int MAX_CACHED = 4096;
+
+	private final File indexFile;
+
+	private final File tipsFile;
+
+	/** Raw ids of the commits in the table, sorted */
+	private byte[] ids = new byte[0];
+
+	/** Positions of the filter lengths in the index file, in table order */
+	private long[] positions = new long[0];
+
+	/** Number of commits in the table */
+	private int count;
+
+	/** Filters appended by an update which are not in the table yet */
+	private final ObjectIdSubclassMap<Filter> appended = new ObjectIdSubclassMap<Filter>();
+
+	private final Map<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private RandomAccessFile reader;
+
+	private final List<ObjectId> tips = new ArrayList<ObjectId>();
+
+	private boolean loaded;
+
+	/** Length of the index file up to the last complete record */
+	private long validLength;
+
+	private static class Filter extends ObjectId {
+		final byte[] data;
+
+		final long position;
+
+		Filter(AnyObjectId id, byte[] data, long position) {
+			super(id);
+			this.data = data;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            directory holding the files of the index
+	 * @param name
+	 *            base name of the files of the index
+	 */
+	public ChangedPathSidecar(File directory, String name) {
+		indexFile = new File(directory, name + ".idx"); //$NON-NLS-1$
+		tipsFile = new File(directory, name + ".tips"); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param commit
+	 * @param key
+	 * @return whether the commit changed the path compared to its first
+	 *         parent, as one of the results of
+	 *         {@link ChangedPathFilter#contains(byte[], Key)}
+	 */
+	public int contains(AnyObjectId commit, Key key) {
+		byte[] data;
+		synchronized (this) {
+			data = getFilter(commit);
+		}
+		if (data == null)
+			return ChangedPathFilter.UNKNOWN;
+		return ChangedPathFilter.contains(data, key);
+	}
+
+	/**
+	 * @return number of indexed commits
+	 */
+	public synchronized int size() {
+		return count + appended.size();
+	}
+
+	/**
+	 * Closes the index file. It is opened again when a filter is looked up.
+	 */
+	public synchronized void close() {
+		closeReader();
+		cache.clear();
+	}
+
+	/**
+	 * Indexes all commits reachable from the start commits which are neither
+	 * indexed yet nor covered by the commit-graph. Updates must not run
+	 * concurrently.
+	 *
+	 * @param repository
+	 * @param starts
+	 *            commits whose history is indexed
+	 * @param graph
+	 *            commit-graph of the repository, may be <code>null</code>
+	 * @param monitor
+	 *            receives one unit of work per indexed commit, may be
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if reading or writing fails or the monitor was cancelled
+	 */
+	public void update(Repository repository, Collection<ObjectId> starts,
+			CommitGraph graph, ProgressMonitor monitor) throws IOException {
+		if (monitor == null)
+			monitor = NullProgressMonitor.INSTANCE;
+		load();
+		RevWalk rw = new RevWalk(repository);
+		rw.setRetainBody(false);
+		TreeWalk tw = new TreeWalk(rw.getObjectReader());
+		DataOutputStream out = null;
+		try {
+			List<ObjectId> started = new ArrayList<ObjectId>();
+			for (ObjectId start : starts) {
+				rw.markStart(rw.parseCommit(start));
+				started.add(start);
+			}
+			for (ObjectId tip : getTips()) {
+				try {
+					rw.markUninteresting(rw.parseCommit(tip));
+				} catch (IOException e) {
+					// tip was garbage collected, its history is walked again
+				}
+			}
+
+			int pending = 0;
+			RevCommit commit;
+			while ((commit = rw.next()) != null) {
+				if (monitor.isCancelled())
+					throw new InterruptedIOException();
+				synchronized (this) {
+					if (appended.contains(commit) || find(commit) >= 0)
+						continue;
+				}
+				if (graph != null && graph.hasFilter(commit))
+					continue;
+				byte[] data = ChangedPathFilter.create(getChangedPaths(tw,
+						commit));
+				if (out == null)
+					out = openForAppend();
+				out.write(toRaw(commit));
+				out.writeInt(data.length);
+				out.write(data);
+				long position = validLength + Constants.OBJECT_ID_LENGTH;
+				validLength = position + 4 + data.length;
+				synchronized (this) {
+					appended.add(new Filter(commit, data, position));
+				}
+				monitor.update(1);
+				if (++pending == FLUSH_INTERVAL) {
+					out.flush();
+					pending = 0;
+					synchronized (this) {
+						if (appended.size() >= MAX_APPENDED)
+							mergeAppended();
+					}
+				}
+			}
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+			synchronized (this) {
+				mergeAppended();
+			}
+			saveTips(started);
+		} finally {
+			if (out != null)
+				out.close();
+			tw.release();
+			rw.release();
+		}
+	}
+
+	private static byte[] toRaw(AnyObjectId id) {
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		id.copyRawTo(raw, 0);
+		return raw;
+	}
+
+	/**
+	 * Collects the files changed compared to the first parent and all of
+	 * their leading directories. Stops early when there are too many for a
+	 * filter.
+	 */
+	private static Set<String> getChangedPaths(TreeWalk tw, RevCommit commit)
+			throws IOException {
+		Set<String> paths = new HashSet<String>();
+		tw.reset();
+		tw.setRecursive(true);
+		tw.setFilter(TreeFilter.ANY_DIFF);
+		if (commit.getParentCount() > 0)
+			tw.addTree(commit.getParent(0).getTree());
+		else
+			tw.addTree(new EmptyTreeIterator());
+		tw.addTree(commit.getTree());
+		while (tw.next() && paths.size() <= ChangedPathFilter.MAX_CHANGED_PATHS) {
+			String path = tw.getPathString();
+			paths.add(path);
+			for (int slash = path.lastIndexOf('/'); slash > 0; slash = path
+					.lastIndexOf('/', slash - 1))
+				if (!paths.add(path.substring(0, slash)))
+					break;
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the filter of the commit, or <code>null</code> if the commit is
+	 *         not indexed or its filter could not be read
+	 */
+	private byte[] getFilter(AnyObjectId commit) {
+		Filter filter = appended.get(commit);
+		if (filter != null)
+			return filter.data;
+		int index = find(commit);
+		if (index < 0)
+			return null;
+		Long position = Long.valueOf(positions[index]);
+		byte[] data = cache.get(position);
+		if (data == null) {
+			try {
+				data = read(positions[index]);
+			} catch (IOException e) {
+				// the history walk falls back to comparing the trees
+				closeReader();
+				return null;
+			}
+			cache.put(position, data);
+		}
+		return data;
+	}
+
+	private byte[] read(long position) throws IOException {
+		if (reader == null)
+			reader = new RandomAccessFile(indexFile, "r"); //$NON-NLS-1$
+		reader.seek(position);
+		int length = reader.readInt();
+		if (length < 0 || length > MAX_FILTER_LENGTH)
+			throw new IOException("Corrupt changed-path index " + indexFile); //$NON-NLS-1$
+		byte[] data = new byte[length];
+		reader.readFully(data);
+		return data;
+	}
+
+	private void closeReader() {
+		if (reader == null)
+			return;
+		try {
+			reader.close();
+		} catch (IOException e) {
+			// nothing was written
+		}
+		reader = null;
+	}
+
+	/**
+	 * @return the position of the commit in the table, or -1
+	 */
+	private int find(AnyObjectId commit) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = commit.compareTo(ids, mid * Constants.OBJECT_ID_LENGTH);
+			if (cmp < 0)
+				high = mid;
+			else if (cmp > 0)
+				low = mid + 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds the flushed filters of the running update to the table.
+	 */
+	private void mergeAppended() {
+		if (appended.size() == 0)
+			return;
+		List<Filter> added = new ArrayList<Filter>(appended.size());
+		for (Filter filter : appended)
+			added.add(filter);
+		Collections.sort(added);
+		int size = count + added.size();
+		byte[] newIds = new byte[size * Constants.OBJECT_ID_LENGTH];
+		long[] newPositions = new long[size];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < size; k++) {
+			if (j == added.size()
+					|| (i < count && added.get(j).compareTo(ids,
+							i * Constants.OBJECT_ID_LENGTH) > 0)) {
+				System.arraycopy(ids, i * Constants.OBJECT_ID_LENGTH, newIds, k
+						* Constants.OBJECT_ID_LENGTH, Constants.OBJECT_ID_LENGTH);
+				newPositions[k] = positions[i++];
+			} else {
+				Filter filter = added.get(j++);
+				filter.copyRawTo(newIds, k * Constants.OBJECT_ID_LENGTH);
+				newPositions[k] = filter.position;
+			}
+		}
+		ids = newIds;
+		positions = newPositions;
+		count = size;
+		appended.clear();
+	}
+
+	private void add(byte[] raw, long position) {
+		if (count == positions.length) {
+			int capacity = Math.max(1024, count + (count >> 1));
+			byte[] newIds = new byte[capacity * Constants.OBJECT_ID_LENGTH];
+			System.arraycopy(ids, 0, newIds, 0, count
+					* Constants.OBJECT_ID_LENGTH);
+			ids = newIds;
+			long[] newPositions = new long[capacity];
+			System.arraycopy(positions, 0, newPositions, 0, count);
+			positions = newPositions;
+		}
+		System.arraycopy(raw, 0, ids, count * Constants.OBJECT_ID_LENGTH,
+				raw.length);
+		positions[count++] = position;
+	}
+
+	/**
+	 * Sorts the table by commit id, with a heap sort which needs no memory
+	 * besides the table.
+	 */
+	private void sort() {
+		for (int i = count / 2 - 1; i >= 0; i--)
+			siftDown(i, count);
+		for (int end = count - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= end)
+				return;
+			if (child + 1 < end && compare(child + 1, child) > 0)
+				child++;
+			if (compare(i, child) >= 0)
+				return;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private int compare(int a, int b) {
+		int pa = a * Constants.OBJECT_ID_LENGTH;
+		int pb = b * Constants.OBJECT_ID_LENGTH;
+		for (int n = 0; n < Constants.OBJECT_ID_LENGTH; n++) {
+			int cmp = (ids[pa + n] & 0xff) - (ids[pb + n] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return 0;
+	}
+
+	private void swap(int a, int b) {
+		int pa = a * Constants.OBJECT_ID_LENGTH;
+		int pb = b * Constants.OBJECT_ID_LENGTH;
+		for (int n = 0; n < Constants.OBJECT_ID_LENGTH; n++) {
+			byte t = ids[pa + n];
+			ids[pa + n] = ids[pb + n];
+			ids[pb + n] = t;
+		}
+		long t = positions[a];
+		positions[a] = positions[b];
+		positions[b] = t;
+	}
+
+	private synchronized List<ObjectId> getTips() {
+		return new ArrayList<ObjectId>(tips);
+	}
+
+	private synchronized void load() throws IOException {
+		if (loaded)
+			return;
+		loaded = true;
+		if (indexFile.isFile()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+			try {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+					validLength = 8;
+					byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+					byte[] data = new byte[MAX_FILTER_LENGTH];
+					for (;;) {
+						in.readFully(raw);
+						int length = in.readInt();
+						if (length < 0 || length > MAX_FILTER_LENGTH)
+							break;
+						in.readFully(data, 0, length);
+						add(raw, validLength + raw.length);
+						validLength += raw.length + 4 + length;
+					}
+				}
+			} catch (EOFException e) {
+				// end of index or record truncated by an interrupted update
+			} finally {
+				in.close();
+				sort();
+			}
+		}
+		// tips are only valid together with the filters of their history
+		if (validLength > 0 && tipsFile.isFile()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(tipsFile)));
+			try {
+				byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					in.readFully(raw);
+					tips.add(ObjectId.fromRaw(raw));
+				}
+			} catch (EOFException e) {
+				tips.clear();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	private DataOutputStream openForAppend() throws IOException {
+		File dir = indexFile.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Could not create " + dir); //$NON-NLS-1$
+		boolean exists = validLength > 0;
+		if (indexFile.length() != validLength) {
+			// drop a record truncated by an interrupted update
+			synchronized (this) {
+				closeReader();
+			}
+			RandomAccessFile file = new RandomAccessFile(indexFile, "rw"); //$NON-NLS-1$
+			try {
+				file.setLength(validLength);
+			} finally {
+				file.close();
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(indexFile, exists)));
+		if (!exists) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			validLength = 8;
+		}
+		return out;
+	}
+
+	private synchronized void saveTips(List<ObjectId> started)
+			throws IOException {
+		for (ObjectId tip : tips)
+			if (!started.contains(tip) && started.size() < MAX_TIPS)
+				started.add(tip);
+		tips.clear();
+		tips.addAll(started);
+		File dir = tipsFile.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Could not create " + dir); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tipsFile)));
+		try {
+			out.writeInt(tips.size());
+			for (ObjectId tip : tips)
+				out.write(toRaw(tip));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.DateRevQueue;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Walks the history of a single path in commit date order, like a
+ * {@link RevWalk} with a path filter and <code>TreeFilter.ANY_DIFF</code>.
+ * <p>
+ * Before the trees of a commit are compared the changed-path filter of the
+ * commit is consulted. If it rules out a change of the path compared to the
+ * first parent, the commit is skipped and only the first parent is followed
+ * without reading any tree. Otherwise the path is looked up in the commit and
+ * all of its parents; a merge with the same entry as one of its parents only
+ * follows that parent.
+ */
+public class ChangedPathWalk {
+
+	private final RevWalk walk;
+
+	private final ObjectReader reader;
+
+	private final ChangedPathIndex index;
+
+	private final Key key;
+
+	private final DateRevQueue queue = new DateRevQueue();
+
+	private final RevFlag seen;
+
+	private ProgressMonitor monitor = NullProgressMonitor.INSTANCE;
+
+	/**
+	 * @param walk
+	 *            the walk used to parse commits
+	 * @param index
+	 *            changed-path filters of the repository, may be
+	 *            <code>null</code>
+	 * @param path
+	 *            repository relative path of a file or directory
+	 */
+	public ChangedPathWalk(RevWalk walk, ChangedPathIndex index, String path) {
+		this.walk = walk;
+		this.reader = walk.getObjectReader();
+		this.index = index;
+		this.key = new Key(path);
+		this.seen = walk.newFlag("ChangedPathWalk.seen"); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param monitor
+	 *            monitor checked for cancellation before every commit
+	 */
+	public void setProgressMonitor(ProgressMonitor monitor) {
+		this.monitor = monitor != null ? monitor : NullProgressMonitor.INSTANCE;
+	}
+
+	/**
+	 * @param commit
+	 *            commit to start the walk from
+	 * @throws IOException
+	 */
+	public void markStart(RevCommit commit) throws IOException {
+		add(commit);
+	}
+
+	/**
+	 * @return the next commit changing the path, or <code>null</code> if
+	 *         there is none
+	 * @throws IOException
+	 *             an {@link InterruptedIOException} if the monitor was
+	 *             cancelled
+	 */
+	public RevCommit next() throws IOException {
+		RevCommit commit;
+		while ((commit = queue.next()) != null) {
+			if (monitor.isCancelled())
+				throw new InterruptedIOException();
+			RevCommit[] parents = commit.getParents();
+			if (parents.length == 0) {
+				if (TreeWalk.forPath(reader, key.getPath(), commit.getTree()) != null)
+					return commit;
+				continue;
+			}
+			if (index != null
+					&& index.contains(commit, key) == ChangedPathFilter.NO) {
+				add(parents[0]);
+				continue;
+			}
+			int same = findSameParent(commit);
+			if (same >= 0) {
+				add(parents[same]);
+				continue;
+			}
+			for (RevCommit parent : parents)
+				add(parent);
+			return commit;
+		}
+		return null;
+	}
+
+	/**
+	 * Frees the resources of the walk, the {@link RevWalk} stays usable.
+	 */
+	public void release() {
+		queue.clear();
+		walk.disposeFlag(seen);
+	}
+
+	private void add(RevCommit commit) throws IOException {
+		if (commit.has(seen))
+			return;
+		commit.add(seen);
+		walk.parseHeaders(commit);
+		queue.add(commit);
+	}
+
+	/**
+	 * @return index of the first parent having the same entry for the path as
+	 *         the commit, or -1 if the commit changed the path
+	 */
+	private int findSameParent(RevCommit commit) throws IOException {
+		RevCommit[] parents = commit.getParents();
+		ObjectId[] trees = new ObjectId[parents.length + 1];
+		trees[0] = commit.getTree();
+		for (int i = 0; i < parents.length; i++) {
+			walk.parseHeaders(parents[i]);
+			trees[i + 1] = parents[i].getTree();
+		}
+		TreeWalk tw = TreeWalk.forPath(reader, key.getPath(), trees);
+		if (tw == null)
+			// the path exists in none of the trees
+			return 0;
+		for (int i = 1; i < trees.length; i++)
+			if (tw.getRawMode(0) == tw.getRawMode(i) && tw.idEqual(0, i))
+				return i - 1;
+		return -1;
+	}
+}
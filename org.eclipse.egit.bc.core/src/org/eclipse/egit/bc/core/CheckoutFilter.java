@@ -0,0 +1,322 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FS_Win32;
+import org.eclipse.jgit.util.FS_Win32_Cygwin;
+import org.eclipse.jgit.util.io.AutoCRLFInputStream;
+
+/**
+ * The conversions Git applies to the content of one file on checkout, as
+ * found by {@link CheckoutFilters}.
+ * <p>
+ * The content is converted while it is streamed, so blobs of any size are
+ * filtered with bounded memory. Like Git, line endings are converted first
+ * and the smudge filter runs on the result. Files tracked with Git LFS are
+ * read from the local LFS object store without starting the
+ * <code>git-lfs</code> process; only objects missing there are passed to
+ * the configured smudge command, which downloads them.
+ */
+public class CheckoutFilter {
+
+	/** Git LFS pointer files are never larger than this */
+	private static final int MAX_POINTER_SIZE = 1024;
+
+	private static final String POINTER_VERSION = "version https://git-lfs.github.com/spec/"; //$NON-NLS-1$
+
+	private static final String LEGACY_POINTER_VERSION = "version https://hawser.github.com/spec/"; //$NON-NLS-1$
+
+	private static final String POINTER_OID = "oid sha256:"; //$NON-NLS-1$
+
+	/** Line ending conversion on checkout */
+	enum Eol {
+		/** content is kept as it is */
+		NONE,
+		/** LF is converted to CRLF */
+		CRLF,
+		/** LF is converted to CRLF unless the content looks binary */
+		AUTO_CRLF
+	}
+
+	private final Repository repository;
+
+	private final String path;
+
+	private final File lfsObjects;
+
+	private final String smudgeCommand;
+
+	private final Eol eol;
+
+	/**
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the file
+	 * @param lfsObjects
+	 *            the local LFS object store if the file is tracked with Git
+	 *            LFS, else <code>null</code>
+	 * @param smudgeCommand
+	 *            the configured smudge command, may be <code>null</code>
+	 * @param eol
+	 *            line ending conversion
+	 */
+	CheckoutFilter(Repository repository, String path, File lfsObjects,
+			String smudgeCommand, Eol eol) {
+		this.repository = repository;
+		this.path = path;
+		this.lfsObjects = lfsObjects;
+		this.smudgeCommand = smudgeCommand;
+		this.eol = eol;
+	}
+
+	/**
+	 * @return <code>true</code> if the content is checked out as it is
+	 */
+	public boolean isIdentity() {
+		return lfsObjects == null && smudgeCommand == null && eol == Eol.NONE;
+	}
+
+	/**
+	 * @return describes the conversions, for keying filtered content in a
+	 *         cache; <code>null</code> if the content is checked out as it
+	 *         is
+	 */
+	public String getSignature() {
+		if (isIdentity())
+			return null;
+		StringBuilder signature = new StringBuilder();
+		if (lfsObjects != null)
+			signature.append("lfs-"); //$NON-NLS-1$
+		if (smudgeCommand != null)
+			signature.append("smudge").append( //$NON-NLS-1$
+					Integer.toHexString(smudgeCommand.hashCode())).append('-');
+		if (eol == Eol.CRLF)
+			signature.append("crlf-"); //$NON-NLS-1$
+		else if (eol == Eol.AUTO_CRLF)
+			signature.append("autocrlf-"); //$NON-NLS-1$
+		return signature.substring(0, signature.length() - 1);
+	}
+
+	/**
+	 * Opens the content of the file as it is checked out. Errors of the
+	 * smudge command are reported when the end of the stream is reached.
+	 *
+	 * @param loader
+	 *            loader of the blob
+	 * @return the converted content
+	 * @throws IOException
+	 *             if the blob could not be read, the smudge command could
+	 *             not be started or a Git LFS object is neither stored
+	 *             locally nor can be downloaded
+	 */
+	public InputStream open(ObjectLoader loader) throws IOException {
+		if (lfsObjects != null) {
+			File object = getLfsObject(loader);
+			if (object != null && object.isFile())
+				return new FileInputStream(object);
+			if (object != null && smudgeCommand == null)
+				throw new IOException("Git LFS object of " + path //$NON-NLS-1$
+						+ " is missing in " + lfsObjects); //$NON-NLS-1$
+		}
+		InputStream in = loader.openStream();
+		if (eol != Eol.NONE)
+			in = new AutoCRLFInputStream(in, eol == Eol.AUTO_CRLF);
+		if (smudgeCommand != null)
+			in = smudge(in);
+		return in;
+	}
+
+	/**
+	 * @return the file in the local LFS object store the blob points to, or
+	 *         <code>null</code> if the blob is no LFS pointer
+	 */
+	private File getLfsObject(ObjectLoader loader) throws IOException {
+		if (loader.getSize() > MAX_POINTER_SIZE)
+			return null;
+		String[] lines = new String(loader.getCachedBytes(), "UTF-8") //$NON-NLS-1$
+				.split("\r?\n"); //$NON-NLS-1$
+		if (lines.length == 0
+				|| !(lines[0].startsWith(POINTER_VERSION) || lines[0]
+						.startsWith(LEGACY_POINTER_VERSION)))
+			return null;
+		for (String line : lines)
+			if (line.startsWith(POINTER_OID)) {
+				String oid = line.substring(POINTER_OID.length()).trim();
+				if (!oid.matches("[0-9a-f]{64}")) //$NON-NLS-1$
+					return null;
+				return new File(new File(new File(lfsObjects,
+						oid.substring(0, 2)), oid.substring(2, 4)), oid);
+			}
+		return null;
+	}
+
+	private InputStream smudge(final InputStream in) throws IOException {
+		// %f is replaced by the quoted path like Git does
+		FS fs = repository.getFS();
+		String command = smudgeCommand.replace("%f", quote(fs, path)); //$NON-NLS-1$
+		ProcessBuilder builder = fs.runInShell(command, new String[0]);
+		if (!repository.isBare())
+			builder.directory(repository.getWorkTree());
+		final Process process;
+		try {
+			process = builder.start();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new SmudgeInputStream(process, in, command);
+	}
+
+	/**
+	 * Quotes a path for the shell the command runs in, cmd.exe on Windows
+	 * unless Cygwin is used and sh everywhere else.
+	 */
+	private static String quote(FS fs, String path) {
+		if (fs instanceof FS_Win32 && !(fs instanceof FS_Win32_Cygwin))
+			// Windows paths cannot contain double quotes
+			return '"' + path + '"';
+		return "'" + path.replace("'", "'\\''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/**
+	 * Output of a smudge command. Its input is written and its error output
+	 * collected by two daemon threads.
+	 */
+	private static class SmudgeInputStream extends FilterInputStream {
+
+		private static final int MAX_ERROR_OUTPUT = 4096;
+
+		private final Process process;
+
+		private final String command;
+
+		private final Thread feeder;
+
+		private final Thread drainer;
+
+		private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+		private volatile IOException feedError;
+
+		private boolean finished;
+
+		SmudgeInputStream(final Process process, final InputStream source,
+				String command) {
+			super(process.getInputStream());
+			this.process = process;
+			this.command = command;
+			feeder = new Thread("Beyond Compare smudge filter input") { //$NON-NLS-1$
+				@Override
+				public void run() {
+					byte[] buf = new byte[8192];
+					OutputStream out = process.getOutputStream();
+					try {
+						try {
+							int n;
+							while ((n = source.read(buf)) != -1)
+								out.write(buf, 0, n);
+						} finally {
+							try {
+								source.close();
+							} finally {
+								out.close();
+							}
+						}
+					} catch (IOException e) {
+						feedError = e;
+					}
+				}
+			};
+			drainer = new Thread("Beyond Compare smudge filter errors") { //$NON-NLS-1$
+				@Override
+				public void run() {
+					byte[] buf = new byte[1024];
+					InputStream err = process.getErrorStream();
+					try {
+						try {
+							int n;
+							while ((n = err.read(buf)) != -1)
+								synchronized (errors) {
+									if (errors.size() < MAX_ERROR_OUTPUT)
+										errors.write(buf, 0, n);
+								}
+						} finally {
+							err.close();
+						}
+					} catch (IOException e) {
+						// the process is gone
+					}
+				}
+			};
+			feeder.setDaemon(true);
+			drainer.setDaemon(true);
+			feeder.start();
+			drainer.start();
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if (c == -1)
+				finish();
+			return c;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1)
+				finish();
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!finished) {
+					finished = true;
+					process.destroy();
+				}
+			}
+		}
+
+		private void finish() throws IOException {
+			if (finished)
+				return;
+			finished = true;
+			int exitCode;
+			try {
+				exitCode = process.waitFor();
+				feeder.join();
+				drainer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				process.destroy();
+				throw new InterruptedIOException(command);
+			}
+			if (exitCode != 0) {
+				String message;
+				synchronized (errors) {
+					message = errors.toString().trim();
+				}
+				throw new IOException("Smudge filter '" + command //$NON-NLS-1$
+						+ "' failed with exit code " + exitCode //$NON-NLS-1$
+						+ (message.length() > 0 ? ": " + message : "")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			if (feedError != null)
+				throw feedError;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.egit.bc.core.CheckoutFilter.Eol;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.CoreConfig.AutoCRLF;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Finds the {@link CheckoutFilter} of the files of a repository from their
+ * attributes and the repository configuration.
+ * <p>
+ * JGit does not support attributes yet, so a minimal reader is used. The
+ * attributes are read from <code>core.attributesFile</code>, the
+ * <code>.gitattributes</code> files of the working tree and
+ * <code>info/attributes</code> in the Git directory, later sources
+ * overriding earlier ones. The <code>filter</code>, <code>text</code>,
+ * <code>eol</code> and legacy <code>crlf</code> attributes are honored
+ * together with <code>core.autocrlf</code> and <code>core.eol</code>.
+ * Attribute files are read once per instance, so an instance should be used
+ * for one compare only.
+ */
+public class CheckoutFilters {
+
+	private static final String ATTRIBUTES_FILE = ".gitattributes"; //$NON-NLS-1$
+
+	private final Repository repository;
+
+	private final AutoCRLF autoCRLF;
+
+	private final String coreEol;
+
+	private final GitAttributes global;
+
+	private final GitAttributes info;
+
+	private final Map<String, GitAttributes> directories = new HashMap<String, GitAttributes>();
+
+	/**
+	 * @param repository
+	 * @throws IOException
+	 *             if an attributes file could not be read
+	 */
+	public CheckoutFilters(Repository repository) throws IOException {
+		this.repository = repository;
+		Config config = repository.getConfig();
+		autoCRLF = config.getEnum(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_AUTOCRLF, AutoCRLF.FALSE);
+		coreEol = config.getString(ConfigConstants.CONFIG_CORE_SECTION, null,
+				"eol"); //$NON-NLS-1$
+		global = GitAttributes.load(getGlobalAttributesFile(), ""); //$NON-NLS-1$
+		info = GitAttributes.load(new File(repository.getDirectory(),
+				"info/attributes"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of a file
+	 * @return the conversions applied to the file on checkout
+	 * @throws IOException
+	 *             if an attributes file could not be read
+	 */
+	public synchronized CheckoutFilter get(String path) throws IOException {
+		Map<String, String> attributes = new HashMap<String, String>();
+		global.apply(path, attributes);
+		// from the root down, deeper files override
+		int slash = -1;
+		do {
+			getDirectory(path.substring(0, slash + 1)).apply(path, attributes);
+			slash = path.indexOf('/', slash + 1);
+		} while (slash >= 0);
+		info.apply(path, attributes);
+
+		File lfsObjects = null;
+		String smudgeCommand = null;
+		String filter = attributes.get("filter"); //$NON-NLS-1$
+		if (filter != null && !GitAttributes.SET.equals(filter)
+				&& !GitAttributes.UNSET.equals(filter)) {
+			smudgeCommand = repository.getConfig().getString("filter", //$NON-NLS-1$
+					filter, "smudge"); //$NON-NLS-1$
+			if (filter.equals("lfs")) //$NON-NLS-1$
+				lfsObjects = getLfsObjectDirectory();
+		}
+		return new CheckoutFilter(repository, path, lfsObjects, smudgeCommand,
+				getEol(attributes));
+	}
+
+	private Eol getEol(Map<String, String> attributes) {
+		String text = attributes.get("text"); //$NON-NLS-1$
+		String eol = attributes.get("eol"); //$NON-NLS-1$
+		String crlf = attributes.get("crlf"); //$NON-NLS-1$
+		if (text == null && crlf != null) {
+			// crlf is the old name of text, crlf=input of eol=lf
+			if ("input".equals(crlf)) { //$NON-NLS-1$
+				text = GitAttributes.SET;
+				eol = "lf"; //$NON-NLS-1$
+			} else
+				text = crlf;
+		}
+		if (GitAttributes.UNSET.equals(text) || "lf".equals(eol)) //$NON-NLS-1$
+			return Eol.NONE;
+
+		boolean toCrlf;
+		if ("crlf".equals(eol) || autoCRLF == AutoCRLF.TRUE) //$NON-NLS-1$
+			toCrlf = true;
+		else if (autoCRLF == AutoCRLF.INPUT)
+			toCrlf = false;
+		else if (coreEol == null || "native".equals(coreEol)) //$NON-NLS-1$
+			toCrlf = File.separatorChar == '\\';
+		else
+			toCrlf = "crlf".equals(coreEol); //$NON-NLS-1$
+		if (!toCrlf)
+			return Eol.NONE;
+
+		if (GitAttributes.SET.equals(text) || (text == null && eol != null))
+			return Eol.CRLF;
+		if ("auto".equals(text) || (text == null && autoCRLF == AutoCRLF.TRUE)) //$NON-NLS-1$
+			return Eol.AUTO_CRLF;
+		return Eol.NONE;
+	}
+
+	private GitAttributes getDirectory(String dir) throws IOException {
+		GitAttributes attributes = directories.get(dir);
+		if (attributes == null) {
+			if (repository.isBare())
+				attributes = GitAttributes.EMPTY;
+			else
+				attributes = GitAttributes.load(new File(
+						repository.getWorkTree(), dir + ATTRIBUTES_FILE), dir);
+			directories.put(dir, attributes);
+		}
+		return attributes;
+	}
+
+	private File getGlobalAttributesFile() {
+		String file = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null, "attributesfile"); //$NON-NLS-1$
+		File home = repository.getFS().userHome();
+		if (file == null)
+			return new File(home, ".config/git/attributes"); //$NON-NLS-1$
+		if (file.startsWith("~/") && home != null) //$NON-NLS-1$
+			return new File(home, file.substring(2));
+		return new File(file);
+	}
+
+	private File getLfsObjectDirectory() {
+		String storage = repository.getConfig().getString("lfs", null, //$NON-NLS-1$
+				"storage"); //$NON-NLS-1$
+		File lfs = new File(repository.getDirectory(), "lfs"); //$NON-NLS-1$
+		if (storage != null) {
+			lfs = new File(storage);
+			if (!lfs.isAbsolute())
+				lfs = new File(repository.getDirectory(), storage);
+		}
+		return new File(lfs, "objects"); //$NON-NLS-1$
+	}
+}
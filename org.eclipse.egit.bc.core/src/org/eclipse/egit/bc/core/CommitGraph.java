@@ -0,0 +1,242 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.egit.bc.core.ChangedPathFilter.Key;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Reads the changed-path Bloom filters of the commit-graph written by C Git,
+ * either the single file <code>objects/info/commit-graph</code> or the split
+ * chain in <code>objects/info/commit-graphs</code>.
+ * <p>
+ * Only the chunks needed to look up the filter of a commit are read, and
+ * they are copied into the heap so that no file handle is kept open while
+ * <code>git gc</code> replaces the files.
+ */
+public class CommitGraph {
+
+	private static final int SIGNATURE = 0x43475048; // CGPH
+
+	private static final int OIDF = 0x4f494446;
+
+	private static final int OIDL = 0x4f49444c;
+
+	private static final int BIDX = 0x42494458;
+
+	private static final int BDAT = 0x42444154;
+
+	private static final int BDAT_HEADER = 12;
+
+	private final File graphFile;
+
+	private final File chainFile;
+
+	private final File chainDir;
+
+	private volatile Layer[] layers = new Layer[0];
+
+	private long stamp;
+
+	/**
+	 * @param objectsDirectory
+	 *            the object directory of the repository
+	 */
+	public CommitGraph(File objectsDirectory) {
+		File info = new File(objectsDirectory, "info"); //$NON-NLS-1$
+		graphFile = new File(info, "commit-graph"); //$NON-NLS-1$
+		chainDir = new File(info, "commit-graphs"); //$NON-NLS-1$
+		chainFile = new File(chainDir, "commit-graph-chain"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Rereads the commit-graph if it was rewritten since the last call.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void refresh() throws IOException {
+		long current = graphFile.lastModified() * 31 + graphFile.length();
+		current = current * 31 + chainFile.lastModified() * 31
+				+ chainFile.length();
+		if (current == stamp)
+			return;
+		List<Layer> read = new ArrayList<Layer>();
+		try {
+			if (graphFile.isFile())
+				read.add(new Layer(graphFile));
+			else if (chainFile.isFile())
+				for (String hash : readChain())
+					read.add(0, new Layer(new File(chainDir, "graph-" + hash //$NON-NLS-1$
+							+ ".graph"))); //$NON-NLS-1$
+		} finally {
+			layers = read.toArray(new Layer[read.size()]);
+			stamp = current;
+		}
+	}
+
+	/**
+	 * @return whether any part of the commit-graph has changed-path filters
+	 */
+	public boolean hasFilters() {
+		for (Layer layer : layers)
+			if (layer.filterIndex != null)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param commit
+	 * @return whether the commit-graph has a changed-path filter for the
+	 *         commit
+	 */
+	public boolean hasFilter(AnyObjectId commit) {
+		for (Layer layer : layers)
+			if (layer.filterIndex != null && layer.find(commit) >= 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param commit
+	 * @param key
+	 * @return whether the commit changed the path compared to its first
+	 *         parent, as one of the results of
+	 *         {@link ChangedPathFilter#contains(byte[], Key)}
+	 */
+	public int contains(AnyObjectId commit, Key key) {
+		for (Layer layer : layers) {
+			int pos = layer.find(commit);
+			if (pos >= 0)
+				return layer.contains(pos, key);
+		}
+		return ChangedPathFilter.UNKNOWN;
+	}
+
+	private List<String> readChain() throws IOException {
+		List<String> hashes = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(chainFile), "US-ASCII")); //$NON-NLS-1$
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.length() > 0)
+					hashes.add(line.trim());
+		} finally {
+			reader.close();
+		}
+		return hashes;
+	}
+
+	private static class Layer {
+		private final ByteBuffer fanout;
+
+		private final ByteBuffer ids;
+
+		private ByteBuffer filterIndex;
+
+		private ByteBuffer filterData;
+
+		private int version;
+
+		private int numHashes;
+
+		Layer(File file) throws IOException {
+			RandomAccessFile in = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			try {
+				ByteBuffer header = read(in, 0, 8);
+				if (header.getInt(0) != SIGNATURE || header.get(4) != 1
+						|| header.get(5) != 1)
+					throw new IOException("Unsupported commit-graph " + file); //$NON-NLS-1$
+				int chunks = header.get(6) & 0xff;
+				ByteBuffer toc = read(in, 8, (chunks + 1) * 12);
+				ByteBuffer oidf = null;
+				ByteBuffer oidl = null;
+				for (int i = 0; i < chunks; i++) {
+					int id = toc.getInt(i * 12);
+					long start = toc.getLong(i * 12 + 4);
+					long end = toc.getLong(i * 12 + 16);
+					int length = (int) (end - start);
+					if (id == OIDF)
+						oidf = read(in, start, length);
+					else if (id == OIDL)
+						oidl = read(in, start, length);
+					else if (id == BIDX)
+						filterIndex = read(in, start, length);
+					else if (id == BDAT)
+						filterData = read(in, start, length);
+				}
+				if (oidf == null || oidl == null)
+					throw new IOException("Corrupt commit-graph " + file); //$NON-NLS-1$
+				fanout = oidf;
+				ids = oidl;
+				if (filterIndex == null || filterData == null) {
+					filterIndex = null;
+					filterData = null;
+				} else {
+					version = filterData.getInt(0);
+					numHashes = filterData.getInt(4);
+					if (version != ChangedPathFilter.VERSION_1
+							&& version != ChangedPathFilter.VERSION_2)
+						filterIndex = null;
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		int find(AnyObjectId commit) {
+			int first = commit.getFirstByte();
+			int low = first == 0 ? 0 : fanout.getInt((first - 1) * 4);
+			int high = fanout.getInt(first * 4);
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			commit.copyRawTo(raw, 0);
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(raw, mid * Constants.OBJECT_ID_LENGTH);
+				if (cmp == 0)
+					return mid;
+				if (cmp < 0)
+					high = mid;
+				else
+					low = mid + 1;
+			}
+			return -1;
+		}
+
+		int contains(int pos, Key key) {
+			if (filterIndex == null)
+				return ChangedPathFilter.UNKNOWN;
+			int start = pos == 0 ? 0 : filterIndex.getInt((pos - 1) * 4);
+			int end = filterIndex.getInt(pos * 4);
+			return ChangedPathFilter.contains(filterData, BDAT_HEADER + start,
+					end - start, key, version, numHashes);
+		}
+
+		private int compare(byte[] raw, int offset) {
+			for (int i = 0; i < raw.length; i++) {
+				int a = raw[i] & 0xff;
+				int b = ids.get(offset + i) & 0xff;
+				if (a != b)
+					return a - b;
+			}
+			return 0;
+		}
+
+		private static ByteBuffer read(RandomAccessFile in, long position,
+				int length) throws IOException {
+			byte[] buf = new byte[length];
+			in.seek(position);
+			in.readFully(buf);
+			return ByteBuffer.wrap(buf);
+		}
+	}
+}
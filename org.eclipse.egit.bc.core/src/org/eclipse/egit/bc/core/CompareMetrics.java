@@ -0,0 +1,310 @@
+package org.eclipse.egit.bc.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the stages of a compare.
+ * <p>
+ * The stages are timed with {@link #start()} and {@link Stage#record(long)}.
+ * Recording only updates atomic counters, so it can be done from any thread
+ * without locking. The metrics are shown in the Compare Metrics view
+ * and registered as platform MBean by the plugin activator.
+ */
+public class CompareMetrics implements CompareMetricsMBean {
+
+	/** Name the metrics are registered under */
+	public static final String OBJECT_NAME = "org.eclipse.egit.bc:type=CompareMetrics"; //$NON-NLS-1$
+
+	/** Number of histogram buckets, the last one takes all longer latencies */
+	private static final int BUCKETS = 32;
+
+	private static final CompareMetrics INSTANCE = new CompareMetrics();
+
+	/**
+	 * Latencies of one stage of a compare.
+	 */
+	public static class Stage {
+		private final String name;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong totalMicros = new AtomicLong();
+
+		private final AtomicLong maxMicros = new AtomicLong();
+
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		private Stage(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Records the time elapsed since a start.
+		 *
+		 * @param start
+		 *            value returned by {@link CompareMetrics#start()}
+		 */
+		public void record(long start) {
+			long micros = (System.nanoTime() - start) / 1000;
+			count.incrementAndGet();
+			totalMicros.addAndGet(micros);
+			long max;
+			while (micros > (max = maxMicros.get()))
+				if (maxMicros.compareAndSet(max, micros))
+					break;
+			int bucket = 64 - Long.numberOfLeadingZeros(micros);
+			histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		}
+
+		/**
+		 * @return name of the stage
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return number of measurements
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return average latency in microseconds
+		 */
+		public long getAverageMicros() {
+			long n = count.get();
+			return n == 0 ? 0 : totalMicros.get() / n;
+		}
+
+		/**
+		 * @return longest latency in microseconds
+		 */
+		public long getMaxMicros() {
+			return maxMicros.get();
+		}
+
+		/**
+		 * @return number of measurements per power of two microseconds,
+		 *         without the empty buckets at the end
+		 */
+		public long[] getHistogram() {
+			int length = BUCKETS;
+			while (length > 0 && histogram.get(length - 1) == 0)
+				length--;
+			long[] result = new long[length];
+			for (int i = 0; i < length; i++)
+				result[i] = histogram.get(i);
+			return result;
+		}
+
+		/**
+		 * @param fraction
+		 *            e.g. 0.5 for the median
+		 * @return upper bound in microseconds of the bucket containing the
+		 *         given fraction of the measurements
+		 */
+		public long getPercentileMicros(double fraction) {
+			long[] buckets = getHistogram();
+			long total = 0;
+			for (long n : buckets)
+				total += n;
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen > 0 && seen >= fraction * total)
+					return 1L << i;
+			}
+			return 0;
+		}
+
+		private void reset() {
+			count.set(0);
+			totalMicros.set(0);
+			maxMicros.set(0);
+			for (int i = 0; i < BUCKETS; i++)
+				histogram.set(i, 0);
+		}
+	}
+
+	/** Resolving the repository of the selection */
+	public final Stage resolveRepository = new Stage("Resolve repository"); //$NON-NLS-1$
+
+	/** Finding the commit to compare with in the history */
+	public final Stage findRevision = new Stage("Find revision"); //$NON-NLS-1$
+
+	/** Writing a revision into the revision cache */
+	public final Stage writeRevision = new Stage("Write revision"); //$NON-NLS-1$
+
+	/** Spawning the Beyond Compare process */
+	public final Stage spawn = new Stage("Spawn process"); //$NON-NLS-1$
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private final AtomicLong revisionCacheHits = new AtomicLong();
+
+	private final AtomicLong revisionCacheMisses = new AtomicLong();
+
+	private final AtomicInteger liveProcesses = new AtomicInteger();
+
+	private final AtomicLong launchFailures = new AtomicLong();
+
+	/**
+	 * @return the metrics of this plugin
+	 */
+	public static CompareMetrics getDefault() {
+		return INSTANCE;
+	}
+
+	private CompareMetrics() {
+		// singleton
+	}
+
+	/**
+	 * @return start time to pass to {@link Stage#record(long)}
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * @return all stages
+	 */
+	public Stage[] getStages() {
+		return new Stage[] { resolveRepository, findRevision, writeRevision,
+				spawn };
+	}
+
+	/**
+	 * @param bytes
+	 *            size of a revision written into the cache
+	 */
+	public void addBytesWritten(long bytes) {
+		bytesWritten.addAndGet(bytes);
+	}
+
+	/**
+	 * @param hit
+	 *            whether the revision was found in the revision cache
+	 */
+	public void recordRevisionCache(boolean hit) {
+		(hit ? revisionCacheHits : revisionCacheMisses).incrementAndGet();
+	}
+
+	/**
+	 * Counts a started process.
+	 */
+	public void processStarted() {
+		liveProcesses.incrementAndGet();
+	}
+
+	/**
+	 * Counts an exited process.
+	 */
+	public void processExited() {
+		liveProcesses.decrementAndGet();
+	}
+
+	/**
+	 * Counts a process that could not be started.
+	 */
+	public void launchFailed() {
+		launchFailures.incrementAndGet();
+	}
+
+	public long getResolveRepositoryCount() {
+		return resolveRepository.getCount();
+	}
+
+	public long getResolveRepositoryAverageMicros() {
+		return resolveRepository.getAverageMicros();
+	}
+
+	public long getResolveRepositoryMaxMicros() {
+		return resolveRepository.getMaxMicros();
+	}
+
+	public long[] getResolveRepositoryHistogram() {
+		return resolveRepository.getHistogram();
+	}
+
+	public long getFindRevisionCount() {
+		return findRevision.getCount();
+	}
+
+	public long getFindRevisionAverageMicros() {
+		return findRevision.getAverageMicros();
+	}
+
+	public long getFindRevisionMaxMicros() {
+		return findRevision.getMaxMicros();
+	}
+
+	public long[] getFindRevisionHistogram() {
+		return findRevision.getHistogram();
+	}
+
+	public long getWriteRevisionCount() {
+		return writeRevision.getCount();
+	}
+
+	public long getWriteRevisionAverageMicros() {
+		return writeRevision.getAverageMicros();
+	}
+
+	public long getWriteRevisionMaxMicros() {
+		return writeRevision.getMaxMicros();
+	}
+
+	public long[] getWriteRevisionHistogram() {
+		return writeRevision.getHistogram();
+	}
+
+	public long getSpawnCount() {
+		return spawn.getCount();
+	}
+
+	public long getSpawnAverageMicros() {
+		return spawn.getAverageMicros();
+	}
+
+	public long getSpawnMaxMicros() {
+		return spawn.getMaxMicros();
+	}
+
+	public long[] getSpawnHistogram() {
+		return spawn.getHistogram();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getRevisionCacheHits() {
+		return revisionCacheHits.get();
+	}
+
+	public long getRevisionCacheMisses() {
+		return revisionCacheMisses.get();
+	}
+
+	public int getLiveProcesses() {
+		return liveProcesses.get();
+	}
+
+	public long getLaunchFailures() {
+		return launchFailures.get();
+	}
+
+	public void reset() {
+		for (Stage stage : getStages())
+			stage.reset();
+		bytesWritten.set(0);
+		revisionCacheHits.set(0);
+		revisionCacheMisses.set(0);
+		launchFailures.set(0);
+	}
+}
@@ -0,0 +1,119 @@
+package org.eclipse.egit.bc.core;
+
+/**
+ * Management interface of {@link CompareMetrics}. Latencies are in
+ * microseconds; a histogram lists the number of measurements per power of
+ * two, i.e. bucket <code>i</code> counts latencies below <code>2^i</code>.
+ */
+public interface CompareMetricsMBean {
+
+	/**
+	 * @return number of resolved repositories
+	 */
+	long getResolveRepositoryCount();
+
+	/**
+	 * @return average time to resolve the repository of a selection
+	 */
+	long getResolveRepositoryAverageMicros();
+
+	/**
+	 * @return longest time to resolve the repository of a selection
+	 */
+	long getResolveRepositoryMaxMicros();
+
+	/**
+	 * @return latency histogram of resolving the repository of a selection
+	 */
+	long[] getResolveRepositoryHistogram();
+
+	/**
+	 * @return number of revisions looked up in the history
+	 */
+	long getFindRevisionCount();
+
+	/**
+	 * @return average time to find the revision to compare with
+	 */
+	long getFindRevisionAverageMicros();
+
+	/**
+	 * @return longest time to find the revision to compare with
+	 */
+	long getFindRevisionMaxMicros();
+
+	/**
+	 * @return latency histogram of finding the revision to compare with
+	 */
+	long[] getFindRevisionHistogram();
+
+	/**
+	 * @return number of revisions written into the revision cache
+	 */
+	long getWriteRevisionCount();
+
+	/**
+	 * @return average time to write a revision
+	 */
+	long getWriteRevisionAverageMicros();
+
+	/**
+	 * @return longest time to write a revision
+	 */
+	long getWriteRevisionMaxMicros();
+
+	/**
+	 * @return latency histogram of writing revisions
+	 */
+	long[] getWriteRevisionHistogram();
+
+	/**
+	 * @return number of spawned Beyond Compare processes
+	 */
+	long getSpawnCount();
+
+	/**
+	 * @return average time to spawn a process
+	 */
+	long getSpawnAverageMicros();
+
+	/**
+	 * @return longest time to spawn a process
+	 */
+	long getSpawnMaxMicros();
+
+	/**
+	 * @return latency histogram of spawning processes
+	 */
+	long[] getSpawnHistogram();
+
+	/**
+	 * @return number of bytes written into the revision cache
+	 */
+	long getBytesWritten();
+
+	/**
+	 * @return number of revisions found in the revision cache
+	 */
+	long getRevisionCacheHits();
+
+	/**
+	 * @return number of revisions not found in the revision cache
+	 */
+	long getRevisionCacheMisses();
+
+	/**
+	 * @return number of Beyond Compare processes still running
+	 */
+	int getLiveProcesses();
+
+	/**
+	 * @return number of Beyond Compare processes that could not be started
+	 */
+	long getLaunchFailures();
+
+	/**
+	 * Sets all counters and histograms back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,185 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Tells whether a working tree file has the same content as a blob, without
+ * launching a compare for it.
+ * <p>
+ * The id of the file is taken from the index if its stat data still matches
+ * the file and the entry is not racily clean, else from a cache of recently
+ * hashed files keyed by modification time and size. Only if both are
+ * inconclusive and the file has the size of the blob, the file is hashed.
+ */
+public class ContentIdentity {
+
+	/** Maximum number of hashed files remembered */
+	private static final int MAX_HASHES = 1000;
+
+	/** Files modified more recently may change without a new timestamp */
+	private static final long RACY_MILLIS = 3000;
+
+	private static final Map<File, Hash> HASHES = new LinkedHashMap<File, Hash>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, Hash> eldest) {
+			return size() > MAX_HASHES;
+		}
+	};
+
+	private static class Hash {
+		final long lastModified;
+
+		final long length;
+
+		final ObjectId id;
+
+		Hash(long lastModified, long length, ObjectId id) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.id = id;
+		}
+	}
+
+	private final Repository repository;
+
+	private final ObjectReader reader;
+
+	private DirCache index;
+
+	private long indexModified;
+
+	/**
+	 * @param repository
+	 */
+	public ContentIdentity(Repository repository) {
+		this.repository = repository;
+		this.reader = repository.newObjectReader();
+	}
+
+	/**
+	 * Checks a single file.
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the file
+	 * @param file
+	 *            the file in the working tree
+	 * @param blobId
+	 *            the blob to compare with
+	 * @return <code>true</code> if the file has the content of the blob
+	 * @throws IOException
+	 */
+	public static boolean isIdentical(Repository repository, String path,
+			File file, AnyObjectId blobId) throws IOException {
+		ContentIdentity identity = new ContentIdentity(repository);
+		try {
+			return identity.isIdentical(path, file, blobId);
+		} finally {
+			identity.release();
+		}
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of the file
+	 * @param file
+	 *            the file in the working tree
+	 * @param blobId
+	 *            the blob to compare with
+	 * @return <code>true</code> if the file has the content of the blob
+	 * @throws IOException
+	 */
+	public boolean isIdentical(String path, File file, AnyObjectId blobId)
+			throws IOException {
+		long lastModified = file.lastModified();
+		long length = file.length();
+		if (lastModified == 0 || !file.isFile())
+			return false;
+
+		ObjectId id = getCachedId(file, lastModified, length);
+		if (id == null)
+			id = getIndexId(path, lastModified, length);
+		if (id != null)
+			return id.equals(blobId);
+
+		try {
+			if (reader.getObjectSize(blobId, Constants.OBJ_BLOB) != length)
+				return false;
+		} catch (MissingObjectException e) {
+			return false;
+		}
+		id = hash(file, length);
+		if (System.currentTimeMillis() - lastModified > RACY_MILLIS)
+			synchronized (HASHES) {
+				HASHES.put(file, new Hash(lastModified, length, id));
+			}
+		return id.equals(blobId);
+	}
+
+	/**
+	 * Releases the object reader.
+	 */
+	public void release() {
+		reader.release();
+	}
+
+	private static ObjectId getCachedId(File file, long lastModified,
+			long length) {
+		Hash hash;
+		synchronized (HASHES) {
+			hash = HASHES.get(file);
+		}
+		if (hash != null && hash.lastModified == lastModified
+				&& hash.length == length)
+			return hash.id;
+		return null;
+	}
+
+	private ObjectId getIndexId(String path, long lastModified, long length)
+			throws IOException {
+		if (index == null) {
+			File indexFile = repository.getIndexFile();
+			indexModified = indexFile.lastModified();
+			index = repository.readDirCache();
+		}
+		DirCacheEntry entry = index.getEntry(path);
+		if (entry == null || entry.getStage() != DirCacheEntry.STAGE_0
+				|| entry.isSmudged())
+			return null;
+		// an entry written in the same second as the index may have been
+		// modified again without changing its stat data
+		if (entry.getLastModified() >= indexModified
+				|| entry.getLastModified() != lastModified
+				|| entry.getLength() != (int) length)
+			return null;
+		return entry.getObjectId();
+	}
+
+	private static ObjectId hash(File file, long length) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+					length, in);
+		} finally {
+			in.close();
+		}
+	}
+}
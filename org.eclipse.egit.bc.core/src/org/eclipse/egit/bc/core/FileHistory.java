@@ -0,0 +1,172 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RenameCallback;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * The commits changing a file, newest first, read on demand from a single
+ * rename following walk.
+ * <p>
+ * The walk is kept open between requests, so stepping to an older revision
+ * only reads as far back as the next change instead of walking the history
+ * again. The newest change is found with the changed-path filters first,
+ * like in {@link PreviousCommitFinder}. The revisions are in the order of
+ * <code>git log --follow</code>, which for merged histories is not always
+ * parent after child.
+ */
+public class FileHistory {
+
+	/**
+	 * A commit changing the file and the path of the file in it.
+	 */
+	public static final class Change {
+		private final RevCommit commit;
+
+		private final String path;
+
+		Change(RevCommit commit, String path) {
+			this.commit = commit;
+			this.path = path;
+		}
+
+		/**
+		 * @return the commit
+		 */
+		public RevCommit getCommit() {
+			return commit;
+		}
+
+		/**
+		 * @return the path of the file in the commit, following renames
+		 */
+		public String getPath() {
+			return path;
+		}
+	}
+
+	private final Repository repository;
+
+	private final ChangedPathIndex index;
+
+	private final ObjectId start;
+
+	private final List<Change> changes = new ArrayList<Change>();
+
+	/** Paths of the file from the newest to the oldest rename seen so far */
+	private final List<String> paths = new ArrayList<String>();
+
+	private int pathIndex;
+
+	private RevWalk walk;
+
+	private boolean complete;
+
+	/**
+	 * @param repository
+	 * @param index
+	 *            changed-path filters of the repository, may be
+	 *            <code>null</code>
+	 * @param start
+	 *            the commit the history starts at, usually HEAD
+	 * @param path
+	 *            repository relative path of the file in the start commit
+	 */
+	public FileHistory(Repository repository, ChangedPathIndex index,
+			AnyObjectId start, String path) {
+		this.repository = repository;
+		this.index = index;
+		this.start = start.copy();
+		paths.add(path);
+	}
+
+	/**
+	 * @return the commit the history starts at
+	 */
+	public ObjectId getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns a change, reading the history up to it if necessary.
+	 *
+	 * @param i
+	 *            0 for the newest change, higher for older ones
+	 * @return the change or <code>null</code> if the file has fewer changes
+	 * @throws IOException
+	 */
+	public synchronized Change get(int i) throws IOException {
+		while (changes.size() <= i && !complete)
+			readNext();
+		return i < changes.size() ? changes.get(i) : null;
+	}
+
+	/**
+	 * Ends the walk. Changes read before stay available.
+	 */
+	public synchronized void release() {
+		complete = true;
+		if (walk != null) {
+			walk.dispose();
+			walk = null;
+		}
+	}
+
+	private void readNext() throws IOException {
+		if (walk == null && !startWalk())
+			return;
+		RevCommit commit = walk.next();
+		if (commit == null) {
+			release();
+			return;
+		}
+		// the walk looks ahead, so renames may be reported before the
+		// commits preceding them are returned: move to an older path only
+		// once the commit does not contain the current one
+		while (pathIndex < paths.size() - 1
+				&& TreeWalk.forPath(walk.getObjectReader(),
+						paths.get(pathIndex), commit.getTree()) == null)
+			pathIndex++;
+		changes.add(new Change(commit, paths.get(pathIndex)));
+	}
+
+	private boolean startWalk() throws IOException {
+		walk = new RevWalk(repository);
+		String path = paths.get(0);
+		FollowFilter filter = FollowFilter.create(path,
+				repository.getConfig().get(DiffConfig.KEY));
+		filter.setRenameCallback(new RenameCallback() {
+			@Override
+			public void renamed(DiffEntry entry) {
+				paths.add(entry.getOldPath());
+			}
+		});
+		walk.setTreeFilter(filter);
+
+		RevCommit newest = walk.parseCommit(start);
+		ChangedPathWalk lastChange = new ChangedPathWalk(walk, index, path);
+		try {
+			lastChange.markStart(newest);
+			newest = lastChange.next();
+		} finally {
+			lastChange.release();
+		}
+		if (newest == null) {
+			release();
+			return false;
+		}
+		walk.markStart(newest);
+		return true;
+	}
+}
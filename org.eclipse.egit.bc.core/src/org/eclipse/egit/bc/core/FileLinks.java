@@ -0,0 +1,129 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates hard and symbolic links to files.
+ * <p>
+ * Links need <code>java.nio.file</code>, which is looked up at runtime so
+ * that the bundle still runs on Java 5 and 6. There, and on file systems
+ * without links, no links are created.
+ */
+public class FileLinks {
+
+	private static final Method TO_PATH;
+
+	private static final Method CREATE_LINK;
+
+	private static final Method CREATE_SYMBOLIC_LINK;
+
+	private static final Method IS_SYMBOLIC_LINK;
+
+	private static final Object NO_ATTRIBUTES;
+
+	static {
+		Method toPath = null;
+		Method createLink = null;
+		Method createSymbolicLink = null;
+		Method isSymbolicLink = null;
+		Object noAttributes = null;
+		try {
+			Class<?> files = Class.forName("java.nio.file.Files"); //$NON-NLS-1$
+			Class<?> path = Class.forName("java.nio.file.Path"); //$NON-NLS-1$
+			Class<?> attribute = Class
+					.forName("java.nio.file.attribute.FileAttribute"); //$NON-NLS-1$
+			noAttributes = Array.newInstance(attribute, 0);
+			toPath = File.class.getMethod("toPath"); //$NON-NLS-1$
+			createLink = files.getMethod("createLink", path, path); //$NON-NLS-1$
+			createSymbolicLink = files.getMethod("createSymbolicLink", path, //$NON-NLS-1$
+					path, noAttributes.getClass());
+			isSymbolicLink = files.getMethod("isSymbolicLink", path); //$NON-NLS-1$
+		} catch (ClassNotFoundException e) {
+			toPath = null;
+		} catch (NoSuchMethodException e) {
+			toPath = null;
+		}
+		TO_PATH = toPath;
+		CREATE_LINK = createLink;
+		CREATE_SYMBOLIC_LINK = createSymbolicLink;
+		IS_SYMBOLIC_LINK = isSymbolicLink;
+		NO_ATTRIBUTES = noAttributes;
+	}
+
+	private FileLinks() {
+		// utility class
+	}
+
+	/**
+	 * @return <code>true</code> if the running Java can create links at all
+	 */
+	public static boolean isSupported() {
+		return TO_PATH != null;
+	}
+
+	/**
+	 * Creates a hard link to a file, or a symbolic link if that fails, e.g.
+	 * because the two files are on different file systems.
+	 *
+	 * @param link
+	 *            the link to create, must not exist
+	 * @param existing
+	 *            the file linked to
+	 * @return <code>true</code> if a link was created
+	 */
+	public static boolean link(File link, File existing) {
+		if (!isSupported())
+			return false;
+		try {
+			CREATE_LINK.invoke(null, toPath(link), toPath(existing));
+			return true;
+		} catch (InvocationTargetException e) {
+			// not supported by the file system, try a symbolic link
+		} catch (IllegalAccessException e) {
+			return false;
+		}
+		try {
+			CREATE_SYMBOLIC_LINK.invoke(null, toPath(link),
+					toPath(existing.getAbsoluteFile()), NO_ATTRIBUTES);
+			return true;
+		} catch (InvocationTargetException e) {
+			return false;
+		} catch (IllegalAccessException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return <code>true</code> if the file is a symbolic link
+	 */
+	public static boolean isSymbolicLink(File file) {
+		if (isSupported())
+			try {
+				return ((Boolean) IS_SYMBOLIC_LINK.invoke(null, toPath(file)))
+						.booleanValue();
+			} catch (InvocationTargetException e) {
+				return false;
+			} catch (IllegalAccessException e) {
+				return false;
+			}
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent == null)
+				return false;
+			File resolved = new File(parent.getCanonicalFile(), file.getName());
+			return !resolved.getCanonicalFile().equals(resolved);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static Object toPath(File file) throws InvocationTargetException,
+			IllegalAccessException {
+		return TO_PATH.invoke(file);
+	}
+}
@@ -0,0 +1,190 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of one <code>.gitattributes</code> file.
+ * <p>
+ * Only what checkout filters need is supported: glob patterns matched
+ * against the file name or, if they contain a slash, against the path below
+ * the directory of the attributes file, and the built-in
+ * <code>binary</code> macro. Macro definitions and quoted patterns are
+ * ignored. Values are reported like <code>git check-attr</code> does:
+ * {@value #SET}, {@value #UNSET} or the assigned value.
+ */
+class GitAttributes {
+
+	/** Value of an attribute that is set */
+	static final String SET = "set"; //$NON-NLS-1$
+
+	/** Value of an attribute that is unset */
+	static final String UNSET = "unset"; //$NON-NLS-1$
+
+	/** No rules at all */
+	static final GitAttributes EMPTY = new GitAttributes(""); //$NON-NLS-1$
+
+	private final String base;
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	private static class Rule {
+		final Pattern pattern;
+
+		final boolean nameOnly;
+
+		final String[] names;
+
+		final String[] values;
+
+		Rule(Pattern pattern, boolean nameOnly, String[] names, String[] values) {
+			this.pattern = pattern;
+			this.nameOnly = nameOnly;
+			this.names = names;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * @param base
+	 *            repository relative directory of the attributes file, empty
+	 *            or ending with a slash
+	 */
+	private GitAttributes(String base) {
+		this.base = base;
+	}
+
+	/**
+	 * @param file
+	 *            the attributes file
+	 * @param base
+	 *            repository relative directory the rules apply to, empty or
+	 *            ending with a slash
+	 * @return the rules of the file, no rules if it does not exist
+	 * @throws IOException
+	 */
+	static GitAttributes load(File file, String base) throws IOException {
+		if (!file.isFile())
+			return EMPTY;
+		GitAttributes attributes = new GitAttributes(base);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				attributes.parse(line);
+		} finally {
+			reader.close();
+		}
+		return attributes;
+	}
+
+	/**
+	 * Applies the matching rules to the given attributes, later rules
+	 * overriding earlier ones.
+	 *
+	 * @param path
+	 *            repository relative path of a file
+	 * @param result
+	 *            attribute values by name, unspecified attributes are removed
+	 */
+	void apply(String path, Map<String, String> result) {
+		if (!path.startsWith(base))
+			return;
+		String relative = path.substring(base.length());
+		String name = relative.substring(relative.lastIndexOf('/') + 1);
+		for (Rule rule : rules) {
+			if (!rule.pattern.matcher(rule.nameOnly ? name : relative)
+					.matches())
+				continue;
+			for (int i = 0; i < rule.names.length; i++)
+				if (rule.values[i] == null)
+					result.remove(rule.names[i]);
+				else
+					result.put(rule.names[i], rule.values[i]);
+		}
+	}
+
+	private void parse(String line) {
+		String[] tokens = line.trim().split("\\s+"); //$NON-NLS-1$
+		if (tokens.length < 2 || tokens[0].startsWith("#") //$NON-NLS-1$
+				|| tokens[0].startsWith("\"") || tokens[0].startsWith("[attr]")) //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		List<String> names = new ArrayList<String>();
+		List<String> values = new ArrayList<String>();
+		for (int i = 1; i < tokens.length; i++) {
+			String token = tokens[i];
+			if (token.equals("binary")) { //$NON-NLS-1$
+				names.add("binary"); //$NON-NLS-1$
+				values.add(SET);
+				names.add("diff"); //$NON-NLS-1$
+				values.add(UNSET);
+				names.add("text"); //$NON-NLS-1$
+				values.add(UNSET);
+			} else if (token.startsWith("-")) { //$NON-NLS-1$
+				names.add(token.substring(1));
+				values.add(UNSET);
+			} else if (token.startsWith("!")) { //$NON-NLS-1$
+				names.add(token.substring(1));
+				values.add(null);
+			} else {
+				int eq = token.indexOf('=');
+				names.add(eq < 0 ? token : token.substring(0, eq));
+				values.add(eq < 0 ? SET : token.substring(eq + 1));
+			}
+		}
+
+		String glob = tokens[0];
+		if (glob.endsWith("/")) //$NON-NLS-1$
+			return; // directories carry no attributes
+		boolean nameOnly = glob.indexOf('/') < 0;
+		if (glob.startsWith("/")) //$NON-NLS-1$
+			glob = glob.substring(1);
+		rules.add(new Rule(Pattern.compile(toRegex(glob)), nameOnly,
+				names.toArray(new String[names.size()]),
+				values.toArray(new String[values.size()])));
+	}
+
+	private static String toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' && glob.startsWith("**/", i) //$NON-NLS-1$
+					&& (i == 0 || glob.charAt(i - 1) == '/')) {
+				regex.append("(?:.*/)?"); //$NON-NLS-1$
+				i += 2;
+			} else if (c == '*' && glob.startsWith("**", i) //$NON-NLS-1$
+					&& i + 2 == glob.length() && i > 0
+					&& glob.charAt(i - 1) == '/') {
+				regex.append(".*"); //$NON-NLS-1$
+				i++;
+			} else if (c == '*')
+				regex.append("[^/]*"); //$NON-NLS-1$
+			else if (c == '?')
+				regex.append("[^/]"); //$NON-NLS-1$
+			else if (c == '[') {
+				int end = glob.indexOf(']', i + 2);
+				if (end < 0) {
+					regex.append("\\["); //$NON-NLS-1$
+					continue;
+				}
+				String set = glob.substring(i + 1, end);
+				if (set.startsWith("!")) //$NON-NLS-1$
+					set = '^' + set.substring(1);
+				regex.append('[').append(set.replace("\\", "\\\\")).append(']'); //$NON-NLS-1$ //$NON-NLS-2$
+				i = end;
+			} else if (c == '\\' && i + 1 < glob.length())
+				regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+			else
+				regex.append(Pattern.quote(String.valueOf(c)));
+		}
+		return regex.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+/**
+ * Finds the files and folders of the working tree that Git ignores.
+ * <p>
+ * Only untracked paths are ignored; a tracked file matching an ignore rule
+ * is still compared, as in EGit. An ignored folder is reported as a whole
+ * and not entered, so large build output is never listed file by file.
+ */
+public class IgnoredPaths {
+
+	private IgnoredPaths() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 *            a repository with a working tree
+	 * @param scope
+	 *            repository relative paths of the files and folders to look
+	 *            at, the empty path for the whole working tree
+	 * @return repository relative paths of the ignored files and folders
+	 * @throws IOException
+	 */
+	public static Set<String> find(Repository repository, Set<String> scope)
+			throws IOException {
+		Set<String> ignored = new HashSet<String>();
+		TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(new DirCacheIterator(repository.readDirCache()));
+			walk.addTree(new FileTreeIterator(repository));
+			if (!scope.contains("")) //$NON-NLS-1$
+				walk.setFilter(PathFilterGroup.createFromStrings(scope));
+			while (walk.next()) {
+				WorkingTreeIterator file = walk.getTree(1,
+						WorkingTreeIterator.class);
+				if (file != null && walk.getRawMode(0) == 0
+						&& file.isEntryIgnored())
+					ignored.add(walk.getPathString());
+				else if (walk.isSubtree())
+					walk.enterSubtree();
+			}
+		} finally {
+			walk.release();
+		}
+		return ignored;
+	}
+}
@@ -0,0 +1,187 @@
+package org.eclipse.egit.bc.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+
+/**
+ * Picks the entries of the index a working tree file is compared with.
+ * <p>
+ * A path without conflict has a single entry at stage 0. For a conflicting
+ * path the version of the current branch (stage 2) is taken, else the one
+ * of the merged branch (stage 3), else the common base (stage 1).
+ */
+public class IndexEntries {
+
+	/**
+	 * The stages of a conflicting path.
+	 */
+	public static final class Conflict {
+		private final String path;
+
+		private DirCacheEntry base;
+
+		private DirCacheEntry ours;
+
+		private DirCacheEntry theirs;
+
+		Conflict(String path) {
+			this.path = path;
+		}
+
+		/**
+		 * @return repository relative path of the file
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return the common base (stage 1), <code>null</code> if both
+		 *         sides added the file
+		 */
+		public DirCacheEntry getBase() {
+			return base;
+		}
+
+		/**
+		 * @return the version of the current branch (stage 2),
+		 *         <code>null</code> if it deleted the file
+		 */
+		public DirCacheEntry getOurs() {
+			return ours;
+		}
+
+		/**
+		 * @return the version of the merged branch (stage 3),
+		 *         <code>null</code> if it deleted the file
+		 */
+		public DirCacheEntry getTheirs() {
+			return theirs;
+		}
+	}
+
+	private IndexEntries() {
+		// utility class
+	}
+
+	/**
+	 * @param index
+	 * @param path
+	 *            repository relative path of a file
+	 * @return the entry to compare the file with, or <code>null</code> if the
+	 *         file is not in the index
+	 */
+	public static DirCacheEntry getEntry(DirCache index, String path) {
+		int first = index.findEntry(path);
+		if (first < 0)
+			return null;
+		DirCacheEntry best = null;
+		for (int i = first; i < index.getEntryCount(); i++) {
+			DirCacheEntry entry = index.getEntry(i);
+			if (!entry.getPathString().equals(path))
+				break;
+			if (best == null || rank(entry) < rank(best))
+				best = entry;
+		}
+		return best;
+	}
+
+	/**
+	 * @param index
+	 * @param scope
+	 *            repository relative paths of files and folders, the empty
+	 *            path stands for the whole repository
+	 * @return the entries to compare the files in the scope with, by path
+	 */
+	public static Map<String, DirCacheEntry> getEntries(DirCache index,
+			Set<String> scope) {
+		Map<String, DirCacheEntry> result = new LinkedHashMap<String, DirCacheEntry>();
+		for (int i = 0; i < index.getEntryCount(); i++) {
+			DirCacheEntry entry = index.getEntry(i);
+			String path = entry.getPathString();
+			if (!isInScope(path, scope))
+				continue;
+			DirCacheEntry previous = result.get(path);
+			if (previous == null || rank(entry) < rank(previous))
+				result.put(path, entry);
+		}
+		return result;
+	}
+
+	/**
+	 * @param index
+	 * @param scope
+	 *            repository relative paths of files and folders, the empty
+	 *            path stands for the whole repository
+	 * @return the conflicting paths in the scope, in index order
+	 */
+	public static List<Conflict> getConflicts(DirCache index,
+			Set<String> scope) {
+		List<Conflict> result = new ArrayList<Conflict>();
+		Conflict conflict = null;
+		for (int i = 0; i < index.getEntryCount(); i++) {
+			DirCacheEntry entry = index.getEntry(i);
+			if (!isConflict(entry))
+				continue;
+			String path = entry.getPathString();
+			// the stages of a path are next to each other
+			if (conflict == null || !conflict.path.equals(path)) {
+				if (!isInScope(path, scope))
+					continue;
+				conflict = new Conflict(path);
+				result.add(conflict);
+			}
+			switch (entry.getStage()) {
+			case DirCacheEntry.STAGE_1:
+				conflict.base = entry;
+				break;
+			case DirCacheEntry.STAGE_2:
+				conflict.ours = entry;
+				break;
+			default:
+				conflict.theirs = entry;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param entry
+	 * @return <code>true</code> if the entry is one side of a conflict
+	 */
+	public static boolean isConflict(DirCacheEntry entry) {
+		return entry.getStage() != DirCacheEntry.STAGE_0;
+	}
+
+	private static boolean isInScope(String path, Set<String> scope) {
+		if (scope.contains("")) //$NON-NLS-1$
+			return true;
+		for (;;) {
+			if (scope.contains(path))
+				return true;
+			int slash = path.lastIndexOf('/');
+			if (slash < 0)
+				return false;
+			path = path.substring(0, slash);
+		}
+	}
+
+	private static int rank(DirCacheEntry entry) {
+		switch (entry.getStage()) {
+		case DirCacheEntry.STAGE_0:
+			return 0;
+		case DirCacheEntry.STAGE_2:
+			return 1;
+		case DirCacheEntry.STAGE_3:
+			return 2;
+		default:
+			return 3;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Exports files into two mirror directories which are then compared as
+ * folders.
+ * <p>
+ * Each side is filled with files of the working tree or with blobs of the
+ * repository, placed at their repository relative path. Files that need not
+ * be copied, e.g. unchanged ones, can be added as links instead (see
+ * {@link FileLinks}); if no link can be created they are copied. Blobs
+ * are written raw, or as Git checks them out if {@link CheckoutFilters} are
+ * set. The files are written by a pool of worker threads.
+ * <p>
+ * With an index file the mirrors can be exported again into the same
+ * directories: the index records where each file came from, and only files
+ * whose source or target changed are written again, files no longer
+ * exported are deleted.
+ */
+public class MirrorExport {
+
+	/** Side of the folder compare a file is exported to */
+	public enum Side {
+		/** the left directory */
+		LEFT,
+		/** the right directory */
+		RIGHT
+	}
+
+	private final Repository repository;
+
+	private final File leftDir;
+
+	private final File rightDir;
+
+	private final long streamThreshold;
+
+	private final Map<String, Task> tasks = new LinkedHashMap<String, Task>();
+
+	private File indexFile;
+
+	private CheckoutFilters filters;
+
+	private static class Task {
+		final File target;
+
+		final String source;
+
+		final Callable<Object> write;
+
+		Task(File target, String source, Callable<Object> write) {
+			this.target = target;
+			this.source = source;
+			this.write = write;
+		}
+	}
+
+	/**
+	 * @param repository
+	 *            repository the exported blobs are read from
+	 * @param leftDir
+	 *            root of the left mirror
+	 * @param rightDir
+	 *            root of the right mirror
+	 * @param streamThreshold
+	 *            blobs larger than this number of bytes are streamed
+	 */
+	public MirrorExport(Repository repository, File leftDir, File rightDir,
+			long streamThreshold) {
+		this.repository = repository;
+		this.leftDir = leftDir;
+		this.rightDir = rightDir;
+		this.streamThreshold = streamThreshold;
+	}
+
+	/**
+	 * @return root of the left mirror
+	 */
+	public File getLeftDirectory() {
+		return leftDir;
+	}
+
+	/**
+	 * @return root of the right mirror
+	 */
+	public File getRightDirectory() {
+		return rightDir;
+	}
+
+	/**
+	 * Records the sources of the exported files in the given file, so that a
+	 * later export into the same directories only writes what changed.
+	 *
+	 * @param file
+	 *            index file, outside of the mirror directories
+	 */
+	public void setIndexFile(File file) {
+		this.indexFile = file;
+	}
+
+	/**
+	 * Writes blobs added from now on as Git checks them out, e.g. with Git
+	 * LFS objects instead of their pointers and converted line endings.
+	 *
+	 * @param filters
+	 *            the filters of the repository, <code>null</code> to write
+	 *            raw blobs
+	 */
+	public void setCheckoutFilters(CheckoutFilters filters) {
+		this.filters = filters;
+	}
+
+	/**
+	 * @return number of files to export
+	 */
+	public int size() {
+		return tasks.size();
+	}
+
+	/**
+	 * Adds a copy of a file, usually from the working tree.
+	 *
+	 * @param side
+	 * @param path
+	 *            repository relative path
+	 * @param source
+	 *            the file to copy
+	 */
+	public void addFile(Side side, String path, final File source) {
+		final File target = getTarget(side, path);
+		add(side, path, target, "file " + getStamp(source), //$NON-NLS-1$
+				new Callable<Object>() {
+					public Object call() throws Exception {
+						copy(source, target);
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Adds a link to a file, usually an unchanged file of the working tree or
+	 * a cached revision. The file is copied if no link can be created.
+	 *
+	 * @param side
+	 * @param path
+	 *            repository relative path
+	 * @param source
+	 *            the file to link to
+	 */
+	public void addLink(Side side, String path, final File source) {
+		final File target = getTarget(side, path);
+		add(side, path, target, "link " + getStamp(source), //$NON-NLS-1$
+				new Callable<Object>() {
+					public Object call() throws Exception {
+						mkdirs(target.getParentFile());
+						if (!FileLinks.link(target, source))
+							copy(source, target);
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Adds the content of a blob.
+	 *
+	 * @param side
+	 * @param path
+	 *            repository relative path
+	 * @param blobId
+	 *            the blob to write
+	 * @throws IOException
+	 *             if the checkout filter of the file could not be determined
+	 */
+	public void addBlob(Side side, String path, AnyObjectId blobId)
+			throws IOException {
+		final File target = getTarget(side, path);
+		final ObjectId id = blobId.copy();
+		final CheckoutFilter filter = filters != null ? filters.get(path)
+				: null;
+		String source = "blob " + id.name(); //$NON-NLS-1$
+		if (filter != null && !filter.isIdentity())
+			source += " " + filter.getSignature(); //$NON-NLS-1$
+		add(side, path, target, source, new Callable<Object>() {
+			public Object call() throws Exception {
+				mkdirs(target.getParentFile());
+				ObjectLoader loader = repository.open(id, Constants.OBJ_BLOB);
+				if (filter != null && !filter.isIdentity())
+					BlobWriter.write(filter.open(loader), target, null);
+				else
+					BlobWriter.write(loader, target, streamThreshold, null);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Writes all added files. With an index file, files exported before from
+	 * the same source are kept.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @param monitor
+	 *            receives one unit of work per file, may be <code>null</code>
+	 * @throws IOException
+	 *             if a file could not be written or the monitor was cancelled
+	 */
+	public void run(int threads, ProgressMonitor monitor) throws IOException {
+		if (monitor == null)
+			monitor = NullProgressMonitor.INSTANCE;
+		Properties previous = loadIndex();
+		if (indexFile != null && previous == null) {
+			// nothing is known about the existing content
+			clear(leftDir);
+			clear(rightDir);
+		}
+		mkdirs(leftDir);
+		mkdirs(rightDir);
+
+		List<Task> outdated = new ArrayList<Task>();
+		for (Map.Entry<String, Task> entry : tasks.entrySet())
+			if (previous == null
+					|| !getState(entry.getValue()).equals(
+							previous.getProperty(entry.getKey())))
+				outdated.add(entry.getValue());
+		if (previous != null)
+			for (String key : previous.stringPropertyNames())
+				if (!tasks.containsKey(key))
+					getTarget(key).delete();
+		monitor.update(tasks.size() - outdated.size());
+		// a failed export leaves no index, the next one starts over
+		if (indexFile != null)
+			indexFile.delete();
+		if (!outdated.isEmpty())
+			write(outdated, threads, monitor);
+		saveIndex();
+	}
+
+	private void write(List<Task> outdated, int threads,
+			ProgressMonitor monitor) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, outdated.size())),
+				new WorkerThreadFactory());
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(
+				outdated.size());
+		try {
+			CompletionService<Object> completion = new ExecutorCompletionService<Object>(
+					executor);
+			for (final Task task : outdated)
+				futures.add(completion.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						// never write through a link into its source
+						task.target.delete();
+						return task.write.call();
+					}
+				}));
+			for (int i = 0; i < futures.size(); i++) {
+				completion.take().get();
+				monitor.update(1);
+				if (monitor.isCancelled())
+					throw new InterruptedIOException();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			IOException ioe = new IOException(cause.getMessage());
+			ioe.initCause(cause);
+			throw ioe;
+		} finally {
+			for (Future<Object> future : futures)
+				future.cancel(true);
+			executor.shutdownNow();
+		}
+	}
+
+	private void add(Side side, String path, File target, String source,
+			Callable<Object> write) {
+		tasks.put(side.name() + ':' + path, new Task(target, source, write));
+	}
+
+	private File getTarget(Side side, String path) {
+		return new File(side == Side.LEFT ? leftDir : rightDir, path);
+	}
+
+	private File getTarget(String key) {
+		int colon = key.indexOf(':');
+		return getTarget(Side.valueOf(key.substring(0, colon)),
+				key.substring(colon + 1));
+	}
+
+	private static String getStamp(File source) {
+		return source.lastModified() + " " + source.length() + " " //$NON-NLS-1$ //$NON-NLS-2$
+				+ source.getAbsolutePath();
+	}
+
+	private Properties loadIndex() {
+		if (indexFile == null || !indexFile.isFile())
+			return null;
+		Properties index = new Properties();
+		try {
+			InputStream in = new FileInputStream(indexFile);
+			try {
+				index.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return index;
+	}
+
+	private void saveIndex() throws IOException {
+		if (indexFile == null)
+			return;
+		Properties index = new Properties();
+		for (Map.Entry<String, Task> entry : tasks.entrySet())
+			index.setProperty(entry.getKey(), getState(entry.getValue()));
+		OutputStream out = new FileOutputStream(indexFile);
+		try {
+			index.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the source of the task and the modification time of its
+	 *         target, which catches targets changed in the compare
+	 */
+	private static String getState(Task task) {
+		return task.source + " @" + task.target.lastModified(); //$NON-NLS-1$
+	}
+
+	/** Deletes the content of a directory without following links */
+	private static void clear(File dir) {
+		File[] children = dir.listFiles();
+		if (children == null)
+			return;
+		for (File child : children) {
+			if (!FileLinks.isSymbolicLink(child))
+				clear(child);
+			child.delete();
+		}
+	}
+
+	private static void copy(File source, File target) throws IOException {
+		mkdirs(target.getParentFile());
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel src = in.getChannel();
+				FileChannel dst = out.getChannel();
+				long size = src.size();
+				long pos = 0;
+				while (pos < size)
+					pos += src.transferTo(pos, size - pos, dst);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void mkdirs(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Could not create " + dir); //$NON-NLS-1$
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r,
+					"Beyond Compare export " + COUNT.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
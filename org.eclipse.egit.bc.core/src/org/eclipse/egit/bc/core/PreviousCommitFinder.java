@@ -0,0 +1,206 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Finds the commits preceding the last change of a file, together with the
+ * path the file had in each of them.
+ * <p>
+ * The last change is looked up with the changed-path filters. Its previous
+ * commits are its direct parents, so no further history is walked: the path
+ * is looked up in the tree of each parent, and only for the parents missing
+ * it the {@link PreviousPathResolver} searches for a rename. The renames of
+ * the parents of a merge are resolved in parallel, each with an object
+ * reader of its own.
+ */
+public class PreviousCommitFinder {
+
+	/**
+	 * A parent of the last change and the path of the file in it.
+	 */
+	public static final class PreviousCommit {
+		final RevCommit commit;
+
+		final String path;
+
+		PreviousCommit(final RevCommit commit, final String path) {
+			this.commit = commit;
+			this.path = path;
+		}
+
+		/**
+		 * @return the commit
+		 */
+		public RevCommit getCommit() {
+			return commit;
+		}
+
+		/**
+		 * @return the path of the file in the commit, following renames
+		 */
+		public String getPath() {
+			return path;
+		}
+	}
+
+	private PreviousCommitFinder() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 * @param index
+	 *            changed-path filters of the repository, may be
+	 *            <code>null</code>
+	 * @param path
+	 *            repository relative path of the file, empty for the whole
+	 *            repository
+	 * @return the parents of the last commit changing the path that contain
+	 *         the file, in parent order, empty if there are none
+	 * @throws IOException
+	 */
+	public static List<PreviousCommit> find(Repository repository,
+			ChangedPathIndex index, String path) throws IOException {
+		List<PreviousCommit> result = new ArrayList<PreviousCommit>();
+		Ref head = repository.getRef(Constants.HEAD);
+		if (head == null || head.getObjectId() == null)
+			return result;
+		RevWalk rw = new RevWalk(repository);
+		try {
+			RevCommit lastChange = rw.parseCommit(head.getObjectId());
+			if (path.length() > 0) {
+				ChangedPathWalk walk = new ChangedPathWalk(rw, index, path);
+				try {
+					walk.markStart(lastChange);
+					lastChange = walk.next();
+				} finally {
+					walk.release();
+				}
+				if (lastChange == null)
+					return result;
+			}
+
+			RevCommit[] parents = lastChange.getParents();
+			String[] paths = new String[parents.length];
+			List<Integer> renamed = new ArrayList<Integer>();
+			for (int i = 0; i < parents.length; i++) {
+				rw.parseHeaders(parents[i]);
+				if (path.length() == 0
+						|| TreeWalk.forPath(rw.getObjectReader(), path,
+								parents[i].getTree()) != null)
+					paths[i] = path;
+				else
+					renamed.add(Integer.valueOf(i));
+			}
+			resolveRenames(repository, rw.getObjectReader(), lastChange,
+					parents, path, renamed, paths);
+
+			for (int i = 0; i < parents.length; i++)
+				if (paths[i] != null)
+					result.add(new PreviousCommit(parents[i], paths[i]));
+		} finally {
+			rw.dispose();
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up the previous paths of the file in the given parents. The
+	 * first one is resolved on the calling thread, the others in parallel.
+	 * Parents not containing the file keep a <code>null</code> path.
+	 */
+	private static void resolveRenames(final Repository repository,
+			ObjectReader reader, final RevCommit lastChange,
+			final RevCommit[] parents, final String path,
+			List<Integer> renamed, String[] paths) throws IOException {
+		if (renamed.isEmpty())
+			return;
+		ExecutorService executor = null;
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		try {
+			if (renamed.size() > 1) {
+				executor = Executors.newFixedThreadPool(renamed.size() - 1,
+						new ResolverThreadFactory());
+				for (final Integer i : renamed.subList(1, renamed.size()))
+					futures.add(executor.submit(new Callable<String>() {
+						public String call() throws IOException {
+							ObjectReader own = repository.newObjectReader();
+							try {
+								return getPreviousPath(repository, own,
+										lastChange, parents[i.intValue()],
+										path);
+							} finally {
+								own.release();
+							}
+						}
+					}));
+			}
+			int first = renamed.get(0).intValue();
+			paths[first] = getPreviousPath(repository, reader, lastChange,
+					parents[first], path);
+			for (int f = 0; f < futures.size(); f++)
+				paths[renamed.get(f + 1).intValue()] = futures.get(f).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			IOException ioe = new IOException(cause.getMessage());
+			ioe.initCause(cause);
+			throw ioe;
+		} finally {
+			for (Future<String> future : futures)
+				future.cancel(true);
+			if (executor != null)
+				executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the path of the file in the parent, <code>null</code> if the
+	 *         parent does not contain it
+	 */
+	private static String getPreviousPath(Repository repository,
+			ObjectReader reader, RevCommit lastChange, RevCommit parent,
+			String path) throws IOException {
+		String previousPath = PreviousPathResolver.getPreviousPath(
+				repository, reader, lastChange, parent, path);
+		if (previousPath.equals(path))
+			// not renamed, the file was added on this side
+			return null;
+		return previousPath;
+	}
+
+	private static class ResolverThreadFactory implements ThreadFactory {
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r,
+					"Beyond Compare previous path " + COUNT.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
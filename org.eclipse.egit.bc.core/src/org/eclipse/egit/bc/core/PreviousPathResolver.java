@@ -0,0 +1,222 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Finds the path a file had in a previous commit without diffing the
+ * complete trees of both commits.
+ * <p>
+ * If the path exists in the previous commit it is returned right away.
+ * Otherwise only the subtrees that differ between the two commits are walked
+ * to collect the deleted files. A deleted file with the same content is
+ * taken directly. Else the deleted files with the same extension, a similar
+ * size and the closest directory are handed to the {@link RenameDetector},
+ * and if that does not find a rename, the closest files of similar size
+ * regardless of their extension. Added files passing the same filter are
+ * given to the detector as well, so that a deleted file is still paired
+ * with the added file most similar to it.
+ */
+public class PreviousPathResolver {
+
+	/** Maximum number of deleted files given to the rename detector */
+	private static final int MAX_CANDIDATES = 32;
+
+	/** Sizes of a renamed file and its source differ at most by this factor */
+	private static final int SIZE_FACTOR = 2;
+
+	private PreviousPathResolver() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 * @param reader
+	 * @param headCommit
+	 *            commit containing the file at <code>path</code>
+	 * @param previousCommit
+	 *            the commit to look up the path in
+	 * @param path
+	 *            repository relative path of the file in
+	 *            <code>headCommit</code>
+	 * @return the path of the file in <code>previousCommit</code>,
+	 *         <code>path</code> if it was not renamed
+	 * @throws IOException
+	 */
+	public static String getPreviousPath(Repository repository,
+			ObjectReader reader, RevCommit headCommit,
+			RevCommit previousCommit, final String path) throws IOException {
+		if (TreeWalk.forPath(reader, path, previousCommit.getTree()) != null)
+			return path;
+		TreeWalk added = TreeWalk.forPath(reader, path, headCommit.getTree());
+		if (added == null
+				|| added.getFileMode(0).getObjectType() != Constants.OBJ_BLOB)
+			return path;
+		ObjectId addedId = added.getObjectId(0);
+		long addedSize = reader.getObjectSize(addedId, Constants.OBJ_BLOB);
+
+		List<Candidate> deleted = new ArrayList<Candidate>();
+		List<Candidate> others = new ArrayList<Candidate>();
+		TreeWalk walk = new TreeWalk(reader);
+		walk.setRecursive(true);
+		walk.setFilter(TreeFilter.ANY_DIFF);
+		walk.addTree(previousCommit.getTree());
+		walk.addTree(headCommit.getTree());
+		while (walk.next()) {
+			String changed = walk.getPathString();
+			if (walk.getRawMode(1) == 0
+					&& walk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB)
+				deleted.add(new Candidate(changed, walk.getObjectId(0), walk
+						.getFileMode(0)));
+			else if (walk.getRawMode(0) == 0
+					&& walk.getFileMode(1).getObjectType() == Constants.OBJ_BLOB
+					&& !changed.equals(path))
+				others.add(new Candidate(changed, walk.getObjectId(1), walk
+						.getFileMode(1)));
+		}
+		if (deleted.isEmpty())
+			return path;
+
+		Comparator<Candidate> byDistance = new Comparator<Candidate>() {
+			public int compare(Candidate c1, Candidate c2) {
+				return distance(path, c1.path) - distance(path, c2.path);
+			}
+		};
+		List<Candidate> sameContent = new ArrayList<Candidate>();
+		for (Candidate candidate : deleted)
+			if (candidate.id.equals(addedId))
+				sameContent.add(candidate);
+		if (!sameContent.isEmpty()) {
+			Collections.sort(sameContent, byDistance);
+			return sameContent.get(0).path;
+		}
+
+		List<Candidate> similarSize = filterBySize(reader, deleted, addedSize);
+		List<Candidate> similarOthers = filterBySize(reader, others, addedSize);
+		Collections.sort(similarSize, byDistance);
+		Collections.sort(similarOthers, byDistance);
+
+		String extension = getExtension(path);
+		List<Candidate> sameExtension = filterByExtension(similarSize,
+				extension);
+		String previousPath = detectRename(repository, reader, headCommit,
+				previousCommit, path, sameExtension,
+				filterByExtension(similarOthers, extension));
+		if (previousPath == null && sameExtension.size() < similarSize.size())
+			previousPath = detectRename(repository, reader, headCommit,
+					previousCommit, path, similarSize, similarOthers);
+		return previousPath != null ? previousPath : path;
+	}
+
+	private static List<Candidate> filterBySize(ObjectReader reader,
+			List<Candidate> candidates, long addedSize) throws IOException {
+		List<Candidate> result = new ArrayList<Candidate>();
+		for (Candidate candidate : candidates) {
+			if (candidate.mode != FileMode.REGULAR_FILE
+					&& candidate.mode != FileMode.EXECUTABLE_FILE)
+				continue;
+			long size = reader.getObjectSize(candidate.id, Constants.OBJ_BLOB);
+			if (size <= addedSize * SIZE_FACTOR && addedSize <= size * SIZE_FACTOR)
+				result.add(candidate);
+		}
+		return result;
+	}
+
+	private static List<Candidate> filterByExtension(
+			List<Candidate> candidates, String extension) {
+		List<Candidate> result = new ArrayList<Candidate>();
+		for (Candidate candidate : candidates)
+			if (extension.equals(getExtension(candidate.path)))
+				result.add(candidate);
+		return result;
+	}
+
+	private static String detectRename(Repository repository,
+			ObjectReader reader, RevCommit headCommit,
+			RevCommit previousCommit, String path, List<Candidate> candidates,
+			List<Candidate> others) throws IOException {
+		if (candidates.isEmpty())
+			return null;
+		List<String> paths = new ArrayList<String>();
+		paths.add(path);
+		for (Candidate candidate : candidates.subList(0,
+				Math.min(candidates.size(), MAX_CANDIDATES)))
+			paths.add(candidate.path);
+		for (Candidate other : others.subList(0,
+				Math.min(others.size(), MAX_CANDIDATES)))
+			paths.add(other.path);
+
+		TreeWalk walk = new TreeWalk(reader);
+		walk.setRecursive(true);
+		walk.setFilter(PathFilterGroup.createFromStrings(paths));
+		walk.addTree(previousCommit.getTree());
+		walk.addTree(headCommit.getTree());
+		RenameDetector detector = new RenameDetector(repository);
+		detector.addAll(DiffEntry.scan(walk));
+		List<DiffEntry> renames = detector.compute(reader,
+				NullProgressMonitor.INSTANCE);
+		for (DiffEntry diff : renames)
+			if (diff.getChangeType() == ChangeType.RENAME
+					&& path.equals(diff.getNewPath()))
+				return diff.getOldPath();
+		return null;
+	}
+
+	/**
+	 * @return number of directory levels between the parents of the two
+	 *         paths
+	 */
+	private static int distance(String path1, String path2) {
+		int common = 0;
+		int length = Math.min(path1.length(), path2.length());
+		for (int i = 0; i < length && path1.charAt(i) == path2.charAt(i); i++)
+			if (path1.charAt(i) == '/')
+				common++;
+		return depth(path1) + depth(path2) - 2 * common;
+	}
+
+	private static int depth(String path) {
+		int depth = 0;
+		for (int i = 0; i < path.length(); i++)
+			if (path.charAt(i) == '/')
+				depth++;
+		return depth;
+	}
+
+	private static String getExtension(String path) {
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		return dot > slash + 1 ? path.substring(dot) : ""; //$NON-NLS-1$
+	}
+
+	private static class Candidate {
+		final String path;
+
+		final ObjectId id;
+
+		final FileMode mode;
+
+		Candidate(String path, ObjectId id, FileMode mode) {
+			this.path = path;
+			this.id = id;
+			this.mode = mode;
+		}
+	}
+}
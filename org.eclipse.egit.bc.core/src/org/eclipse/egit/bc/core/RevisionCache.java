@@ -0,0 +1,445 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * Content-addressed store for materialized Git revisions.
+ * <p>
+ * Entries are keyed by the id of the blob plus a variant string describing
+ * how the blob content was converted on its way to disk (e.g. the encoding).
+ * The same blob reached through different commits or actions is therefore
+ * written at most once; later requests are answered by a lookup.
+ * <p>
+ * Each entry lives in its own directory
+ * <code>&lt;root&gt;/&lt;xx&gt;/&lt;remaining id&gt;[.&lt;variant&gt;]/</code>
+ * and keeps the file name under which it was first requested, so that Beyond
+ * Compare shows a meaningful title and picks the right file format.
+ * <p>
+ * The cache records when each entry was last used and can evict the least
+ * recently used entries to stay within a size and count budget (see
+ * {@link #evict(long, int, long)}). Entries that are pinned, being written or
+ * used recently are never evicted. Access times survive restarts in the file
+ * {@value #ACCESS_INDEX}.
+ */
+public class RevisionCache {
+
+	/**
+	 * Writes the content of a cache entry.
+	 */
+	public interface ContentWriter {
+		/**
+		 * @param target
+		 *            the file to write, does not exist yet
+		 * @throws IOException
+		 */
+		void write(File target) throws IOException;
+	}
+
+	private static final String TMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	/** Name of the file storing the access times of the entries */
+	public static final String ACCESS_INDEX = "access.index"; //$NON-NLS-1$
+
+	private final File root;
+
+	private final ConcurrentMap<String, Long> accessTimes = new ConcurrentHashMap<String, Long>();
+
+	private final ConcurrentMap<String, AtomicInteger> pins = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final ConcurrentMap<String, File> entries = new ConcurrentHashMap<String, File>();
+
+	private final ConcurrentMap<String, FutureTask<File>> pending = new ConcurrentHashMap<String, FutureTask<File>>();
+
+	/**
+	 * @param root
+	 *            directory holding the cache entries
+	 */
+	public RevisionCache(File root) {
+		this.root = root;
+		loadAccessTimes();
+	}
+
+	/**
+	 * @return directory holding the cache entries
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * Looks up an already materialized revision.
+	 *
+	 * @param blobId
+	 * @param variant
+	 *            conversion applied to the blob, may be <code>null</code>
+	 * @return the cached file or <code>null</code> if the blob was not
+	 *         materialized yet
+	 */
+	public File lookup(AnyObjectId blobId, String variant) {
+		String key = getKey(blobId, variant);
+		File file = entries.get(key);
+		if (file != null) {
+			if (file.isFile()) {
+				touch(key);
+				return file;
+			}
+			entries.remove(key, file);
+		}
+		file = findOnDisk(getEntryDirectory(blobId, variant));
+		if (file != null) {
+			entries.put(key, file);
+			touch(key);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the cached file for the given blob, writing it first if it is
+	 * not in the cache yet. Concurrent requests for the same entry wait for a
+	 * single write.
+	 *
+	 * @param blobId
+	 * @param variant
+	 *            conversion applied to the blob, may be <code>null</code>
+	 * @param fileName
+	 *            name of the file if it has to be written
+	 * @param writer
+	 *            writes the content on a cache miss
+	 * @return the cached file
+	 * @throws IOException
+	 */
+	public File get(final AnyObjectId blobId, final String variant,
+			final String fileName, final ContentWriter writer)
+			throws IOException {
+		File file = lookup(blobId, variant);
+		if (file != null)
+			return file;
+
+		final String key = getKey(blobId, variant);
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			public File call() throws Exception {
+				File written = write(getEntryDirectory(blobId, variant),
+						fileName, writer);
+				entries.put(key, written);
+				touch(key);
+				return written;
+			}
+		});
+		FutureTask<File> running = pending.putIfAbsent(key, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				pending.remove(key, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e.getMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			IOException ioe = new IOException(cause.getMessage());
+			ioe.initCause(cause);
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Protects the entry of a cached file from eviction until it is
+	 * {@link #unpin(File) unpinned} as often as it was pinned.
+	 *
+	 * @param file
+	 *            a file returned by this cache
+	 */
+	public void pin(File file) {
+		String key = getKey(file);
+		if (key == null)
+			return;
+		AtomicInteger count = pins.get(key);
+		if (count == null) {
+			AtomicInteger newCount = new AtomicInteger();
+			count = pins.putIfAbsent(key, newCount);
+			if (count == null)
+				count = newCount;
+		}
+		count.incrementAndGet();
+		touch(key);
+	}
+
+	/**
+	 * Releases a pin acquired by {@link #pin(File)}.
+	 *
+	 * @param file
+	 *            a file returned by this cache
+	 */
+	public void unpin(File file) {
+		String key = getKey(file);
+		if (key == null)
+			return;
+		AtomicInteger count = pins.get(key);
+		if (count != null && count.decrementAndGet() <= 0)
+			pins.remove(key, count);
+		touch(key);
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache fits the given
+	 * budgets. Entries that are pinned, currently being written or were used
+	 * within the last <code>minIdle</code> milliseconds are kept even if the
+	 * budgets are still exceeded afterwards.
+	 *
+	 * @param maxBytes
+	 *            maximum total size of all entries
+	 * @param maxCount
+	 *            maximum number of entries
+	 * @param minIdle
+	 *            milliseconds an entry has to be unused before it may be
+	 *            evicted
+	 * @return number of evicted entries
+	 */
+	public int evict(long maxBytes, int maxCount, long minIdle) {
+		List<Entry> all = scan();
+		long totalBytes = 0;
+		for (Entry entry : all)
+			totalBytes += entry.size;
+		int count = all.size();
+		if (totalBytes <= maxBytes && count <= maxCount)
+			return 0;
+
+		Collections.sort(all);
+		long idleSince = System.currentTimeMillis() - minIdle;
+		int evicted = 0;
+		for (Entry entry : all) {
+			if (totalBytes <= maxBytes && count <= maxCount)
+				break;
+			if (entry.lastAccess > idleSince || pins.containsKey(entry.key)
+					|| pending.containsKey(entry.key))
+				continue;
+			if (delete(entry.dir)) {
+				entries.remove(entry.key);
+				accessTimes.remove(entry.key);
+				totalBytes -= entry.size;
+				count--;
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Writes the access times of all entries to {@value #ACCESS_INDEX}.
+	 *
+	 * @throws IOException
+	 */
+	public void saveAccessTimes() throws IOException {
+		Properties props = new Properties();
+		for (Map.Entry<String, Long> access : accessTimes.entrySet())
+			props.setProperty(access.getKey(), access.getValue().toString());
+		if (!root.isDirectory() && !root.mkdirs())
+			return;
+		File index = new File(root, ACCESS_INDEX);
+		File tmp = new File(root, ACCESS_INDEX + TMP_SUFFIX);
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			props.store(out, null);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(index)) {
+			index.delete();
+			if (!tmp.renameTo(index))
+				throw new IOException("Could not rename " + tmp + " to " + index); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private void loadAccessTimes() {
+		File index = new File(root, ACCESS_INDEX);
+		if (!index.isFile())
+			return;
+		Properties props = new Properties();
+		try {
+			InputStream in = new FileInputStream(index);
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// start with the file modification times instead
+			return;
+		}
+		for (String key : props.stringPropertyNames())
+			try {
+				accessTimes.put(key, Long.valueOf(props.getProperty(key)));
+			} catch (NumberFormatException e) {
+				// ignore broken entry
+			}
+	}
+
+	private void touch(String key) {
+		accessTimes.put(key, Long.valueOf(System.currentTimeMillis()));
+	}
+
+	private List<Entry> scan() {
+		List<Entry> result = new ArrayList<Entry>();
+		File[] prefixes = root.listFiles();
+		if (prefixes == null)
+			return result;
+		for (File prefix : prefixes) {
+			if (prefix.getName().length() != 2 || !prefix.isDirectory())
+				continue;
+			File[] dirs = prefix.listFiles();
+			if (dirs == null)
+				continue;
+			for (File dir : dirs) {
+				File[] files = dir.listFiles();
+				if (files == null)
+					continue;
+				long size = 0;
+				long modified = dir.lastModified();
+				for (File file : files) {
+					size += file.length();
+					modified = Math.max(modified, file.lastModified());
+				}
+				String key = prefix.getName() + dir.getName();
+				Long access = accessTimes.get(key);
+				result.add(new Entry(key, dir, size,
+						access != null ? access.longValue() : modified));
+			}
+		}
+		return result;
+	}
+
+	private static boolean delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		return dir.delete();
+	}
+
+	private String getKey(File file) {
+		File dir = file.getParentFile();
+		if (dir == null || dir.getParentFile() == null
+				|| !root.equals(dir.getParentFile().getParentFile()))
+			return null;
+		return dir.getParentFile().getName() + dir.getName();
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		final String key;
+
+		final File dir;
+
+		final long size;
+
+		final long lastAccess;
+
+		Entry(String key, File dir, long size, long lastAccess) {
+			this.key = key;
+			this.dir = dir;
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+
+		public int compareTo(Entry other) {
+			if (lastAccess < other.lastAccess)
+				return -1;
+			return lastAccess == other.lastAccess ? 0 : 1;
+		}
+	}
+
+	private static File write(File dir, String fileName, ContentWriter writer)
+			throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Could not create " + dir); //$NON-NLS-1$
+		File target = new File(dir, fileName);
+		File tmp = new File(dir, fileName + TMP_SUFFIX
+				+ Thread.currentThread().getId());
+		boolean done = false;
+		try {
+			tmp.delete();
+			writer.write(tmp);
+			// another process may have won the race, its file is as good
+			if (target.isFile() || tmp.renameTo(target)) {
+				done = true;
+				return target;
+			}
+			throw new IOException("Could not rename " + tmp + " to " + target); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			if (!done || tmp.exists())
+				tmp.delete();
+		}
+	}
+
+	private static File findOnDisk(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return null;
+		for (File file : files)
+			if (file.isFile() && !isTempFile(file.getName()))
+				return file;
+		return null;
+	}
+
+	private static boolean isTempFile(String name) {
+		int idx = name.lastIndexOf(TMP_SUFFIX);
+		if (idx < 0 || idx + TMP_SUFFIX.length() == name.length())
+			return false;
+		for (int i = idx + TMP_SUFFIX.length(); i < name.length(); i++)
+			if (!Character.isDigit(name.charAt(i)))
+				return false;
+		return true;
+	}
+
+	private File getEntryDirectory(AnyObjectId blobId, String variant) {
+		String name = blobId.name();
+		String entry = name.substring(2);
+		if (variant != null && variant.length() > 0)
+			entry = entry + '.' + sanitize(variant);
+		return new File(new File(root, name.substring(0, 2)), entry);
+	}
+
+	private static String getKey(AnyObjectId blobId, String variant) {
+		if (variant == null || variant.length() == 0)
+			return blobId.name();
+		return blobId.name() + '.' + sanitize(variant);
+	}
+
+	private static String sanitize(String variant) {
+		StringBuilder sb = new StringBuilder(variant.length());
+		for (int i = 0; i < variant.length(); i++) {
+			char c = variant.charAt(i);
+			if (Character.isLetterOrDigit(c) || c == '-' || c == '_')
+				sb.append(c);
+			else
+				sb.append('_');
+		}
+		return sb.toString();
+	}
+}
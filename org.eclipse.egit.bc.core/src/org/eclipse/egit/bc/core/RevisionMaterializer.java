@@ -0,0 +1,183 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * Writes revisions of files to disk through a {@link RevisionCache}.
+ * <p>
+ * A revision is looked up by the id of its blob. On a cache miss the blob is
+ * streamed to disk as raw bytes, or decoded with the encoding of the file
+ * and written in a target encoding if one is given. Encodings are passed in
+ * by the caller, so this class needs nothing but JGit.
+ * <p>
+ * If a {@link CheckoutFilter} is given, the content is written as Git would
+ * check it out, e.g. with the Git LFS object instead of its pointer. The
+ * filtered content is cached separately, keyed by the filter signature.
+ */
+public class RevisionMaterializer {
+
+	private final RevisionCache cache;
+
+	private final long streamThreshold;
+
+	/**
+	 * @param cache
+	 *            the cache the revisions are written to
+	 * @param streamThreshold
+	 *            blobs larger than this number of bytes are streamed
+	 */
+	public RevisionMaterializer(RevisionCache cache, long streamThreshold) {
+		this.cache = cache;
+		this.streamThreshold = streamThreshold;
+	}
+
+	/**
+	 * @return the cache the revisions are written to
+	 */
+	public RevisionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Looks up a revision written before.
+	 *
+	 * @param blobId
+	 * @param encoding
+	 *            the encoding of the blob content, only used for transcoding
+	 * @param targetEncoding
+	 *            the encoding to transcode to, or <code>null</code> for raw
+	 *            bytes
+	 * @param filter
+	 *            checkout conversions, may be <code>null</code>
+	 * @return the cached file or <code>null</code> if the revision was not
+	 *         written yet
+	 */
+	public File lookup(AnyObjectId blobId, String encoding,
+			String targetEncoding, CheckoutFilter filter) {
+		File cached = cache.lookup(blobId,
+				getContentVariant(encoding, targetEncoding, filter));
+		CompareMetrics.getDefault().recordRevisionCache(cached != null);
+		return cached;
+	}
+
+	/**
+	 * Returns the file holding a revision, writing it first unless it is
+	 * cached already.
+	 *
+	 * @param revision
+	 *            the revision to write, the name of its file is used for the
+	 *            written file
+	 * @param encoding
+	 *            the encoding of the blob content, only used for transcoding
+	 * @param targetEncoding
+	 *            the encoding to transcode to, or <code>null</code> to keep the
+	 *            raw bytes
+	 * @param filter
+	 *            checkout conversions applied before transcoding, may be
+	 *            <code>null</code>
+	 * @param monitor
+	 *            receives the kilobytes written, may be <code>null</code>
+	 * @return the cached file
+	 * @throws IOException
+	 */
+	public File materialize(final Revision revision, final String encoding,
+			final String targetEncoding, final CheckoutFilter filter,
+			ProgressMonitor monitor) throws IOException {
+		final ProgressMonitor writeMonitor = monitor != null ? monitor
+				: NullProgressMonitor.INSTANCE;
+		ObjectId blobId = revision.getBlobId();
+		return cache.get(blobId,
+				getContentVariant(encoding, targetEncoding, filter),
+				getFileName(revision.getPath(), blobId),
+				new RevisionCache.ContentWriter() {
+					public void write(File target) throws IOException {
+						long start = CompareMetrics.start();
+						try {
+							write(target, revision.open());
+						} finally {
+							CompareMetrics.getDefault().writeRevision
+									.record(start);
+							CompareMetrics.getDefault().addBytesWritten(
+									target.length());
+						}
+					}
+
+					private void write(File target, ObjectLoader loader)
+							throws IOException {
+						// size the progress from the object header, the
+						// content is not loaded yet
+						int totalKB = (int) Math.min(loader.getSize() >>> 10,
+								Integer.MAX_VALUE - 1) + 1;
+						writeMonitor.beginTask(target.getName(), totalKB);
+						try {
+							if (filter != null && !filter.isIdentity()) {
+								InputStream in = filter.open(loader);
+								if (targetEncoding == null)
+									BlobWriter.write(in, target, writeMonitor);
+								else
+									BlobWriter.transcode(in, encoding,
+											targetEncoding, target,
+											writeMonitor);
+							} else if (targetEncoding == null)
+								BlobWriter.write(loader, target,
+										streamThreshold, writeMonitor);
+							else
+								BlobWriter.transcode(loader.openStream(),
+										encoding, targetEncoding, target,
+										writeMonitor);
+						} finally {
+							writeMonitor.endTask();
+						}
+					}
+				});
+	}
+
+	/**
+	 * @param path
+	 *            path of the file a blob belongs to
+	 * @param blobId
+	 * @return the name of the blob on disk: the file name with the
+	 *         abbreviated blob id added before the extension
+	 */
+	public static String getFileName(String path, AnyObjectId blobId) {
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		String ext = ""; //$NON-NLS-1$
+		int dot = name.lastIndexOf('.');
+		if (dot != -1) {
+			ext = name.substring(dot);
+			name = name.substring(0, dot);
+		}
+		return name + "_" + blobId.abbreviate(7).name() + ext; //$NON-NLS-1$
+	}
+
+	/**
+	 * @param encoding
+	 *            the encoding of the blob content
+	 * @param targetEncoding
+	 *            the encoding to transcode to, or <code>null</code> for raw
+	 *            bytes
+	 * @param filter
+	 *            checkout conversions, may be <code>null</code>
+	 * @return the cache variant for content stored with the given encodings
+	 *         and filter
+	 */
+	private static String getContentVariant(String encoding,
+			String targetEncoding, CheckoutFilter filter) {
+		String signature = filter != null ? filter.getSignature() : null;
+		String variant = null;
+		if (targetEncoding != null)
+			variant = encoding + "-" + targetEncoding; //$NON-NLS-1$
+		if (signature == null)
+			return variant;
+		return variant == null ? signature : signature + "+" + variant; //$NON-NLS-1$
+	}
+}
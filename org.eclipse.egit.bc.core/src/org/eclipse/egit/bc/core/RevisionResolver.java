@@ -0,0 +1,131 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Finds the revision of a file in a commit with a single path lookup in the
+ * commit tree.
+ * <p>
+ * All lookups and reads share one {@link ObjectReader}, so a compare opens
+ * the pack files once for finding the blob, checking its size and writing
+ * it. The content of a revision is only loaded when it is opened; a compare
+ * that ends at the identity check never inflates the blob.
+ */
+public class RevisionResolver {
+
+	/**
+	 * A file in a commit or in the index.
+	 */
+	public class Revision {
+		private final String path;
+
+		private final ObjectId blobId;
+
+		private ObjectLoader loader;
+
+		private long size = -1;
+
+		Revision(String path, ObjectId blobId) {
+			this.path = path;
+			this.blobId = blobId;
+		}
+
+		/**
+		 * @return repository relative path of the file
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return id of the blob holding the content of the file
+		 */
+		public ObjectId getBlobId() {
+			return blobId;
+		}
+
+		/**
+		 * @return size of the content in bytes, read from the object header
+		 * @throws IOException
+		 */
+		public long getSize() throws IOException {
+			if (size < 0)
+				size = loader != null ? loader.getSize() : reader
+						.getObjectSize(blobId, Constants.OBJ_BLOB);
+			return size;
+		}
+
+		/**
+		 * @return the loader of the blob, opened on first use
+		 * @throws IOException
+		 */
+		public ObjectLoader open() throws IOException {
+			if (loader == null)
+				loader = reader.open(blobId, Constants.OBJ_BLOB);
+			return loader;
+		}
+
+		/**
+		 * @return the content of the blob
+		 * @throws IOException
+		 */
+		public InputStream openStream() throws IOException {
+			return open().openStream();
+		}
+	}
+
+	private final ObjectReader reader;
+
+	/**
+	 * @param repository
+	 */
+	public RevisionResolver(Repository repository) {
+		this.reader = repository.newObjectReader();
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of a file
+	 * @param commit
+	 * @return the file in the commit, or <code>null</code> if the commit
+	 *         does not contain a file at the path
+	 * @throws IOException
+	 */
+	public Revision resolve(String path, RevCommit commit) throws IOException {
+		TreeWalk walk = TreeWalk.forPath(reader, path, commit.getTree());
+		// folders and submodules have no content to compare; the walk
+		// shares the reader, so it is not released here
+		if (walk == null
+				|| walk.getFileMode(0).getObjectType() != Constants.OBJ_BLOB)
+			return null;
+		return new Revision(path, walk.getObjectId(0));
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of the file the blob belongs to
+	 * @param blobId
+	 * @return the revision of the file with the given content
+	 */
+	public Revision resolve(String path, AnyObjectId blobId) {
+		return new Revision(path, blobId.copy());
+	}
+
+	/**
+	 * Releases the object reader. Revisions of this resolver must not be
+	 * opened afterwards.
+	 */
+	public void release() {
+		reader.release();
+	}
+}
@@ -0,0 +1,158 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.egit.bc.core.MirrorExport.Side;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+/**
+ * Writes the files of a revision to a directory, for review jobs comparing
+ * snapshots outside of Eclipse.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp org.eclipse.egit.bc.core.jar:org.eclipse.jgit.jar \
+ *     org.eclipse.egit.bc.core.SnapshotExporter \
+ *     [--threads n] [--stream-threshold bytes] \
+ *     &lt;git-dir&gt; &lt;revision&gt; &lt;output-dir&gt; [path...]
+ * </pre>
+ *
+ * Without paths the whole tree is exported, else the given files and
+ * folders. Files are placed at their repository relative path below the
+ * output directory and written by a pool of worker threads. Submodules are
+ * skipped.
+ */
+public class SnapshotExporter {
+
+	private static final long DEFAULT_STREAM_THRESHOLD = 1024 * 1024;
+
+	private final Repository repository;
+
+	private final int threads;
+
+	private final long streamThreshold;
+
+	/**
+	 * @param repository
+	 *            the repository to export from
+	 * @param threads
+	 *            number of worker threads writing files
+	 * @param streamThreshold
+	 *            blobs larger than this number of bytes are streamed
+	 */
+	public SnapshotExporter(Repository repository, int threads,
+			long streamThreshold) {
+		this.repository = repository;
+		this.threads = threads;
+		this.streamThreshold = streamThreshold;
+	}
+
+	/**
+	 * Exports the files of a revision.
+	 *
+	 * @param revision
+	 *            anything {@link Repository#resolve(String)} accepts
+	 * @param outputDirectory
+	 *            directory the files are written to
+	 * @param paths
+	 *            repository relative paths of the files and folders to export,
+	 *            all files if empty
+	 * @return number of files written
+	 * @throws IOException
+	 *             if the revision does not exist or a file could not be
+	 *             written
+	 */
+	public int export(String revision, File outputDirectory, List<String> paths)
+			throws IOException {
+		ObjectId id = repository.resolve(revision);
+		if (id == null)
+			throw new IOException("Unknown revision " + revision); //$NON-NLS-1$
+		RevWalk rw = new RevWalk(repository);
+		RevTree tree;
+		try {
+			tree = rw.parseTree(id);
+		} finally {
+			rw.release();
+		}
+
+		// only one side of the mirror is used
+		MirrorExport export = new MirrorExport(repository, outputDirectory,
+				outputDirectory, streamThreshold);
+		TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(tree);
+			walk.setRecursive(true);
+			if (!paths.isEmpty())
+				walk.setFilter(PathFilterGroup.createFromStrings(paths));
+			while (walk.next())
+				if (walk.getFileMode(0) != FileMode.GITLINK)
+					export.addBlob(Side.LEFT, walk.getPathString(),
+							walk.getObjectId(0));
+		} finally {
+			walk.release();
+		}
+		export.run(threads, null);
+		return export.size();
+	}
+
+	/**
+	 * @param args
+	 *            see the class comment
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long streamThreshold = DEFAULT_STREAM_THRESHOLD;
+		List<String> operands = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("--threads".equals(args[i]) && i + 1 < args.length) //$NON-NLS-1$
+					threads = Integer.parseInt(args[++i]);
+				else if ("--stream-threshold".equals(args[i]) //$NON-NLS-1$
+						&& i + 1 < args.length)
+					streamThreshold = Long.parseLong(args[++i]);
+				else
+					operands.add(args[i]);
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		if (operands.size() < 3 || threads < 1)
+			usage();
+
+		try {
+			Repository repository = new FileRepositoryBuilder()
+					.setGitDir(new File(operands.get(0))).setMustExist(true)
+					.build();
+			try {
+				long start = System.currentTimeMillis();
+				int count = new SnapshotExporter(repository, threads,
+						streamThreshold).export(operands.get(1), new File(
+						operands.get(2)), operands.subList(3, operands.size()));
+				System.out.println("Exported " + count + " files in " //$NON-NLS-1$ //$NON-NLS-2$
+						+ (System.currentTimeMillis() - start) + " ms"); //$NON-NLS-1$
+			} finally {
+				repository.close();
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: SnapshotExporter [--threads n] [--stream-threshold bytes]" //$NON-NLS-1$
+				+ " <git-dir> <revision> <output-dir> [path...]"); //$NON-NLS-1$
+		System.exit(2);
+	}
+}
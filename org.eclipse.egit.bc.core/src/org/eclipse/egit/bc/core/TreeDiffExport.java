@@ -0,0 +1,119 @@
+package org.eclipse.egit.bc.core;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.egit.bc.core.MirrorExport.Side;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Adds the files differing between two trees to a {@link MirrorExport}, the
+ * old versions to the left mirror and the new ones to the right.
+ * <p>
+ * Both trees are walked together and subtrees with the same id are skipped
+ * without being read, so the cost depends on the number of changes and not
+ * on the size of the trees. Renamed and copied files are detected; a file
+ * modified along with its rename is placed at its new path on both sides so
+ * that the folder compare pairs the two versions. Submodules and changes of
+ * the file mode alone are left out.
+ */
+public class TreeDiffExport {
+
+	private TreeDiffExport() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 * @param oldTree
+	 *            tree exported to the left mirror
+	 * @param newTree
+	 *            tree exported to the right mirror
+	 * @param paths
+	 *            repository relative paths of the files and folders to
+	 *            compare, all if empty or containing the empty path
+	 * @param export
+	 *            receives the differing files
+	 * @return number of differing files
+	 * @throws IOException
+	 */
+	public static int addChanges(Repository repository, AnyObjectId oldTree,
+			AnyObjectId newTree, Collection<String> paths, MirrorExport export)
+			throws IOException {
+		ObjectReader reader = repository.newObjectReader();
+		try {
+			TreeWalk walk = new TreeWalk(reader);
+			walk.addTree(oldTree);
+			walk.addTree(newTree);
+			walk.setRecursive(true);
+			if (paths.isEmpty() || paths.contains("")) //$NON-NLS-1$
+				walk.setFilter(TreeFilter.ANY_DIFF);
+			else
+				walk.setFilter(AndTreeFilter.create(
+						PathFilterGroup.createFromStrings(paths),
+						TreeFilter.ANY_DIFF));
+			List<DiffEntry> entries = DiffEntry.scan(walk);
+
+			RenameDetector renames = new RenameDetector(repository);
+			renames.addAll(entries);
+			entries = renames.compute(reader, NullProgressMonitor.INSTANCE);
+
+			int count = 0;
+			for (DiffEntry entry : entries)
+				if (add(entry, export))
+					count++;
+			return count;
+		} finally {
+			reader.release();
+		}
+	}
+
+	private static boolean add(DiffEntry entry, MirrorExport export)
+			throws IOException {
+		if (entry.getOldMode() == FileMode.GITLINK
+				|| entry.getNewMode() == FileMode.GITLINK)
+			return false;
+		switch (entry.getChangeType()) {
+		case ADD:
+			export.addBlob(Side.RIGHT, entry.getNewPath(),
+					entry.getNewId().toObjectId());
+			return true;
+		case DELETE:
+			export.addBlob(Side.LEFT, entry.getOldPath(),
+					entry.getOldId().toObjectId());
+			return true;
+		case MODIFY:
+			if (entry.getOldId().equals(entry.getNewId()))
+				return false;
+			export.addBlob(Side.LEFT, entry.getNewPath(),
+					entry.getOldId().toObjectId());
+			export.addBlob(Side.RIGHT, entry.getNewPath(),
+					entry.getNewId().toObjectId());
+			return true;
+		default:
+			// RENAME and COPY: unchanged content would only show as equal
+			// files, so it is kept at the old path to make the move visible
+			if (entry.getOldId().equals(entry.getNewId())) {
+				if (entry.getChangeType() == DiffEntry.ChangeType.RENAME)
+					export.addBlob(Side.LEFT, entry.getOldPath(),
+							entry.getOldId().toObjectId());
+			} else
+				export.addBlob(Side.LEFT, entry.getNewPath(),
+						entry.getOldId().toObjectId());
+			export.addBlob(Side.RIGHT, entry.getNewPath(),
+					entry.getNewId().toObjectId());
+			return true;
+		}
+	}
+}
@@ -1,15 +1,29 @@
 package org.eclipse.egit.bc;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.core.CompareMetrics;
 import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.eclipse.ui.statushandlers.StatusManager;
+import org.osgi.framework.BundleContext;
 
 public class Activator extends AbstractUIPlugin {
 	private static Activator plugin;
 
+	/** Delay of the first cache clean-up after start */
+	private static final long JANITOR_START_DELAY = 60 * 1000L;
+
+	private RevisionCacheJanitor janitor;
+
 	public Activator() {
 		Activator.setActivator(this);
 	}
@@ -26,6 +40,52 @@ public class Activator extends AbstractUIPlugin {
 		return getDefault().getBundle().getSymbolicName();
 	}
 	
+	public void start(BundleContext context) throws Exception {
+		super.start(context);
+		janitor = new RevisionCacheJanitor();
+		janitor.schedule(JANITOR_START_DELAY);
+		registerMetrics();
+	}
+
+	private static void registerMetrics() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					CompareMetrics.getDefault(),
+					new ObjectName(CompareMetrics.OBJECT_NAME));
+		} catch (JMException e) {
+			logError("Could not register the compare metrics", e); //$NON-NLS-1$
+		}
+	}
+
+	private static void unregisterMetrics() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					new ObjectName(CompareMetrics.OBJECT_NAME));
+		} catch (JMException e) {
+			// not registered
+		}
+	}
+	
+	public void stop(BundleContext context) throws Exception {
+		try {
+			if (janitor != null) {
+				janitor.shutdown();
+				janitor = null;
+			}
+			Job.getJobManager().cancel(ChangedPathIndexer.FAMILY);
+			unregisterMetrics();
+			HeadRevisionPrefetcher.getDefault().cancel();
+			HistoryNavigator.disposeAll();
+			BeyondCompareUtil.closeChangedPathIndexes();
+			ResourceEncodings.dispose();
+			BeyondCompareUtil.getRevisionCache().saveAccessTimes();
+		} catch (IOException e) {
+			logError(e.getMessage(), e);
+		} finally {
+			super.stop(context);
+		}
+	}
+	
 	protected void initializeDefaultPreferences(IPreferenceStore store) {
 		BeyondCompareEgitPreferencePage.initializeDefaultPreferences(store);
 	}
@@ -0,0 +1,359 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.egit.bc.core.CheckoutFilters;
+import org.eclipse.egit.bc.core.ContentIdentity;
+import org.eclipse.egit.bc.core.FileLinks;
+import org.eclipse.egit.bc.core.IgnoredPaths;
+import org.eclipse.egit.bc.core.IndexEntries;
+import org.eclipse.egit.bc.core.MirrorExport;
+import org.eclipse.egit.bc.core.MirrorExport.Side;
+import org.eclipse.egit.bc.core.RevisionCache;
+import org.eclipse.egit.bc.core.TreeDiffExport;
+import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
+import org.eclipse.egit.core.EclipseGitProgressTransformer;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Compares several selected resources with a commit, or between two commits,
+ * in a single Beyond Compare folder compare.
+ * <p>
+ * The selected working tree files and the matching files of the commit are
+ * exported into two temporary mirror trees in parallel, then Beyond Compare
+ * is launched once on the two directories. Files with the same content on
+ * both sides are left out, as are derived, team private and Git-ignored
+ * working tree files.
+ */
+public class BatchCompare {
+
+	/** Folder name of the working tree side */
+	private static final String WORKING = "working"; //$NON-NLS-1$
+
+	private BatchCompare() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 *            the repository all resources belong to
+	 * @param resources
+	 *            the selected files and folders
+	 * @param commit
+	 *            the commit to compare with
+	 * @param label
+	 *            name of the commit shown as folder name, e.g. "HEAD"
+	 * @param monitor
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public static void compareWithCommit(Repository repository,
+			IResource[] resources, RevCommit commit, String label,
+			IProgressMonitor monitor) throws IOException, CoreException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		Map<String, File> workingFiles = new LinkedHashMap<String, File>();
+		Set<String> scope = collectWorkingFiles(repository, resources,
+				workingFiles);
+		if (scope.isEmpty())
+			return;
+
+		Map<String, ObjectId> blobs = new LinkedHashMap<String, ObjectId>();
+		Map<String, ObjectId> unchanged = new LinkedHashMap<String, ObjectId>();
+		ContentIdentity identity = new ContentIdentity(repository);
+		TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(commit.getTree());
+			walk.setRecursive(true);
+			if (!scope.contains("")) //$NON-NLS-1$
+				walk.setFilter(PathFilterGroup.createFromStrings(scope));
+			while (walk.next()) {
+				if (monitor.isCanceled())
+					throw new InterruptedIOException();
+				if (walk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB)
+					addBlob(walk.getPathString(), walk.getObjectId(0),
+							walk.getFileMode(0), workingFiles, blobs, unchanged,
+							identity);
+			}
+		} finally {
+			walk.release();
+			identity.release();
+		}
+		export(repository, label, scope, workingFiles, blobs, unchanged,
+				monitor);
+	}
+
+	/**
+	 * Compares the selected resources with their staged versions. The blobs
+	 * are taken directly from the index; of a conflicting file the version
+	 * chosen by {@link IndexEntries} is shown.
+	 *
+	 * @param repository
+	 *            the repository all resources belong to
+	 * @param resources
+	 *            the selected files and folders
+	 * @param label
+	 *            folder name of the index side
+	 * @param monitor
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public static void compareWithIndex(Repository repository,
+			IResource[] resources, String label, IProgressMonitor monitor)
+			throws IOException, CoreException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		Map<String, File> workingFiles = new LinkedHashMap<String, File>();
+		Set<String> scope = collectWorkingFiles(repository, resources,
+				workingFiles);
+		if (scope.isEmpty())
+			return;
+
+		Map<String, ObjectId> blobs = new LinkedHashMap<String, ObjectId>();
+		Map<String, ObjectId> unchanged = new LinkedHashMap<String, ObjectId>();
+		ContentIdentity identity = new ContentIdentity(repository);
+		try {
+			DirCache index = repository.readDirCache();
+			for (DirCacheEntry entry : IndexEntries.getEntries(index, scope)
+					.values()) {
+				if (monitor.isCanceled())
+					throw new InterruptedIOException();
+				if (entry.getFileMode().getObjectType() == Constants.OBJ_BLOB)
+					addBlob(entry.getPathString(), entry.getObjectId(),
+							entry.getFileMode(), workingFiles, blobs, unchanged,
+							identity);
+			}
+		} finally {
+			identity.release();
+		}
+		export(repository, label, scope, workingFiles, blobs, unchanged,
+				monitor);
+	}
+
+	/**
+	 * Compares the selected resources between two commits. Only the files
+	 * that differ are exported, see {@link TreeDiffExport}.
+	 *
+	 * @param repository
+	 *            the repository all resources belong to
+	 * @param resources
+	 *            the selected files and folders
+	 * @param oldCommit
+	 *            the commit shown on the left
+	 * @param oldLabel
+	 *            folder name of the left side
+	 * @param newCommit
+	 *            the commit shown on the right
+	 * @param newLabel
+	 *            folder name of the right side
+	 * @param monitor
+	 * @throws IOException
+	 */
+	public static void compareCommits(Repository repository,
+			IResource[] resources, RevCommit oldCommit, String oldLabel,
+			RevCommit newCommit, String newLabel, IProgressMonitor monitor)
+			throws IOException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		Set<String> scope = new LinkedHashSet<String>();
+		for (IResource resource : resources) {
+			RepositoryMapping mapping = RepositoryMapping.getMapping(resource);
+			String path = mapping != null ? mapping.getRepoRelativePath(resource) : null;
+			if (path != null)
+				scope.add(path);
+		}
+		if (scope.isEmpty())
+			return;
+
+		String oldName = sanitize(oldLabel);
+		String newName = sanitize(newLabel);
+		if (oldName.equals(newName))
+			newName = newName + "-2"; //$NON-NLS-1$
+		File batchDir = BeyondCompareUtil.createBatchDirectory();
+		MirrorExport export = new MirrorExport(repository,
+				new File(batchDir, oldName), new File(batchDir, newName),
+				BeyondCompareEgitPreferencePage.getStreamThreshold());
+		export.setCheckoutFilters(BeyondCompareUtil.getCheckoutFilters(repository));
+		if (TreeDiffExport.addChanges(repository, oldCommit.getTree(),
+				newCommit.getTree(), scope, export) == 0) {
+			batchDir.delete();
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.BeyondCompareOperation_CommitsIdentical, oldLabel, newLabel));
+			return;
+		}
+		run(export, monitor);
+		BeyondCompareUtil.execFolderCompare(
+				export.getLeftDirectory().getAbsolutePath(),
+				export.getRightDirectory().getAbsolutePath(), batchDir);
+	}
+
+	/**
+	 * Collects the working tree files of the selected resources, leaving out
+	 * derived, team private and Git-ignored ones.
+	 *
+	 * @return repository relative paths of the selected resources, the empty
+	 *         path if a resource is the root of the repository
+	 */
+	private static Set<String> collectWorkingFiles(Repository repository,
+			IResource[] resources, final Map<String, File> workingFiles)
+			throws IOException, CoreException {
+		Set<String> scope = new LinkedHashSet<String>();
+		List<IResource> selected = new ArrayList<IResource>();
+		for (IResource resource : resources) {
+			RepositoryMapping mapping = RepositoryMapping.getMapping(resource);
+			String path = mapping != null ? mapping.getRepoRelativePath(resource) : null;
+			if (path != null && scope.add(path))
+				selected.add(resource);
+		}
+		if (scope.isEmpty())
+			return scope;
+
+		final Set<String> ignored = IgnoredPaths.find(repository, scope);
+		for (IResource resource : selected) {
+			final RepositoryMapping mapping = RepositoryMapping.getMapping(resource);
+			resource.accept(new IResourceVisitor() {
+				public boolean visit(IResource member) throws CoreException {
+					if (member.isDerived() || member.isTeamPrivateMember())
+						return false;
+					String memberPath = mapping.getRepoRelativePath(member);
+					if (memberPath == null || ignored.contains(memberPath))
+						return false;
+					if (member instanceof IFile) {
+						IPath location = member.getLocation();
+						if (location != null)
+							workingFiles.put(memberPath, location.toFile());
+					}
+					return member instanceof IContainer;
+				}
+			});
+		}
+		return scope;
+	}
+
+	private static void addBlob(String path, ObjectId blobId, FileMode mode,
+			Map<String, File> workingFiles, Map<String, ObjectId> blobs,
+			Map<String, ObjectId> unchanged, ContentIdentity identity)
+			throws IOException {
+		File workingFile = workingFiles.get(path);
+		if (workingFile != null && isRegularFile(mode)
+				&& identity.isIdentical(path, workingFile, blobId))
+			unchanged.put(path, blobId);
+		else
+			blobs.put(path, blobId);
+	}
+
+	/**
+	 * Exports the changed files. Unchanged files are left out, or linked if
+	 * enabled in the preferences: on the left to the working tree, on the
+	 * right to the cached revision if there is one, else to the working tree
+	 * as well. Linked mirrors are kept per repository, label and scope and
+	 * synchronized on the next compare of the same selection, so that only
+	 * changed files are written again. As linked files would write edits
+	 * back into the working tree and copied ones would not, both sides are
+	 * opened read-only.
+	 */
+	private static void export(Repository repository, String label,
+			Set<String> scope, Map<String, File> workingFiles,
+			Map<String, ObjectId> blobs, Map<String, ObjectId> unchanged,
+			IProgressMonitor monitor) throws IOException {
+		if (workingFiles.size() == unchanged.size() && blobs.isEmpty()) {
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.BeyondCompareOperation_AllIdentical, label));
+			return;
+		}
+
+		boolean link = BeyondCompareEgitPreferencePage.isLinkUnchangedFiles()
+				&& FileLinks.isSupported();
+		File batchDir = link ? BeyondCompareUtil.getBatchDirectory(
+				repository.getDirectory().getAbsolutePath() + '\n' + label
+						+ '\n' + scope) : BeyondCompareUtil.createBatchDirectory();
+		String name = sanitize(label);
+		if (name.equals(WORKING))
+			name = name + "-2"; //$NON-NLS-1$
+		MirrorExport export = new MirrorExport(repository,
+				new File(batchDir, WORKING), new File(batchDir, name),
+				BeyondCompareEgitPreferencePage.getStreamThreshold());
+		CheckoutFilters filters = BeyondCompareUtil.getCheckoutFilters(repository);
+		export.setCheckoutFilters(filters);
+		for (Map.Entry<String, File> file : workingFiles.entrySet())
+			if (!unchanged.containsKey(file.getKey()))
+				export.addFile(Side.LEFT, file.getKey(), file.getValue());
+			else if (link)
+				export.addLink(Side.LEFT, file.getKey(), file.getValue());
+		for (Map.Entry<String, ObjectId> blob : blobs.entrySet())
+			export.addBlob(Side.RIGHT, blob.getKey(), blob.getValue());
+		if (link) {
+			RevisionCache cache = BeyondCompareUtil.getRevisionCache();
+			for (Map.Entry<String, ObjectId> blob : unchanged.entrySet()) {
+				// a raw revision of a filtered file is not what was checked out
+				File cached = null;
+				if (filters == null || filters.get(blob.getKey()).isIdentity())
+					cached = cache.lookup(blob.getValue(), null);
+				export.addLink(Side.RIGHT, blob.getKey(), cached != null ? cached
+						: workingFiles.get(blob.getKey()));
+			}
+			export.setIndexFile(new File(batchDir, "mirror.index")); //$NON-NLS-1$
+		}
+
+		run(export, monitor);
+		// linked mirrors are kept for the next compare
+		BeyondCompareUtil.execFolderCompare(
+				export.getLeftDirectory().getAbsolutePath(),
+				export.getRightDirectory().getAbsolutePath(),
+				link ? null : batchDir);
+	}
+
+	private static void run(MirrorExport export, IProgressMonitor monitor)
+			throws IOException {
+		monitor.beginTask("Exporting files for Beyond Compare...", export.size()); //$NON-NLS-1$
+		try {
+			export.run(Runtime.getRuntime().availableProcessors(),
+					new EclipseGitProgressTransformer(monitor));
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private static boolean isRegularFile(FileMode mode) {
+		return mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE;
+	}
+
+	private static String sanitize(String label) {
+		StringBuilder sb = new StringBuilder(label.length());
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (Character.isLetterOrDigit(c) || c == '-' || c == '_'
+					|| (c == '.' && i > 0))
+				sb.append(c);
+			else
+				sb.append('_');
+		}
+		return sb.toString();
+	}
+}
@@ -37,4 +37,16 @@ public class BeyondCompareActionCommands {
 	/** "Compare with previous" action command id */
 	public static final String COMPARE_WITH_PREVIOUS_ACTION = "org.eclipse.egit.ui.team.CompareWithPrevious"; //$NON-NLS-1$
 
+	/** "Compare two commits" action command id */
+	public static final String COMPARE_COMMITS_ACTION = "org.eclipse.egit.bc.BeyondCompareCommitsAction"; //$NON-NLS-1$
+
+	/** "Compare the next older pair of revisions" action command id */
+	public static final String OLDER_REVISION_ACTION = "org.eclipse.egit.bc.BeyondCompareOlderRevisionAction"; //$NON-NLS-1$
+
+	/** "Compare the next newer pair of revisions" action command id */
+	public static final String NEWER_REVISION_ACTION = "org.eclipse.egit.bc.BeyondCompareNewerRevisionAction"; //$NON-NLS-1$
+
+	/** "Merge conflicting files" action command id */
+	public static final String MERGE_ACTION = "org.eclipse.egit.bc.BeyondCompareMergeAction"; //$NON-NLS-1$
+
 }
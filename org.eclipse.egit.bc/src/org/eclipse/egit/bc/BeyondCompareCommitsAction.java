@@ -0,0 +1,15 @@
+package org.eclipse.egit.bc;
+
+/**
+ * The "compare two commits" action. This action opens two Ref selection
+ * dialogs and then a folder compare of the versions in the selected refs.
+ */
+public class BeyondCompareCommitsAction extends BeyondCompareRepositoryAction {
+	/**
+	 *
+	 */
+	public BeyondCompareCommitsAction() {
+		super(BeyondCompareActionCommands.COMPARE_COMMITS_ACTION,
+				new BeyondCompareCommitsActionHandler());
+	}
+}
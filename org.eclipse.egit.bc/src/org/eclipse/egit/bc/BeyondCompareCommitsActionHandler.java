@@ -0,0 +1,132 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.core.internal.job.JobUtil;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.egit.ui.internal.dialogs.CompareTargetSelectionDialog;
+import org.eclipse.jface.window.Window;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Compares the selected files and folders between two branches, tags or
+ * other references in one Beyond Compare folder compare.
+ * <p>
+ * Two references are selected one after the other, the first one is shown
+ * on the left. Only the files differing between the two commits are
+ * exported.
+ */
+public class BeyondCompareCommitsActionHandler extends BeyondCompareRepositoryActionHandler {
+
+	private static class CompareCommitsOperation implements IEGitOperation {
+
+		private final Repository repository;
+
+		private final IResource[] resources;
+
+		private final String oldRef;
+
+		private final String newRef;
+
+		CompareCommitsOperation(Repository repository, IResource[] resources,
+				String oldRef, String newRef) {
+			this.repository = repository;
+			this.resources = resources;
+			this.oldRef = oldRef;
+			this.newRef = newRef;
+		}
+
+		public void execute(IProgressMonitor monitor) throws CoreException {
+			if (monitor == null)
+				monitor = new NullProgressMonitor();
+			RevWalk rw = new RevWalk(repository);
+			try {
+				BatchCompare.compareCommits(repository, resources,
+						parseCommit(rw, oldRef), Repository.shortenRefName(oldRef),
+						parseCommit(rw, newRef), Repository.shortenRefName(newRef),
+						monitor);
+			} catch (InterruptedIOException e) {
+				// cancelled by the user
+			} catch (IOException e) {
+				Activator.handleError(UIText.CompareCommitsActionHandler_onError, e, true);
+			} finally {
+				rw.release();
+				monitor.done();
+			}
+		}
+
+		private RevCommit parseCommit(RevWalk rw, String refName)
+				throws IOException {
+			ObjectId commitId = repository.resolve(refName);
+			if (commitId == null)
+				throw new IOException(NLS.bind(
+						UIText.CompareWithRefActionHandler_unresolved, refName));
+			return rw.parseCommit(commitId);
+		}
+
+		public ISchedulingRule getSchedulingRule() {
+			return new RepositorySchedulingRule(repository);
+		}
+	}
+
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		Repository repository = getRepository(true, event);
+		// assert all resources map to the same repository
+		if (repository == null)
+			return null;
+		IResource[] resources = getSelectedResources(event);
+		String name = resources.length == 1 ? resources[0].getFullPath()
+				.lastSegment() : null;
+
+		String oldRef = selectRef(event, repository, name,
+				UIText.CompareCommitsActionHandler_OldTitle,
+				UIText.CompareCommitsActionHandler_OldMessage);
+		if (oldRef == null)
+			return null;
+		String newRef = selectRef(event, repository, name,
+				UIText.CompareCommitsActionHandler_NewTitle, NLS.bind(
+						UIText.CompareCommitsActionHandler_NewMessage,
+						Repository.shortenRefName(oldRef)));
+		if (newRef == null)
+			return null;
+
+		JobUtil.scheduleUserJob(new CompareCommitsOperation(repository,
+				resources, oldRef, newRef), UIText.BeyondCompareOperation_TaskName, null);
+		return null;
+	}
+
+	/**
+	 * @return the selected reference, <code>null</code> if cancelled
+	 */
+	private String selectRef(ExecutionEvent event, Repository repository,
+			String name, String title, String message)
+			throws ExecutionException {
+		CompareTargetSelectionDialog dlg = new CompareTargetSelectionDialog(
+				getShell(event), repository, name);
+		// replaces the title and message set up by the dialog
+		dlg.create();
+		dlg.getShell().setText(title);
+		dlg.setTitle(title);
+		dlg.setMessage(message);
+		if (dlg.open() != Window.OK)
+			return null;
+		return dlg.getRefName();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return getRepository() != null;
+	}
+}
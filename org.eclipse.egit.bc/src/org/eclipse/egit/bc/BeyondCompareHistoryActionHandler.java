@@ -0,0 +1,83 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.core.internal.job.JobUtil;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Steps through the history of the selected file with a
+ * {@link HistoryNavigator}.
+ */
+public abstract class BeyondCompareHistoryActionHandler extends BeyondCompareRepositoryActionHandler {
+
+	private class StepOperation implements IEGitOperation {
+
+		private final Repository repository;
+
+		private final IFile file;
+
+		StepOperation(Repository repository, IFile file) {
+			this.repository = repository;
+			this.file = file;
+		}
+
+		public void execute(IProgressMonitor monitor) throws CoreException {
+			try {
+				HistoryNavigator navigator = HistoryNavigator.get(file);
+				if (navigator != null)
+					step(navigator, monitor);
+			} catch (InterruptedIOException e) {
+				// cancelled
+			} catch (IOException e) {
+				Activator.handleError(UIText.HistoryNavigator_onError, e, true);
+			}
+		}
+
+		public ISchedulingRule getSchedulingRule() {
+			return new RepositorySchedulingRule(repository);
+		}
+	}
+
+	/**
+	 * Moves the navigator and compares the revisions at its new position.
+	 *
+	 * @param navigator
+	 * @param monitor
+	 * @throws IOException
+	 */
+	protected abstract void step(HistoryNavigator navigator,
+			IProgressMonitor monitor) throws IOException;
+
+	/**
+	 * @see org.eclipse.core.commands.IHandler#execute(org.eclipse.core.commands.ExecutionEvent)
+	 */
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		Repository repository = getRepository(true, event);
+		if (repository == null)
+			return null;
+
+		IResource[] resources = getSelectedResources(event);
+		if (resources.length == 1 && resources[0] instanceof IFile)
+			JobUtil.scheduleUserJob(new StepOperation(repository,
+					(IFile) resources[0]),
+					UIText.BeyondCompareOperation_TaskName, null);
+		return null;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		IResource[] resources = getSelectedResources();
+		return super.isEnabled() && resources.length == 1
+				&& resources[0] instanceof IFile;
+	}
+}
@@ -0,0 +1,335 @@
+package org.eclipse.egit.bc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.egit.bc.core.CompareMetrics;
+import org.eclipse.egit.bc.core.RevisionCache;
+
+/**
+ * Starts Beyond Compare processes and keeps track of them until they exit.
+ * <p>
+ * The output of every process is drained by a daemon thread which then waits
+ * for the process to exit. While a session is running the revision cache
+ * files it shows are pinned; when it exits they are released and the
+ * temporary directory of the session, if any, is deleted. The time spent
+ * spawning processes and failed launches are recorded in
+ * {@link CompareMetrics}.
+ * <p>
+ * BCompare.exe hands a compare over to an instance that is already running
+ * and exits right away. The files of a session this short are still shown,
+ * so they stay pinned. If the instance was started by this launcher they are
+ * released when it exits. Otherwise they are released once a later session
+ * runs an instance of its own, as then no other instance was left running.
+ * The temporary directory of a short session is left to the
+ * {@link RevisionCacheJanitor}.
+ * <p>
+ * An {@link ExitListener} given with a launch is told the exit code of the
+ * process after it exited. Exit codes of errors are logged, except for a
+ * merge that was closed with conflicts and not saved.
+ */
+public class BeyondCompareLauncher {
+
+	/** Exit codes from this value on signal an error of Beyond Compare */
+	private static final int FIRST_ERROR_EXIT_CODE = 100;
+
+	/** Exit code of a merge closed with conflicts left and nothing saved */
+	private static final int MERGE_CONFLICTS_EXIT_CODE = 101;
+
+	/** Argument naming the output file of a merge session */
+	private static final String MERGE_OUTPUT = "/mergeoutput="; //$NON-NLS-1$
+
+	/** Sessions shorter than this were probably handed to another instance */
+	private static final long MIN_SESSION_MILLIS = 10 * 1000L;
+
+	/** Number of output lines kept for the error log */
+	private static final int MAX_OUTPUT_LINES = 20;
+
+	private static final AtomicInteger SESSION_COUNT = new AtomicInteger();
+
+	private final RevisionCache cache;
+
+	private final Set<Session> sessions = Collections
+			.synchronizedSet(new LinkedHashSet<Session>());
+
+	/**
+	 * Sessions handed over to an instance not started by this launcher,
+	 * guarded by {@link #sessions}
+	 */
+	private final List<Session> handedOverExternally = new ArrayList<Session>();
+
+	/**
+	 * Notified when a Beyond Compare process exits.
+	 */
+	public interface ExitListener {
+		/**
+		 * Called on the thread waiting for the process.
+		 *
+		 * @param session
+		 *            the session of the process
+		 * @param exitCode
+		 *            exit code of the process, -1 if waiting was interrupted
+		 */
+		void exited(Session session, int exitCode);
+	}
+
+	/**
+	 * A running Beyond Compare process.
+	 */
+	public class Session {
+		private final List<String> command;
+
+		private final List<File> pinned;
+
+		private final File tempDirectory;
+
+		private final ExitListener listener;
+
+		private final long startTime = System.currentTimeMillis();
+
+		private final LinkedList<String> output = new LinkedList<String>();
+
+		/**
+		 * Sessions handed over to the instance of this one, guarded by
+		 * {@link BeyondCompareLauncher#sessions}
+		 */
+		private final List<Session> received = new ArrayList<Session>();
+
+		private long endTime;
+
+		private Process process;
+
+		private Session(List<String> command, List<File> pinned,
+				File tempDirectory, ExitListener listener) {
+			this.command = command;
+			this.pinned = pinned;
+			this.tempDirectory = tempDirectory;
+			this.listener = listener;
+		}
+
+		/**
+		 * @return the command line of the process
+		 */
+		public List<String> getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return start time of the session in milliseconds
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		private void drain() {
+			try {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(process.getInputStream()));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						output.add(line);
+						if (output.size() > MAX_OUTPUT_LINES)
+							output.removeFirst();
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				// the process is gone, waitFor returns its exit code
+			}
+			int exitCode;
+			try {
+				exitCode = process.waitFor();
+			} catch (InterruptedException e) {
+				exitCode = -1;
+			}
+			finish(this, exitCode);
+		}
+	}
+
+	/**
+	 * @param cache
+	 *            cache whose files are pinned while they are compared, may be
+	 *            <code>null</code>
+	 */
+	public BeyondCompareLauncher(RevisionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Starts a Beyond Compare process.
+	 *
+	 * @param command
+	 *            executable and arguments
+	 * @param files
+	 *            files shown by the process, those from the revision cache
+	 *            are pinned until the compare is closed
+	 * @param tempDirectory
+	 *            directory deleted when the process exits, may be
+	 *            <code>null</code>
+	 * @return the session of the started process
+	 * @throws IOException
+	 *             if the process could not be started
+	 */
+	public Session launch(List<String> command, Collection<File> files,
+			File tempDirectory) throws IOException {
+		return launch(command, files, tempDirectory, null);
+	}
+
+	/**
+	 * Starts a Beyond Compare process and reports its exit.
+	 *
+	 * @param command
+	 *            executable and arguments
+	 * @param files
+	 *            files shown by the process, those from the revision cache
+	 *            are pinned until the compare is closed
+	 * @param tempDirectory
+	 *            directory deleted when the process exits, may be
+	 *            <code>null</code>
+	 * @param listener
+	 *            notified when the process exits, may be <code>null</code>
+	 * @return the session of the started process
+	 * @throws IOException
+	 *             if the process could not be started
+	 */
+	public Session launch(List<String> command, Collection<File> files,
+			File tempDirectory, ExitListener listener) throws IOException {
+		List<File> pinned = new ArrayList<File>(files);
+		Session session = new Session(new ArrayList<String>(command), pinned,
+				tempDirectory, listener);
+		if (cache != null)
+			for (File file : pinned)
+				cache.pin(file);
+		ProcessBuilder builder = new ProcessBuilder(session.command);
+		builder.redirectErrorStream(true);
+		long start = CompareMetrics.start();
+		try {
+			session.process = builder.start();
+		} catch (IOException e) {
+			CompareMetrics.getDefault().launchFailed();
+			release(session, true);
+			throw e;
+		}
+		CompareMetrics.getDefault().spawn.record(start);
+		CompareMetrics.getDefault().processStarted();
+		// close stdin, Beyond Compare never reads it
+		session.process.getOutputStream().close();
+		sessions.add(session);
+
+		final Session started = session;
+		Thread drainer = new Thread(new Runnable() {
+			public void run() {
+				started.drain();
+			}
+		}, "Beyond Compare session " + SESSION_COUNT.incrementAndGet()); //$NON-NLS-1$
+		drainer.setDaemon(true);
+		drainer.start();
+		return session;
+	}
+
+	/**
+	 * @return the sessions whose process has not exited yet
+	 */
+	public List<Session> getSessions() {
+		synchronized (sessions) {
+			return new ArrayList<Session>(sessions);
+		}
+	}
+
+	private void finish(Session session, int exitCode) {
+		CompareMetrics.getDefault().processExited();
+		long now = System.currentTimeMillis();
+		boolean ownInstance = now - session.startTime >= MIN_SESSION_MILLIS;
+		List<Session> closed = new ArrayList<Session>();
+		synchronized (sessions) {
+			sessions.remove(session);
+			session.endTime = now;
+			if (!ownInstance && exitCode < FIRST_ERROR_EXIT_CODE)
+				handOver(session);
+			else {
+				closed.add(session);
+				closed.addAll(session.received);
+				if (ownInstance)
+					// no instance was running when this one started
+					for (Iterator<Session> it = handedOverExternally
+							.iterator(); it.hasNext();) {
+						Session handedOver = it.next();
+						if (handedOver.endTime < session.startTime) {
+							closed.add(handedOver);
+							it.remove();
+						}
+					}
+			}
+		}
+		for (Session done : closed)
+			release(done, done == session && ownInstance);
+		if (exitCode >= FIRST_ERROR_EXIT_CODE
+				&& !(exitCode == MERGE_CONFLICTS_EXIT_CODE && isMerge(session))) {
+			StringBuilder message = new StringBuilder();
+			message.append("Beyond Compare exited with code ").append(exitCode); //$NON-NLS-1$
+			for (String line : session.output)
+				message.append('\n').append(line);
+			Activator.logError(message.toString(), null);
+		}
+		if (session.listener != null)
+			try {
+				session.listener.exited(session, exitCode);
+			} catch (RuntimeException e) {
+				Activator.logError(e.getMessage(), e);
+			}
+	}
+
+	/**
+	 * Keeps the files of a session pinned until the instance it was handed
+	 * over to exits, together with those handed over to the session itself.
+	 */
+	private void handOver(Session session) {
+		Session receiver = null;
+		for (Session running : sessions)
+			if (running.startTime <= session.startTime) {
+				receiver = running;
+				break;
+			}
+		List<Session> holder = receiver != null ? receiver.received
+				: handedOverExternally;
+		holder.add(session);
+		holder.addAll(session.received);
+		session.received.clear();
+	}
+
+	private static boolean isMerge(Session session) {
+		for (String argument : session.command)
+			if (argument.startsWith(MERGE_OUTPUT))
+				return true;
+		return false;
+	}
+
+	private void release(Session session, boolean deleteTempDirectory) {
+		if (cache != null)
+			for (File file : session.pinned)
+				cache.unpin(file);
+		if (deleteTempDirectory && session.tempDirectory != null)
+			deleteTree(session.tempDirectory);
+	}
+
+	private static void deleteTree(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				deleteTree(child);
+		file.delete();
+	}
+}
@@ -0,0 +1,15 @@
+package org.eclipse.egit.bc;
+
+/**
+ * The "merge conflicts" action, resolving conflicting files one after
+ * another in Beyond Compare.
+ */
+public class BeyondCompareMergeAction extends BeyondCompareRepositoryAction {
+	/**
+	 * Create the merge action
+	 */
+	public BeyondCompareMergeAction() {
+		super(BeyondCompareActionCommands.MERGE_ACTION,
+				new BeyondCompareMergeActionHandler());
+	}
+}
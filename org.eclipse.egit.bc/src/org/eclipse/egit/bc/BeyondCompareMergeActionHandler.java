@@ -0,0 +1,66 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.core.internal.job.JobUtil;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Merges the conflicting files of the selection with Beyond Compare, see
+ * {@link ConflictMerge}.
+ */
+public class BeyondCompareMergeActionHandler extends BeyondCompareRepositoryActionHandler {
+
+	private static class MergeOperation implements IEGitOperation {
+
+		private final Repository repository;
+
+		private final IResource[] resources;
+
+		MergeOperation(Repository repository, IResource[] resources) {
+			this.repository = repository;
+			this.resources = resources;
+		}
+
+		public void execute(IProgressMonitor monitor) throws CoreException {
+			if (monitor == null)
+				monitor = new NullProgressMonitor();
+			try {
+				ConflictMerge.merge(repository, resources, monitor);
+			} catch (InterruptedIOException e) {
+				// cancelled by the user
+			} catch (IOException e) {
+				Activator.handleError(UIText.ConflictMerge_onError, e, true);
+			}
+		}
+
+		public ISchedulingRule getSchedulingRule() {
+			return new RepositorySchedulingRule(repository);
+		}
+	}
+
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		Repository repository = getRepository(true, event);
+		// assert all resources map to the same repository
+		if (repository == null)
+			return null;
+		IResource[] resources = getSelectedResources(event);
+		JobUtil.scheduleUserJob(new MergeOperation(repository, resources),
+				UIText.BeyondCompareOperation_TaskName, null);
+		return null;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return getRepository() != null;
+	}
+}
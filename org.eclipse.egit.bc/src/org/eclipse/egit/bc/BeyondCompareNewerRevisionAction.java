@@ -0,0 +1,14 @@
+package org.eclipse.egit.bc;
+
+/**
+ * The "newer revision" action, stepping through the history of a file.
+ */
+public class BeyondCompareNewerRevisionAction extends BeyondCompareRepositoryAction {
+	/**
+	 * Create the newer revision action
+	 */
+	public BeyondCompareNewerRevisionAction() {
+		super(BeyondCompareActionCommands.NEWER_REVISION_ACTION,
+				new BeyondCompareNewerRevisionActionHandler());
+	}
+}
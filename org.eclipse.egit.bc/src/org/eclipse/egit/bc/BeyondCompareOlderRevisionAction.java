@@ -0,0 +1,14 @@
+package org.eclipse.egit.bc;
+
+/**
+ * The "older revision" action, stepping through the history of a file.
+ */
+public class BeyondCompareOlderRevisionAction extends BeyondCompareRepositoryAction {
+	/**
+	 * Create the older revision action
+	 */
+	public BeyondCompareOlderRevisionAction() {
+		super(BeyondCompareActionCommands.OLDER_REVISION_ACTION,
+				new BeyondCompareOlderRevisionActionHandler());
+	}
+}
@@ -0,0 +1,17 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Compares the next older pair of revisions of the selected file.
+ */
+public class BeyondCompareOlderRevisionActionHandler extends BeyondCompareHistoryActionHandler {
+
+	@Override
+	protected void step(HistoryNavigator navigator, IProgressMonitor monitor)
+			throws IOException {
+		navigator.older(monitor);
+	}
+}
@@ -112,6 +112,17 @@ public abstract class BeyondCompareRepositoryAction extends AbstractHandler impl
 		handler.setSelection(mySelection);
 		if (action != null)
 			action.setEnabled(isEnabled());
+		selectionChanged(selection);
+	}
+
+	/**
+	 * Called after the selection changed, does nothing by default.
+	 *
+	 * @param selection
+	 *            the new selection
+	 */
+	protected void selectionChanged(ISelection selection) {
+		// hook for subclasses
 	}
 
 	public final Object execute(ExecutionEvent event) throws ExecutionException {
@@ -15,17 +15,19 @@
 package org.eclipse.egit.bc;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.expressions.IEvaluationContext;
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.mapping.ResourceMapping;
@@ -33,6 +35,9 @@ import org.eclipse.core.resources.mapping.ResourceTraversal;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.PlatformObject;
+import org.eclipse.egit.bc.core.CompareMetrics;
+import org.eclipse.egit.bc.core.PreviousCommitFinder;
+import org.eclipse.egit.bc.core.PreviousCommitFinder.PreviousCommit;
 import org.eclipse.egit.core.AdapterUtils;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.internal.UIText;
@@ -41,19 +46,9 @@ import org.eclipse.jface.text.TextSelection;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.StructuredSelection;
-import org.eclipse.jgit.diff.DiffConfig;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffEntry.ChangeType;
-import org.eclipse.jgit.diff.RenameDetector;
-import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.lib.NullProgressMonitor;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.FollowFilter;
-import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.team.core.RepositoryProvider;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.ISources;
 import org.eclipse.ui.IWorkbenchWindow;
@@ -71,6 +66,47 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 
 	private IStructuredSelection mySelection;
 
+	private volatile ResolvedSelection resolved;
+
+	private volatile EditorSelection editorSelection;
+
+	// the repository of the last selection, isEnabled is asked for it again
+	// and again while the selection does not change; the team providers of
+	// the projects it was resolved from tell whether a project was shared or
+	// disconnected since
+	private static final class ResolvedSelection {
+		final IStructuredSelection selection;
+		final Repository repository;
+		final Map<IProject, RepositoryProvider> providers;
+		ResolvedSelection(IStructuredSelection selection, Repository repository,
+				Set<IProject> projects) {
+			this.selection = selection;
+			this.repository = repository;
+			this.providers = new HashMap<IProject, RepositoryProvider>();
+			for (IProject project : projects)
+				providers.put(project, RepositoryProvider.getProvider(project));
+		}
+
+		boolean isValid() {
+			for (Map.Entry<IProject, RepositoryProvider> entry : providers.entrySet())
+				if (RepositoryProvider.getProvider(entry.getKey()) != entry.getValue())
+					return false;
+			return true;
+		}
+	}
+
+	// the selection standing for the file of an editor with a text
+	// selection, kept while the editor input stays the same so that the
+	// resolved repository is found again
+	private static final class EditorSelection {
+		final Object input;
+		final IStructuredSelection selection;
+		EditorSelection(Object input, IStructuredSelection selection) {
+			this.input = input;
+			this.selection = selection;
+		}
+	}
+
 	/**
 	 * Set the selection when used by {@link RepositoryAction} as
 	 * {@link IWorkbenchWindowActionDelegate}
@@ -143,20 +179,47 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 	 */
 	private Repository getRepository(boolean warn,
 			IStructuredSelection selection, Shell shell) {
+		ResolvedSelection cached = resolved;
+		if (cached != null && cached.selection == selection
+				&& (cached.repository != null || !warn) && cached.isValid())
+			return cached.repository;
+		long start = CompareMetrics.start();
+		Set<IProject> projects = new LinkedHashSet<IProject>();
+		Repository result = resolveRepository(warn, selection, shell, projects);
+		CompareMetrics.getDefault().resolveRepository.record(start);
+		resolved = new ResolvedSelection(selection, result, projects);
+		return result;
+	}
+
+	/**
+	 * Looks up the mappings of the selected elements one after another and
+	 * stops at the first one that is not mapped or maps to a different
+	 * repository. Mappings are looked up once per folder.
+	 *
+	 * @param projects
+	 *            receives the projects whose mappings were looked up
+	 */
+	private Repository resolveRepository(boolean warn,
+			IStructuredSelection selection, Shell shell, Set<IProject> projects) {
 		RepositoryMapping mapping = null;
-		for (IPath location : getSelectedLocations(selection)) {
-			IResource resource = ResourceUtil2.getResourceForLocation(location);
-			RepositoryMapping repositoryMapping = RepositoryMapping.getMapping(resource);
-			if (mapping == null)
-				mapping = repositoryMapping;
-			if (repositoryMapping == null)
-				return null;
-			if (mapping.getRepository() != repositoryMapping.getRepository()) {
-				if (warn)
-					MessageDialog.openError(shell,
-							UIText.RepositoryAction_multiRepoSelectionTitle,
-							UIText.RepositoryAction_multiRepoSelection);
-				return null;
+		Map<IContainer, RepositoryMapping> folderMappings = new HashMap<IContainer, RepositoryMapping>();
+		for (Object o : selection.toList()) {
+			for (IResource resource : getMappedResources(o)) {
+				if (resource != null && resource.getLocation() == null)
+					continue;
+				RepositoryMapping repositoryMapping = getMapping(resource,
+						folderMappings, projects);
+				if (mapping == null)
+					mapping = repositoryMapping;
+				if (repositoryMapping == null)
+					return null;
+				if (mapping.getRepository() != repositoryMapping.getRepository()) {
+					if (warn)
+						MessageDialog.openError(shell,
+								UIText.RepositoryAction_multiRepoSelectionTitle,
+								UIText.RepositoryAction_multiRepoSelection);
+					return null;
+				}
 			}
 		}
 		Repository result = null;
@@ -208,15 +271,10 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 		if (selection == null)
 			selection = HandlerUtil.getCurrentSelectionChecked(event);
 		if (selection instanceof TextSelection) {
-			IEditorInput editorInput = (IEditorInput) HandlerUtil.getVariable(
-					event, ISources.ACTIVE_EDITOR_INPUT_NAME);
-			IResource resource = ResourceUtil.getResource(editorInput);
-			if (resource != null)
-				return new StructuredSelection(resource);
-
-			resource = ResourceUtil.getFile(editorInput);
-			if (resource != null)
-				return new StructuredSelection(resource);
+			IStructuredSelection editorFile = getEditorSelection(HandlerUtil
+					.getVariable(event, ISources.ACTIVE_EDITOR_INPUT_NAME));
+			if (editorFile != null)
+				return editorFile;
 		}
 		if (selection instanceof IStructuredSelection)
 			return (IStructuredSelection) selection;
@@ -253,16 +311,37 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 		if (selection instanceof TextSelection) {
 			if (ctx == null)
 				ctx = getEvaluationContext();
-			IResource resource = ResourceUtil.getResource(ctx
+			IStructuredSelection editorFile = getEditorSelection(ctx
 					.getVariable(ISources.ACTIVE_EDITOR_INPUT_NAME));
-			if (resource != null)
-				return new StructuredSelection(resource);
+			if (editorFile != null)
+				return editorFile;
 		}
 		if (selection instanceof IStructuredSelection)
 			return (IStructuredSelection) selection;
 		return StructuredSelection.EMPTY;
 	}
 
+	/**
+	 * @param editorInput
+	 *            input of the active editor
+	 * @return a selection of the resource of the editor, the same one while
+	 *         the input does not change, or <code>null</code> if the input
+	 *         has no resource
+	 */
+	private IStructuredSelection getEditorSelection(Object editorInput) {
+		EditorSelection cached = editorSelection;
+		if (cached != null && cached.input == editorInput)
+			return cached.selection;
+		IResource resource = ResourceUtil.getResource(editorInput);
+		if (resource == null && editorInput instanceof IEditorInput)
+			resource = ResourceUtil.getFile((IEditorInput) editorInput);
+		if (resource == null)
+			return null;
+		IStructuredSelection selection = new StructuredSelection(resource);
+		editorSelection = new EditorSelection(editorInput, selection);
+		return selection;
+	}
+
 	public void setEnabled(Object evaluationContext) {
 		this.evaluationContext = (IEvaluationContext) evaluationContext;
 	}
@@ -315,27 +394,44 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 		return result.toArray(new IResource[result.size()]);
 	}
 
-	private IPath[] getSelectedLocations(IStructuredSelection selection) {
-		Set<IPath> result = new LinkedHashSet<IPath>();
-		for (Object o : selection.toList()) {
-			IResource resource = AdapterUtils.adapt(o, IResource.class);
-			if (resource != null) {
-				IPath location = resource.getLocation();
-				if (location != null)
-					result.add(location);
-			} else {
-				IPath location = AdapterUtils.adapt(o, IPath.class);
-				if (location != null)
-					result.add(location);
-				else
-					for (IResource r : extractResourcesFromMapping(o)) {
-						IPath l = r.getLocation();
-						if (l != null)
-							result.add(l);
-					}
-			}
+	/**
+	 * @return the resources whose mapping decides the repository of the
+	 *         element, <code>null</code> for a location outside of the
+	 *         workspace
+	 */
+	private List<IResource> getMappedResources(Object o) {
+		IResource resource = AdapterUtils.adapt(o, IResource.class);
+		if (resource != null)
+			return Collections.singletonList(resource);
+		IPath location = AdapterUtils.adapt(o, IPath.class);
+		if (location != null)
+			return Collections.singletonList(ResourceUtil2
+					.getResourceForLocation(location));
+		return extractResourcesFromMapping(o);
+	}
+
+	private static RepositoryMapping getMapping(IResource resource,
+			Map<IContainer, RepositoryMapping> folderMappings,
+			Set<IProject> projects) {
+		if (resource == null)
+			return null;
+		if (resource.getProject() != null)
+			projects.add(resource.getProject());
+		if (resource.isLinked(IResource.CHECK_ANCESTORS)) {
+			// map the location, not the link
+			IResource target = ResourceUtil2.getResourceForLocation(resource
+					.getLocation());
+			if (target != null && target.getProject() != null)
+				projects.add(target.getProject());
+			return RepositoryMapping.getMapping(target);
 		}
-		return result.toArray(new IPath[result.size()]);
+		IContainer folder = resource instanceof IContainer ? (IContainer) resource
+				: resource.getParent();
+		if (folderMappings.containsKey(folder))
+			return folderMappings.get(folder);
+		RepositoryMapping mapping = RepositoryMapping.getMapping(resource);
+		folderMappings.put(folder, mapping);
+		return mapping;
 	}
 
 	private List<IResource> extractResourcesFromMapping(Object o) {
@@ -365,83 +461,17 @@ public abstract class BeyondCompareRepositoryActionHandler extends AbstractHandl
 		return HandlerUtil.getActiveShellChecked(event);
 	}
 
-	protected String getPreviousPath(Repository repository,
-			ObjectReader reader, RevCommit headCommit,
-			RevCommit previousCommit, String path) throws IOException {
-		TreeWalk walk = new TreeWalk(reader);
-		walk.setRecursive(true);
-		walk.addTree(previousCommit.getTree());
-		walk.addTree(headCommit.getTree());
-
-		List<DiffEntry> entries = DiffEntry.scan(walk);
-		if (entries.size() < 2)
-			return path;
-
-		for (DiffEntry diff : entries)
-			if (diff.getChangeType() == ChangeType.MODIFY
-					&& path.equals(diff.getNewPath()))
-				return path;
-
-		RenameDetector detector = new RenameDetector(repository);
-		detector.addAll(entries);
-		List<DiffEntry> renames = detector.compute(walk.getObjectReader(),
-				NullProgressMonitor.INSTANCE);
-		for (DiffEntry diff : renames)
-			if (diff.getChangeType() == ChangeType.RENAME
-					&& path.equals(diff.getNewPath()))
-				return diff.getOldPath();
-
-		return path;
-	}
-
 	protected List<PreviousCommit> findPreviousCommits() throws IOException {
-		List<PreviousCommit> result = new ArrayList<PreviousCommit>();
-		Repository repository = getRepository();
-		IResource resource = getSelectedResources()[0];
-		String path = RepositoryMapping.getMapping(resource.getProject())
-				.getRepoRelativePath(resource);
-		RevWalk rw = new RevWalk(repository);
+		long start = CompareMetrics.start();
 		try {
-			if (path.length() > 0) {
-				DiffConfig diffConfig = repository.getConfig().get(
-						DiffConfig.KEY);
-				FollowFilter filter = FollowFilter.create(path, diffConfig);
-				rw.setTreeFilter(filter);
-			}
-
-			RevCommit headCommit = rw.parseCommit(repository.getRef(
-					Constants.HEAD).getObjectId());
-			rw.markStart(headCommit);
-			headCommit = rw.next();
-
-			if (headCommit == null)
-				return result;
-			List<RevCommit> directParents = Arrays.asList(headCommit
-					.getParents());
-
-			RevCommit previousCommit = rw.next();
-			while (previousCommit != null && result.size() < directParents.size()) {
-				if (directParents.contains(previousCommit)) {
-					String previousPath = getPreviousPath(repository,
-							rw.getObjectReader(), headCommit, previousCommit,
-							path);
-					result.add(new PreviousCommit(previousCommit, previousPath));
-				}
-				previousCommit = rw.next();
-			}
+			Repository repository = getRepository();
+			IResource resource = getSelectedResources()[0];
+			String path = RepositoryMapping.getMapping(resource.getProject())
+					.getRepoRelativePath(resource);
+			return PreviousCommitFinder.find(repository,
+					BeyondCompareUtil.getChangedPathIndex(repository), path);
 		} finally {
-			rw.dispose();
-		}
-		return result;
-	}
-
-	// keep track of the path of an ancestor (for following renames)
-	protected static final class PreviousCommit {
-		final RevCommit commit;
-		final String path;
-		PreviousCommit(final RevCommit commit, final String path) {
-			this.commit = commit;
-			this.path = path;
+			CompareMetrics.getDefault().findRevision.record(start);
 		}
 	}
 
@@ -1,25 +1,44 @@
 package org.eclipse.egit.bc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
-import org.eclipse.core.resources.IStorage;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.egit.bc.BeyondCompareLauncher.ExitListener;
+import org.eclipse.egit.bc.core.ChangedPathIndex;
+import org.eclipse.egit.bc.core.CheckoutFilter;
+import org.eclipse.egit.bc.core.CheckoutFilters;
+import org.eclipse.egit.bc.core.RevisionCache;
+import org.eclipse.egit.bc.core.RevisionMaterializer;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
 import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
-import org.eclipse.egit.core.internal.CompareCoreUtils;
-import org.eclipse.egit.ui.internal.CompareUtils;
+import org.eclipse.egit.core.EclipseGitProgressTransformer;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.team.core.history.IFileRevision;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.ui.IActionBars;
+import org.eclipse.ui.IEditorSite;
+import org.eclipse.ui.IViewSite;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
 
 /**
  *
@@ -29,7 +48,18 @@ import org.eclipse.team.core.history.IFileRevision;
 public class BeyondCompareUtil {
 	private static File BC_TEMP_DIR = null;
 
+	private static RevisionCache REVISION_CACHE = null;
+
+	private static BeyondCompareLauncher LAUNCHER = null;
+
+	private static LaunchQueue LAUNCH_QUEUE = null;
+
+	private static final Map<Repository, ChangedPathIndex> CHANGED_PATH_INDEXES = new WeakHashMap<Repository, ChangedPathIndex>();
+
 	/**
+	 * Queues a compare of a working tree file with a read-only revision.
+	 * Requests made at about the same time are started together, see
+	 * {@link LaunchQueue}.
 	 *
 	 * @param leftFile
 	 * @param rightFile
@@ -39,74 +69,200 @@ public class BeyondCompareUtil {
 		if ( beyondCompareCommand == null )
 			return;
 		
-		exec(beyondCompareCommand, leftFile, rightFile, "/rightreadonly"); //$NON-NLS-1$
+		try {
+			getLaunchQueue().submit(
+					Arrays.asList(beyondCompareCommand, leftFile, rightFile, "/rightreadonly"), //$NON-NLS-1$
+					Arrays.asList(new File(leftFile), new File(rightFile)), null);
+		} catch (IOException e) {
+			Activator.handleError(NLS.bind(UIText.BeyondCompareLauncher_LaunchFailed, beyondCompareCommand), e, true);
+		}
 	}
 
 	/**
-	 * @param cmds
-	 * @throws RuntimeException
+	 * Queues a compare of two exported mirror directories. Both sides are
+	 * read-only: a mirror holds copies of some files and links to others,
+	 * so edits would reach the working tree for some files only.
+	 *
+	 * @param leftDirectory
+	 * @param rightDirectory
+	 * @param sessionDirectory
+	 *            temporary directory deleted when Beyond Compare exits, may be
+	 *            <code>null</code>
 	 */
-	public static void exec(String... cmds) throws RuntimeException {
-		if (cmds == null) {
-			throw new NullPointerException("Commands can't be null"); //$NON-NLS-1$
+	public static void execFolderCompare(String leftDirectory, String rightDirectory, File sessionDirectory) {
+		String beyondCompareCommand = BeyondCompareEgitPreferencePage.getBeyondCompareExecutablePath();
+		if ( beyondCompareCommand == null )
+			return;
+		
+		try {
+			getLaunchQueue().submit(
+					Arrays.asList(beyondCompareCommand, leftDirectory, rightDirectory, "/leftreadonly", "/rightreadonly"), //$NON-NLS-1$ //$NON-NLS-2$
+					Arrays.asList(new File(leftDirectory), new File(rightDirectory)), sessionDirectory);
+		} catch (IOException e) {
+			Activator.handleError(NLS.bind(UIText.BeyondCompareLauncher_LaunchFailed, beyondCompareCommand), e, true);
 		}
+	}
 
+	/**
+	 * Queues a compare of two revisions. Both sides are read-only unless the
+	 * left one is the working tree file.
+	 *
+	 * @param leftFile
+	 * @param leftTitle
+	 *            title of the left revision, <code>null</code> if the left
+	 *            file is the working tree file
+	 * @param rightFile
+	 * @param rightTitle
+	 *            title of the right revision
+	 */
+	public static void execBeyondCompare(String leftFile, String leftTitle, String rightFile, String rightTitle) {
+		String beyondCompareCommand = BeyondCompareEgitPreferencePage.getBeyondCompareExecutablePath();
+		if ( beyondCompareCommand == null )
+			return;
+
+		List<String> command = new ArrayList<String>(Arrays.asList(beyondCompareCommand, leftFile, rightFile));
+		if (leftTitle != null) {
+			command.add("/lefttitle=" + leftTitle); //$NON-NLS-1$
+			command.add("/leftreadonly"); //$NON-NLS-1$
+		}
+		command.add("/righttitle=" + rightTitle); //$NON-NLS-1$
+		command.add("/rightreadonly"); //$NON-NLS-1$
 		try {
-			Runtime.getRuntime().exec(cmds);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			getLaunchQueue().submit(command,
+					Arrays.asList(new File(leftFile), new File(rightFile)), null);
+		} catch (IOException e) {
+			Activator.handleError(NLS.bind(UIText.BeyondCompareLauncher_LaunchFailed, beyondCompareCommand), e, true);
+		}
+	}
+
+	/**
+	 * Queues a three-way merge into an output file.
+	 *
+	 * @param oursFile
+	 *            the version of the current branch, shown on the left
+	 * @param oursTitle
+	 * @param theirsFile
+	 *            the version of the merged branch, shown on the right
+	 * @param theirsTitle
+	 * @param baseFile
+	 *            the common base shown in the center, <code>null</code> for
+	 *            a two-way merge
+	 * @param baseTitle
+	 * @param outputFile
+	 *            the file the merge result is saved to
+	 * @param listener
+	 *            notified when Beyond Compare exits
+	 */
+	public static void execBeyondMerge(String oursFile, String oursTitle, String theirsFile, String theirsTitle, String baseFile, String baseTitle, String outputFile, ExitListener listener) {
+		String beyondCompareCommand = BeyondCompareEgitPreferencePage.getBeyondCompareExecutablePath();
+		if ( beyondCompareCommand == null )
+			return;
+
+		List<String> command = new ArrayList<String>(Arrays.asList(beyondCompareCommand, oursFile, theirsFile));
+		List<File> files = new ArrayList<File>(Arrays.asList(new File(oursFile), new File(theirsFile)));
+		if (baseFile != null) {
+			command.add(baseFile);
+			command.add("/centertitle=" + baseTitle); //$NON-NLS-1$
+			files.add(new File(baseFile));
+		}
+		command.add("/lefttitle=" + oursTitle); //$NON-NLS-1$
+		command.add("/righttitle=" + theirsTitle); //$NON-NLS-1$
+		command.add("/mergeoutput=" + outputFile); //$NON-NLS-1$
+		try {
+			getLaunchQueue().submit(command, files, null, listener);
+		} catch (IOException e) {
+			Activator.handleError(NLS.bind(UIText.BeyondCompareLauncher_LaunchFailed, beyondCompareCommand), e, true);
 		}
 	}
 
 	/**
-	 * @param content
-	 * @param name
-	 * @param version
+	 * Shows a message in the status line of the active part instead of
+	 * launching a compare, e.g. because there are no differences.
+	 *
+	 * @param message
+	 */
+	public static void showStatusMessage(final String message) {
+		if (!PlatformUI.isWorkbenchRunning())
+			return;
+		PlatformUI.getWorkbench().getDisplay().asyncExec(new Runnable() {
+			public void run() {
+				IWorkbenchWindow window = PlatformUI.getWorkbench()
+						.getActiveWorkbenchWindow();
+				IWorkbenchPage page = window != null ? window.getActivePage() : null;
+				IWorkbenchPart part = page != null ? page.getActivePart() : null;
+				if (part == null)
+					return;
+				IActionBars bars = null;
+				if (part.getSite() instanceof IViewSite)
+					bars = ((IViewSite) part.getSite()).getActionBars();
+				else if (part.getSite() instanceof IEditorSite)
+					bars = ((IEditorSite) part.getSite()).getActionBars();
+				if (bars != null)
+					bars.getStatusLineManager().setMessage(message);
+			}
+		});
+	}
+
+	/**
+	 * @return the launcher tracking the running Beyond Compare processes
+	 * @throws IOException
+	 */
+	public static synchronized BeyondCompareLauncher getLauncher() throws IOException {
+		if (LAUNCHER == null)
+			LAUNCHER = new BeyondCompareLauncher(getRevisionCache());
+		return LAUNCHER;
+	}
+
+	/**
+	 * @return the queue coalescing compare requests
+	 * @throws IOException
+	 */
+	public static synchronized LaunchQueue getLaunchQueue() throws IOException {
+		if (LAUNCH_QUEUE == null)
+			LAUNCH_QUEUE = new LaunchQueue(getLauncher());
+		return LAUNCH_QUEUE;
+	}
+
+	/**
+	 * Stores the content of a blob in the revision cache. Nothing is written
+	 * if the cache already holds the blob in the requested form.
+	 * <p>
+	 * The blob is written as raw bytes unless a target encoding is given, in
+	 * which case its content is decoded with the source encoding and written
+	 * in the target encoding. A checkout filter is applied before.
+	 *
+	 * @param revision
+	 *            the revision to store
 	 * @param encoding
-	 * @param tempDir
-	 * @param addVersionSuffix
+	 *            the encoding of the blob content, only used for transcoding
+	 * @param targetEncoding
+	 *            the encoding to transcode to, or <code>null</code> to keep the
+	 *            raw bytes
+	 * @param filter
+	 *            checkout conversions, may be <code>null</code>
 	 * @param monitor
-	 * @return -
+	 * @return path of the cached file
 	 * @throws IOException
-	 * @throws CoreException
 	 */
-	public static String storeVersionTempFile(InputStream content, String name, RevCommit version, String encoding, File tempDir, boolean addVersionSuffix, IProgressMonitor monitor) throws IOException ,CoreException {
+	public static String storeVersionTempFile(Revision revision, String encoding, String targetEncoding, CheckoutFilter filter, IProgressMonitor monitor) throws IOException {
+		String name = revision.getPath().substring(revision.getPath().lastIndexOf('/') + 1);
 		String taskName = "Retrieving Git revision for " + name + "..."; //$NON-NLS-1$ //$NON-NLS-2$
 		if (monitor == null) {
 			monitor = new NullProgressMonitor();
 		}
-		monitor.beginTask(taskName, 100);
+		monitor.beginTask(taskName, 1);
 
-		String ext = ""; //$NON-NLS-1$
-		int dot = name.lastIndexOf("."); //$NON-NLS-1$
-		if (dot != -1) {
-			ext = name.substring(dot);
-			name = name.substring(0, dot);
-		}
-
-		if (addVersionSuffix) {
-			name = name + "_" + version.getId().getName(); //$NON-NLS-1$
-		}
-
-		if (tempDir == null) {
-			tempDir = getBCTempDirectory();
-		}
-		if (!tempDir.exists()) {
-			tempDir.mkdirs();
-		}
-		File tempFile = new File(tempDir, name + ext);
-		//System.out.println("remote SVN file v" + version.getVersion() + ": " + tempFile.getAbsolutePath());
-		monitor.worked(10);
-		// write out the file if it doesn't exist or if the revision is newer than the cached file
-		Date versionDate = new Date();
-		if (readAndWriteStringByDate(content, encoding, tempFile, versionDate, new SubProgressMonitor(monitor, 90))) {
-			// successfully saved
-		} else {
-			// remote file revision date is older than the cached file's last modified date
-			monitor.worked(90);
+		// the materializer begins the task of the sub monitor, sized from the
+		// object header
+		IProgressMonitor writeMonitor = new SubProgressMonitor(monitor, 1);
+		try {
+			File tempFile = getRevisionMaterializer().materialize(revision, encoding, targetEncoding,
+					filter, new EclipseGitProgressTransformer(writeMonitor));
+			return tempFile.getAbsolutePath();
+		} finally {
+			writeMonitor.done();
+			monitor.done();
 		}
-		monitor.done();
-		return tempFile.getAbsolutePath();
 	}
 
 	/**
@@ -124,118 +280,128 @@ public class BeyondCompareUtil {
 	}
 
 	/**
-	 * @param is
-	 * @param encoding
-	 * @param outputFile
-	 * @param date
-	 * @param monitor
-	 * @return -
+	 * Creates a new, empty directory for the mirror trees of a batch compare.
+	 *
+	 * @return the new directory
 	 * @throws IOException
 	 */
-	public static boolean readAndWriteStringByDate(InputStream is, String encoding, File outputFile, Date date,
-			IProgressMonitor monitor) throws IOException {
-		boolean wrote = false;
-		if (!outputFile.exists()) {
-			readAndWriteString(is, encoding, outputFile, monitor);
-			wrote = true;
-		} else {
-			// check if the file revision date is newer than the cached file's
-			// last modified date
-			Date fileDate = new Date(outputFile.lastModified());
-			int compare = fileDate.compareTo(date);
-			if (compare < 0) {
-				// File's last modified date is older than the given date, so
-				// overwrite
-				readAndWriteString(is, encoding, outputFile, monitor, true /* overwrite */);
-//				System.out.println("Remote file is newer than the cached version, updating."); //$NON-NLS-1$
-				wrote = true;
-			} else {
-				// remote file revision date is older than the cached file's
-				// last modified date
-//				System.out.println("Remote file already exists."); //$NON-NLS-1$
-			}
+	public static File createBatchDirectory() throws IOException {
+		File batchRoot = getBatchRootDirectory();
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()); //$NON-NLS-1$
+		for (int i = 0; i < 100; i++) {
+			File dir = new File(batchRoot, i == 0 ? stamp : stamp + "-" + i); //$NON-NLS-1$
+			if (dir.mkdirs())
+				return dir;
 		}
-		return wrote;
+		throw new IOException("Could not create batch directory in " + batchRoot); //$NON-NLS-1$
 	}
 
 	/**
-	 * Reads in from the input stream and writes it out to the given file at the
-	 * same time. Does NOT overwrite an existing file.
+	 * Returns the directory for the mirror trees of a batch compare that is
+	 * kept for later compares of the same selection. Its modification time is
+	 * updated, so the {@link RevisionCacheJanitor} only removes it once it
+	 * has not been used for a while.
 	 *
-	 * @param is
-	 *            The input stream to read in from
-	 * @param encoding
-	 *            The encoding for the input stream
-	 * @param outputFile
-	 *            The output file to write to
-	 * @param monitor
-	 *            The progress monitor
+	 * @param key
+	 *            identifies the compared selection
+	 * @return the directory, created if it did not exist
 	 * @throws IOException
 	 */
-	public static void readAndWriteString(InputStream is, String encoding,
-			File outputFile, IProgressMonitor monitor) throws IOException {
-		readAndWriteString(is, encoding, outputFile, monitor, false);
+	public static File getBatchDirectory(String key) throws IOException {
+		String name = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Constants.encode(key)).abbreviate(12).name();
+		File dir = new File(getBatchRootDirectory(), "mirror-" + name); //$NON-NLS-1$
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create batch directory " + dir); //$NON-NLS-1$
+		dir.setLastModified(System.currentTimeMillis());
+		return dir;
 	}
 
 	/**
-	 * Reads in from the input stream and writes it out to the given file at the
-	 * same time.
+	 * @return the directory holding the mirror trees of batch compares
+	 * @throws IOException
+	 */
+	public static File getBatchRootDirectory() throws IOException {
+		return new File(getBCTempDirectory(), "batch"); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the cache of materialized revisions
+	 * @throws IOException
+	 */
+	public static synchronized RevisionCache getRevisionCache() throws IOException {
+		if (REVISION_CACHE == null)
+			REVISION_CACHE = new RevisionCache(new File(getBCTempDirectory(), "cache")); //$NON-NLS-1$
+		return REVISION_CACHE;
+	}
+
+	/**
+	 * @return materializer writing revisions into the revision cache with the
+	 *         current stream threshold
+	 * @throws IOException
+	 */
+	public static RevisionMaterializer getRevisionMaterializer() throws IOException {
+		return new RevisionMaterializer(getRevisionCache(), BeyondCompareEgitPreferencePage.getStreamThreshold());
+	}
+
+	/**
+	 * @param repository
+	 * @return the checkout filters of the repository, or <code>null</code>
+	 *         if revisions are written as raw blobs
+	 * @throws IOException
+	 */
+	public static CheckoutFilters getCheckoutFilters(Repository repository) throws IOException {
+		if (!BeyondCompareEgitPreferencePage.isApplyCheckoutFilters())
+			return null;
+		return new CheckoutFilters(repository);
+	}
+
+	/**
+	 * Returns the changed-path index of the repository. An index used for the
+	 * first time is brought up to date in the background and again whenever
+	 * the refs of the repository change.
 	 *
-	 * @param is
-	 *            The input stream to read in from
-	 * @param encoding
-	 *            The encoding for the input stream
-	 * @param outputFile
-	 *            The output file to write to
-	 * @param monitor
-	 *            The progress monitor
-	 * @param overwrite
-	 *            If true an the outputFile exists then it is overwritten
+	 * @param repository
+	 * @return the changed-path index of the repository, or <code>null</code>
+	 *         if the commit-graph of the repository could not be read, in
+	 *         which case the history has to be walked without filters
 	 * @throws IOException
 	 */
-	public static void readAndWriteString(InputStream is, String encoding,
-			File outputFile, IProgressMonitor monitor, boolean overwrite)
-			throws IOException {
-		if (is == null) {
-			return;
+	public static ChangedPathIndex getChangedPathIndex(Repository repository) throws IOException {
+		ChangedPathIndex index;
+		synchronized (CHANGED_PATH_INDEXES) {
+			index = CHANGED_PATH_INDEXES.get(repository);
+			if (index == null) {
+				index = new ChangedPathIndex(repository, new File(getBCTempDirectory(), "paths")); //$NON-NLS-1$
+				final ChangedPathIndexer indexer = new ChangedPathIndexer(repository, index);
+				repository.getListenerList().addRefsChangedListener(new RefsChangedListener() {
+					public void onRefsChanged(RefsChangedEvent event) {
+						indexer.scheduleUpdate();
+					}
+				});
+				indexer.scheduleUpdate();
+				CHANGED_PATH_INDEXES.put(repository, index);
+			}
 		}
-		if (monitor == null) {
-			monitor = new NullProgressMonitor();
+		try {
+			index.refresh();
+		} catch (IOException e) {
+			// e.g. a SHA-256 or newer commit-graph, or a layer removed by gc;
+			// the graph keeps the layers it could read and does not fail
+			// again until it is rewritten, so this is logged once
+			Activator.logError("Could not read the commit-graph of " //$NON-NLS-1$
+					+ repository.getDirectory(), e);
+			return null;
 		}
+		return index;
+	}
 
-		BufferedReader reader = null;
-		BufferedWriter writer = null;
-		try {
-			if (!outputFile.exists() || overwrite) {
-				monitor.beginTask(
-						"Retrieving data from input stream and writing it out to a file...", //$NON-NLS-1$
-						is.available() * 2);
-				char[] part = new char[2048];
-				int read = 0;
-				writer = new BufferedWriter(new FileWriter(outputFile, false));
-				reader = new BufferedReader(new InputStreamReader(is, encoding));
-				while ((read = reader.read(part)) != -1) {
-					monitor.worked(read);
-					writer.write(part, 0, read);
-					monitor.worked(read);
-				}
-			} else {
-//				System.out.println("Output file already exists (" + outputFile.getCanonicalPath() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
-			}
-		} finally {
-			monitor.done();
-			if (writer != null) {
-				try {
-					writer.close();
-				} catch (IOException ex) {
-				}
-			}
-			if (reader != null) {
-				try {
-					reader.close();
-				} catch (IOException ex) {
-				}
-			}
+	/**
+	 * Closes the files of all changed-path indexes.
+	 */
+	public static void closeChangedPathIndexes() {
+		synchronized (CHANGED_PATH_INDEXES) {
+			for (ChangedPathIndex index : CHANGED_PATH_INDEXES.values())
+				index.close();
 		}
 	}
 
@@ -248,20 +414,92 @@ public class BeyondCompareUtil {
 	 */
 	public static String getCompareFilePath(String repoRelativeBasePath, RevCommit commit, Repository localRepo) {
 		try {
-			IFileRevision fileRev = CompareUtils.getFileRevision(repoRelativeBasePath, commit, localRepo, null);
-			String encoding = CompareCoreUtils.getResourceEncoding(localRepo,repoRelativeBasePath);
-
-			IStorage fileStorage = fileRev.getStorage(null);
-			InputStream content = fileStorage.getContents();
-			String fileName = fileRev.getName();
-			File tmpDir = BeyondCompareUtil.getBCTempDirectory();
-			String tmpFilePath = BeyondCompareUtil.storeVersionTempFile(
-					content, fileName, commit, encoding, tmpDir, true, null);
-			return tmpFilePath;
+			return getCompareFilePath(repoRelativeBasePath, commit, localRepo, null);
 		} catch (Exception e) {
 			Activator.logError("Error while getting file revision to compare", e);
 			return null;
 		}
 	}
 
+	/**
+	 * Like {@link #getCompareFilePath(String, RevCommit, Repository)}, but
+	 * reports progress and failures.
+	 *
+	 * @param repoRelativeBasePath
+	 * @param commit
+	 * @param localRepo
+	 * @param monitor
+	 *            may be <code>null</code>
+	 * @return path of the revision file or <code>null</code> if the file does
+	 *         not exist in the commit
+	 * @throws IOException
+	 *             if the revision could not be written, an
+	 *             {@link InterruptedIOException} if the monitor was cancelled
+	 */
+	public static String getCompareFilePath(String repoRelativeBasePath, RevCommit commit, Repository localRepo, IProgressMonitor monitor) throws IOException {
+		RevisionResolver resolver = new RevisionResolver(localRepo);
+		try {
+			Revision revision = resolver.resolve(repoRelativeBasePath, commit);
+			if (revision == null)
+				return null;
+			return getCompareFilePath(revision, localRepo, monitor);
+		} finally {
+			resolver.release();
+		}
+	}
+
+	/**
+	 * Writes a blob into the revision cache unless it is cached already.
+	 *
+	 * @param repoRelativeBasePath
+	 *            path of the file the blob belongs to, used for its name,
+	 *            encoding and checkout filter
+	 * @param blobId
+	 * @param localRepo
+	 * @param monitor
+	 *            may be <code>null</code>
+	 * @return path of the revision file
+	 * @throws IOException
+	 *             if the revision could not be written, an
+	 *             {@link InterruptedIOException} if the monitor was cancelled
+	 */
+	public static String getCompareFilePath(String repoRelativeBasePath, AnyObjectId blobId, Repository localRepo, IProgressMonitor monitor) throws IOException {
+		RevisionResolver resolver = new RevisionResolver(localRepo);
+		try {
+			return getCompareFilePath(resolver.resolve(repoRelativeBasePath, blobId), localRepo, monitor);
+		} finally {
+			resolver.release();
+		}
+	}
+
+	/**
+	 * Writes a revision into the revision cache unless it is cached already.
+	 *
+	 * @param revision
+	 *            the revision, the path of its file is used for its name,
+	 *            encoding and checkout filter
+	 * @param localRepo
+	 *            the repository of the revision
+	 * @param monitor
+	 *            may be <code>null</code>
+	 * @return path of the revision file
+	 * @throws IOException
+	 *             if the revision could not be written, an
+	 *             {@link InterruptedIOException} if the monitor was cancelled
+	 */
+	public static String getCompareFilePath(Revision revision, Repository localRepo, IProgressMonitor monitor) throws IOException {
+		String path = revision.getPath();
+		String targetEncoding = BeyondCompareEgitPreferencePage.getRevisionEncoding();
+		String encoding = null;
+		if (targetEncoding != null)
+			encoding = ResourceEncodings.getEncoding(localRepo, path);
+		CheckoutFilters filters = getCheckoutFilters(localRepo);
+		CheckoutFilter filter = filters != null ? filters.get(path) : null;
+		File cached = getRevisionMaterializer().lookup(revision.getBlobId(), encoding, targetEncoding, filter);
+		if (cached != null)
+			return cached.getAbsolutePath();
+
+		return BeyondCompareUtil.storeVersionTempFile(revision, encoding, targetEncoding, filter, monitor);
+	}
+
 }
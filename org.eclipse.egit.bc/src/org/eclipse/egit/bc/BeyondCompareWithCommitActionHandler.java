@@ -13,19 +13,15 @@ import java.io.IOException;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.egit.core.project.RepositoryMapping;
-import org.eclipse.egit.ui.internal.UIText;
-import org.eclipse.egit.ui.internal.dialogs.CompareTreeView;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.egit.ui.internal.history.CommitSelectionDialog;
 import org.eclipse.jface.window.Window;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.PlatformUI;
 
 /**
  * The "compare with commit" action. This action opens a diff editor comparing
@@ -44,38 +40,20 @@ public class BeyondCompareWithCommitActionHandler extends BeyondCompareRepositor
 		if (dlg.open() != Window.OK)
 			return null;
 
-		if (resources.length == 1 && resources[0] instanceof IFile) {
-			final IFile baseFile = (IFile) resources[0];
-
-			try {
-				RepositoryMapping mapping = RepositoryMapping.getMapping(resources[0]);
-				String repoRelativeBasePath = mapping.getRepoRelativePath(baseFile);
-				ObjectId commitId = dlg.getCommitId();
-
-				Repository localRepo = mapping.getRepository();
-				RevWalk rw = new RevWalk(localRepo);
-				RevCommit commit = rw.parseCommit(commitId);
-				rw.release();
-
-				String rightFilePath = BeyondCompareUtil.getCompareFilePath(repoRelativeBasePath, commit, localRepo);
-				String leftFilePath = baseFile.getLocation().toFile().getAbsolutePath();
-				BeyondCompareUtil.execBeyondCompare(leftFilePath, rightFilePath);
-
-			} catch (IOException e) {
-				Activator.handleError(UIText.CompareWithIndexAction_errorOnAddToIndex, e, true);
-				return null;
+		final ObjectId commitId = dlg.getCommitId();
+		JobUtil.scheduleUserJob(new CompareWithCommitOperation(repo,
+				resources, UIText.CompareWithCommitActionHandler_onError) {
+			@Override
+			protected RevCommit getCommit(RevWalk rw, String path,
+					IProgressMonitor monitor) throws IOException {
+				return rw.parseCommit(commitId);
 			}
-		} else {
-			CompareTreeView view;
-			try {
-				view = (CompareTreeView) PlatformUI.getWorkbench()
-						.getActiveWorkbenchWindow().getActivePage().showView(
-								CompareTreeView.ID);
-				view.setInput(resources, dlg.getCommitId().name());
-			} catch (PartInitException e) {
-				Activator.handleError(e.getMessage(), e, true);
+
+			@Override
+			protected String getLabel(RevCommit commit) {
+				return commitId.abbreviate(7).name();
 			}
-		}
+		}, UIText.BeyondCompareOperation_TaskName, null);
 		return null;
 	}
 
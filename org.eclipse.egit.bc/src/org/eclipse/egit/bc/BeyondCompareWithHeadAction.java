@@ -8,6 +8,7 @@
  *******************************************************************************/
 package org.eclipse.egit.bc;
 
+import org.eclipse.jface.viewers.ISelection;
 
 /**
  * Compares the working tree content of a file with the version of the file in
@@ -21,4 +22,9 @@ public class BeyondCompareWithHeadAction extends BeyondCompareRepositoryAction {
 	public BeyondCompareWithHeadAction() {
 		super(BeyondCompareActionCommands.COMPARE_WITH_HEAD_ACTION, new BeyondCompareWithHeadActionHandler());
 	}
+
+	@Override
+	protected void selectionChanged(ISelection selection) {
+		HeadRevisionPrefetcher.getDefault().selectionChanged(selection);
+	}
 }
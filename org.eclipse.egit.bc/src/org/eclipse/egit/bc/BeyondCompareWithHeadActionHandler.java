@@ -13,24 +13,16 @@ import java.io.IOException;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.egit.core.project.RepositoryMapping;
-import org.eclipse.egit.ui.internal.dialogs.CompareTreeView;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jgit.errors.IncorrectObjectTypeException;
-import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
-import org.eclipse.jgit.treewalk.filter.PathFilter;
-import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.swt.widgets.Shell;
-import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.handlers.HandlerUtil;
 
 /**
@@ -46,47 +38,38 @@ public class BeyondCompareWithHeadActionHandler extends BeyondCompareRepositoryA
 			return null;
 		final IResource[] resources = getSelectedResources(event);
 
-		if (resources.length == 1 && resources[0] instanceof IFile) {
-			final IFile baseFile = (IFile) resources[0];
-
-			try {
-				RepositoryMapping mapping = RepositoryMapping.getMapping(baseFile.getProject());
-				String repoRelativeBasePath = mapping.getRepoRelativePath(baseFile);
-				Repository localRepo = mapping.getRepository();
-				RevCommit commit = getHeadRevision(repository, repoRelativeBasePath);
+		final Ref head;
+		try {
+			head = repository.getRef(Constants.HEAD);
+		} catch (IOException e) {
+			Activator.handleError(UIText.CompareWithHeadActionHandler_onError, e, true);
+			return null;
+		}
+		if (head == null || head.getObjectId() == null) {
+			// Initial commit case
+			Shell shell = HandlerUtil.getActiveShell(event);
+			MessageDialog.openInformation(shell,
+					UIText.CompareWithHeadActionHandler_NoHeadTitle,
+					UIText.CompareWithHeadActionHandler_NoHeadMessage);
+			return null;
+		}
 
-				String rightFilePath = BeyondCompareUtil.getCompareFilePath(repoRelativeBasePath, commit, localRepo);
-				String leftFilePath = baseFile.getLocation().toFile().getAbsolutePath();
-				BeyondCompareUtil.execBeyondCompare(leftFilePath, rightFilePath);
-			} catch (Exception e) {
-				Activator.handleError(UIText.CompareWithHeadActionHandler_onError, e, true);
+		JobUtil.scheduleUserJob(new CompareWithCommitOperation(repository,
+				resources, UIText.CompareWithHeadActionHandler_onError) {
+			@Override
+			protected RevCommit getCommit(RevWalk rw, String path,
+					IProgressMonitor monitor) throws IOException {
+				// the file is resolved in HEAD's tree, which has the version
+				// of its last change; the label shows the branch, not a commit
+				return rw.parseCommit(head.getObjectId());
 			}
-			return null;
 
-		} else {
-			CompareTreeView view;
-			try {
-				view = (CompareTreeView) PlatformUI.getWorkbench().getActiveWorkbenchWindow().getActivePage().showView(CompareTreeView.ID);
-				try {
-					Ref head = repository.getRef(Constants.HEAD);
-					if (head == null || head.getObjectId() == null) {
-						// Initial commit case
-						Shell shell = HandlerUtil.getActiveShell(event);
-						MessageDialog.openInformation(shell,
-								UIText.CompareWithHeadActionHandler_NoHeadTitle,
-								UIText.CompareWithHeadActionHandler_NoHeadMessage);
-					} else
-						view.setInput(resources, Repository.shortenRefName(head.getTarget().getName()));
-				} catch (IOException e) {
-					Activator.handleError(e.getMessage(), e, true);
-					return null;
-				}
-			} catch (PartInitException e) {
-				Activator.handleError(e.getMessage(), e, true);
-				return null;
+			@Override
+			protected String getLabel(RevCommit commit) {
+				return Repository.shortenRefName(head.getTarget().getName());
 			}
-			return null;
-		}
+		}, UIText.BeyondCompareOperation_TaskName, null);
+		return null;
 	}
 
 	@Override
@@ -94,30 +77,4 @@ public class BeyondCompareWithHeadActionHandler extends BeyondCompareRepositoryA
 		return getRepository() != null;
 	}
 
-	private static RevCommit getHeadRevision(Repository repository, String repoRelativePath) throws MissingObjectException, IncorrectObjectTypeException, IOException {
-		Ref head = repository.getRef(Constants.HEAD);
-		if (head == null || head.getObjectId() == null)
-			// Initial import, not yet a HEAD commit
-			return null;
-
-		RevCommit latestFileCommit;
-		RevWalk rw = new RevWalk(repository);
-		try {
-			RevCommit headCommit = rw.parseCommit(head.getObjectId());
-			rw.markStart(headCommit);
-			rw.setTreeFilter(AndTreeFilter.create(
-					PathFilter.create(repoRelativePath),
-					TreeFilter.ANY_DIFF));
-			latestFileCommit = rw.next();
-			// Fall back to HEAD
-			if (latestFileCommit == null)
-				latestFileCommit = headCommit;
-		} finally {
-			rw.release();
-		}
-
-		return latestFileCommit;
-
-	}
-
 }
@@ -0,0 +1,16 @@
+package org.eclipse.egit.bc;
+
+/**
+ * The "compare with index" action. Compares the working tree content of the
+ * selected files with their staged versions.
+ */
+public class BeyondCompareWithIndexAction extends BeyondCompareRepositoryAction {
+
+	/**
+	 *
+	 */
+	public BeyondCompareWithIndexAction() {
+		super(BeyondCompareActionCommands.COMPARE_WITH_INDEX_ACTION,
+				new BeyondCompareWithIndexActionHandler());
+	}
+}
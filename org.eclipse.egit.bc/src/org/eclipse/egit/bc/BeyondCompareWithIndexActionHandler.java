@@ -0,0 +1,109 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.bc.core.ContentIdentity;
+import org.eclipse.egit.bc.core.IndexEntries;
+import org.eclipse.egit.core.internal.job.JobUtil;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Compares the working tree content of files with their staged versions.
+ * <p>
+ * The blobs are read directly from the index, no commit is resolved. Of a
+ * conflicting file the version picked by {@link IndexEntries} is compared.
+ */
+public class BeyondCompareWithIndexActionHandler extends BeyondCompareRepositoryActionHandler {
+
+	private static class CompareWithIndexOperation implements IEGitOperation {
+
+		private final Repository repository;
+
+		private final IResource[] resources;
+
+		CompareWithIndexOperation(Repository repository, IResource[] resources) {
+			this.repository = repository;
+			this.resources = resources;
+		}
+
+		public void execute(IProgressMonitor monitor) throws CoreException {
+			if (monitor == null)
+				monitor = new NullProgressMonitor();
+			try {
+				if (resources.length == 1 && resources[0] instanceof IFile)
+					compareFile((IFile) resources[0], monitor);
+				else
+					BatchCompare.compareWithIndex(repository, resources,
+							UIText.CompareWithIndexActionHandler_label, monitor);
+			} catch (InterruptedIOException e) {
+				// cancelled by the user
+			} catch (IOException e) {
+				Activator.handleError(UIText.CompareWithIndexActionHandler_onError, e, true);
+			} finally {
+				monitor.done();
+			}
+		}
+
+		private void compareFile(IFile file, IProgressMonitor monitor)
+				throws IOException {
+			RepositoryMapping mapping = RepositoryMapping.getMapping(file);
+			if (mapping == null || file.getLocation() == null)
+				return;
+			String path = mapping.getRepoRelativePath(file);
+			DirCacheEntry entry = IndexEntries.getEntry(
+					repository.readDirCache(), path);
+			if (entry == null)
+				throw new FileNotFoundException(path);
+			File workingFile = file.getLocation().toFile();
+			if (!IndexEntries.isConflict(entry)
+					&& ContentIdentity.isIdentical(repository, path,
+							workingFile, entry.getObjectId())) {
+				BeyondCompareUtil.showStatusMessage(NLS.bind(
+						UIText.BeyondCompareOperation_Identical,
+						file.getName(), UIText.CompareWithIndexActionHandler_label));
+				return;
+			}
+			String rightFilePath = BeyondCompareUtil.getCompareFilePath(path,
+					entry.getObjectId(), repository, monitor);
+			if (monitor.isCanceled())
+				return;
+			BeyondCompareUtil.execBeyondCompare(workingFile.getAbsolutePath(),
+					rightFilePath);
+		}
+
+		public ISchedulingRule getSchedulingRule() {
+			return new RepositorySchedulingRule(repository);
+		}
+	}
+
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		Repository repository = getRepository(true, event);
+		// assert all resources map to the same repository
+		if (repository == null)
+			return null;
+		IResource[] resources = getSelectedResources(event);
+		JobUtil.scheduleUserJob(new CompareWithIndexOperation(repository,
+				resources), UIText.BeyondCompareOperation_TaskName, null);
+		return null;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return getRepository() != null;
+	}
+}
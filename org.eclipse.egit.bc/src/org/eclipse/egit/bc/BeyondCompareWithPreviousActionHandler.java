@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.egit.bc;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -23,8 +25,13 @@ import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.bc.core.ContentIdentity;
+import org.eclipse.egit.bc.core.PreviousCommitFinder.PreviousCommit;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
 import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.internal.UIText;
 import org.eclipse.egit.ui.internal.dialogs.CommitSelectDialog;
 import org.eclipse.egit.ui.internal.dialogs.CompareTreeView;
@@ -32,6 +39,7 @@ import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.window.Window;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.PlatformUI;
@@ -72,7 +80,7 @@ public class BeyondCompareWithPreviousActionHandler extends BeyondCompareReposit
 			} else if (previousList.size() > 1){
 				final List<RevCommit> commits = new ArrayList<RevCommit>();
 				for (PreviousCommit pc: previousList)
-					commits.add(pc.commit);
+					commits.add(pc.getCommit());
 				HandlerUtil.getActiveShell(event).getDisplay()
 						.syncExec(new Runnable() {
 							public void run() {
@@ -81,7 +89,7 @@ public class BeyondCompareWithPreviousActionHandler extends BeyondCompareReposit
 										commits);
 								if (dlg.open() == Window.OK)
 									for (PreviousCommit pc: previousList)
-										if (pc.commit.equals(dlg.getSelectedCommit())){
+										if (pc.getCommit().equals(dlg.getSelectedCommit())){
 											   previous.set(pc);
 											   break;
 										   }
@@ -91,16 +99,40 @@ public class BeyondCompareWithPreviousActionHandler extends BeyondCompareReposit
 			else
 				previous.set(previousList.get(0));
 
-			if (previous.get() == null)
+			if (previous.get() == null || monitor.isCanceled())
 				return;
 			if (resource instanceof IFile) {
 				IFile baseFile = (IFile)resource;
 				PreviousCommit pc = previous.get();
-				String rightFilePath = BeyondCompareUtil.getCompareFilePath(pc.path, pc.commit, repository);
+				// the previous commit may know the file by an older name
+				String path = RepositoryMapping.getMapping(baseFile)
+						.getRepoRelativePath(baseFile);
+				String rightFilePath;
+				RevisionResolver resolver = new RevisionResolver(repository);
+				try {
+					Revision revision = resolver.resolve(pc.getPath(), pc.getCommit());
+					if (revision == null)
+						throw new FileNotFoundException(pc.getPath());
+					if (ContentIdentity.isIdentical(repository, path,
+							baseFile.getLocation().toFile(), revision.getBlobId())) {
+						BeyondCompareUtil.showStatusMessage(NLS.bind(
+								org.eclipse.egit.bc.UIText.BeyondCompareOperation_Identical,
+								baseFile.getName(), pc.getCommit().abbreviate(7).name()));
+						return;
+					}
+					rightFilePath = BeyondCompareUtil.getCompareFilePath(revision, repository, monitor);
+				} catch (InterruptedIOException e) {
+					return;
+				} catch (IOException e) {
+					Activator.handleError(e.getMessage(), e, true);
+					return;
+				} finally {
+					resolver.release();
+				}
 				String leftFilePath = baseFile.getLocation().toFile().getAbsolutePath();
 				BeyondCompareUtil.execBeyondCompare(leftFilePath, rightFilePath);
 			} else
-				openCompareTreeView(previous.get().commit);
+				openCompareTreeView(previous.get().getCommit());
 		}
 
 		private void openCompareTreeView(final RevCommit previous) {
@@ -139,7 +171,7 @@ public class BeyondCompareWithPreviousActionHandler extends BeyondCompareReposit
 		}
 
 		public ISchedulingRule getSchedulingRule() {
-			return resource;
+			return new RepositorySchedulingRule(repository);
 		}
 	}
 
@@ -13,18 +13,16 @@ import java.io.IOException;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.egit.ui.internal.dialogs.CompareTargetSelectionDialog;
-import org.eclipse.egit.ui.internal.dialogs.CompareTreeView;
 import org.eclipse.jface.window.Window;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.PlatformUI;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * The "compare with ref" action. This action opens a diff editor comparing the
@@ -42,43 +40,28 @@ public class BeyondCompareWithRefActionHandler extends BeyondCompareRepositoryAc
 		CompareTargetSelectionDialog dlg = new CompareTargetSelectionDialog(
 				getShell(event), repo, resources.length == 1 ? resources[0]
 						.getFullPath().lastSegment() : null);
-		if (dlg.open() == Window.OK) {
-
-			if (resources.length == 1 && resources[0] instanceof IFile) {
-				final IFile baseFile = (IFile) resources[0];
-				
-				try {
-					RepositoryMapping mapping = RepositoryMapping.getMapping(resources[0]);
-					String repoRelativeBasePath = mapping.getRepoRelativePath(baseFile);
-					String refName = dlg.getRefName();
-					ObjectId commitId = repo.resolve(refName);
-
-					Repository localRepo = mapping.getRepository();
-					RevWalk rw = new RevWalk(localRepo);
-					RevCommit commit = rw.parseCommit(commitId);
-					rw.release();
+		if (dlg.open() != Window.OK)
+			return null;
 
-					String rightFilePath = BeyondCompareUtil.getCompareFilePath(repoRelativeBasePath, commit, localRepo);
-					String leftFilePath = baseFile.getLocation().toFile().getAbsolutePath();
-					BeyondCompareUtil.execBeyondCompare(leftFilePath, rightFilePath);
+		final String refName = dlg.getRefName();
+		JobUtil.scheduleUserJob(new CompareWithCommitOperation(repo,
+				resources, UIText.CompareWithRefActionHandler_onError) {
+			@Override
+			protected RevCommit getCommit(RevWalk rw, String path,
+					IProgressMonitor monitor) throws IOException {
+				ObjectId commitId = repo.resolve(refName);
+				if (commitId == null)
+					throw new IOException(NLS.bind(
+							UIText.CompareWithRefActionHandler_unresolved,
+							refName));
+				return rw.parseCommit(commitId);
+			}
 
-				} catch (IOException e) {
-					Activator.handleError(UIText.CompareWithIndexActionHandler_onError, e, true);
-					return null;
-				}
-				
-			} else {
-				CompareTreeView view;
-				try {
-					view = (CompareTreeView) PlatformUI.getWorkbench()
-							.getActiveWorkbenchWindow().getActivePage()
-							.showView(CompareTreeView.ID);
-					view.setInput(resources, dlg.getRefName());
-				} catch (PartInitException e) {
-					Activator.handleError(e.getMessage(), e, true);
-				}
+			@Override
+			protected String getLabel(RevCommit commit) {
+				return Repository.shortenRefName(refName);
 			}
-		}
+		}, UIText.BeyondCompareOperation_TaskName, null);
 		return null;
 	}
 
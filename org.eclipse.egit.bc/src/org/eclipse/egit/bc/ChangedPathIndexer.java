@@ -0,0 +1,70 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.core.ChangedPathIndex;
+import org.eclipse.egit.core.EclipseGitProgressTransformer;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Low priority background job bringing the changed-path index of a
+ * repository up to date. It is scheduled when the index is first used and
+ * again whenever the refs of the repository change.
+ */
+public class ChangedPathIndexer extends Job {
+
+	/** Family of all indexer jobs, used to cancel them on shutdown */
+	public static final Object FAMILY = new Object();
+
+	/** Delay coalescing bursts of ref changes into one update */
+	private static final long DELAY = 10 * 1000L;
+
+	private final Repository repository;
+
+	private final ChangedPathIndex index;
+
+	/**
+	 * @param repository
+	 * @param index
+	 *            the index of the repository
+	 */
+	public ChangedPathIndexer(Repository repository, ChangedPathIndex index) {
+		super("Indexing changed paths of " + repository.getDirectory()); //$NON-NLS-1$
+		this.repository = repository;
+		this.index = index;
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	/**
+	 * Schedules an update after a short delay.
+	 */
+	public void scheduleUpdate() {
+		schedule(DELAY);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+		try {
+			index.update(repository, new EclipseGitProgressTransformer(monitor));
+		} catch (InterruptedIOException e) {
+			return Status.CANCEL_STATUS;
+		} catch (IOException e) {
+			Activator.logError("Error while indexing changed paths", e); //$NON-NLS-1$
+		} finally {
+			monitor.done();
+		}
+		return Status.OK_STATUS;
+	}
+
+	@Override
+	public boolean belongsTo(Object family) {
+		return family == FAMILY;
+	}
+}
@@ -0,0 +1,90 @@
+package org.eclipse.egit.bc;
+
+import org.eclipse.egit.bc.core.CompareMetrics;
+import org.eclipse.egit.bc.core.CompareMetrics.Stage;
+import org.eclipse.jface.action.Action;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.ui.part.ViewPart;
+
+/**
+ * Shows the {@link CompareMetrics} in a table that is refreshed every two
+ * seconds while the view is open.
+ */
+public class CompareMetricsView extends ViewPart {
+
+	/** View id */
+	public static final String ID = "org.eclipse.egit.bc.CompareMetricsView"; //$NON-NLS-1$
+
+	private static final int REFRESH_INTERVAL = 2000;
+
+	private static final String[] COLUMNS = { "Metric", "Count", //$NON-NLS-1$ //$NON-NLS-2$
+			"Average (ms)", "Median (ms)", "90% (ms)", "Max (ms)" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	private Table table;
+
+	private final Runnable refresh = new Runnable() {
+		public void run() {
+			if (table == null || table.isDisposed())
+				return;
+			update();
+			table.getDisplay().timerExec(REFRESH_INTERVAL, this);
+		}
+	};
+
+	@Override
+	public void createPartControl(Composite parent) {
+		table = new Table(parent, SWT.FULL_SELECTION | SWT.V_SCROLL);
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		for (int i = 0; i < COLUMNS.length; i++) {
+			TableColumn column = new TableColumn(table, i == 0 ? SWT.LEFT
+					: SWT.RIGHT);
+			column.setText(COLUMNS[i]);
+			column.setWidth(i == 0 ? 200 : 90);
+		}
+		getViewSite().getActionBars().getToolBarManager()
+				.add(new Action("Reset") { //$NON-NLS-1$
+					@Override
+					public void run() {
+						CompareMetrics.getDefault().reset();
+						update();
+					}
+				});
+		refresh.run();
+	}
+
+	@Override
+	public void setFocus() {
+		table.setFocus();
+	}
+
+	private void update() {
+		CompareMetrics metrics = CompareMetrics.getDefault();
+		table.removeAll();
+		for (Stage stage : metrics.getStages())
+			new TableItem(table, SWT.NONE).setText(new String[] {
+					stage.getName(), Long.toString(stage.getCount()),
+					millis(stage.getAverageMicros()),
+					millis(stage.getPercentileMicros(0.5)),
+					millis(stage.getPercentileMicros(0.9)),
+					millis(stage.getMaxMicros()) });
+		addCounter("Bytes written", metrics.getBytesWritten()); //$NON-NLS-1$
+		addCounter("Revision cache hits", metrics.getRevisionCacheHits()); //$NON-NLS-1$
+		addCounter("Revision cache misses", metrics.getRevisionCacheMisses()); //$NON-NLS-1$
+		addCounter("Running Beyond Compare processes", metrics.getLiveProcesses()); //$NON-NLS-1$
+		addCounter("Failed launches", metrics.getLaunchFailures()); //$NON-NLS-1$
+	}
+
+	private void addCounter(String name, long value) {
+		new TableItem(table, SWT.NONE).setText(new String[] { name,
+				Long.toString(value), "", "", "", "" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	private static String millis(long micros) {
+		return String.format("%.1f", Double.valueOf(micros / 1000.0)); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,170 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.bc.core.ContentIdentity;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Compares the selected resources with their versions in a commit.
+ * <p>
+ * Runs as a user job so that walking the history and writing the revisions
+ * does not block the UI thread; dialogs have to be shown before the operation
+ * is scheduled. A single file is compared directly, everything else through
+ * a {@link BatchCompare}. Files without differences are only reported in
+ * the status line. The operation checks for cancellation between its
+ * steps and while walking and writing, and jobs of the same repository are
+ * run one after another.
+ */
+public abstract class CompareWithCommitOperation implements IEGitOperation {
+
+	private final Repository repository;
+
+	private final IResource[] resources;
+
+	private final String errorMessage;
+
+	/**
+	 * @param repository
+	 *            the repository all resources belong to
+	 * @param resources
+	 *            the selected resources
+	 * @param errorMessage
+	 *            message shown if the compare fails
+	 */
+	protected CompareWithCommitOperation(Repository repository,
+			IResource[] resources, String errorMessage) {
+		this.repository = repository;
+		this.resources = resources;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * Resolves the commit to compare with.
+	 *
+	 * @param rw
+	 *            walk to parse the commit with
+	 * @param path
+	 *            repository relative path of the compared file, or
+	 *            <code>null</code> for a folder compare
+	 * @param monitor
+	 * @return the commit, or <code>null</code> to cancel the compare
+	 * @throws IOException
+	 */
+	protected abstract RevCommit getCommit(RevWalk rw, String path,
+			IProgressMonitor monitor) throws IOException;
+
+	/**
+	 * @param commit
+	 *            the commit returned by {@link #getCommit}
+	 * @return name of the commit shown as folder name of a folder compare
+	 */
+	protected abstract String getLabel(RevCommit commit);
+
+	/**
+	 * @return the repository all resources belong to
+	 */
+	protected Repository getRepository() {
+		return repository;
+	}
+
+	public void execute(IProgressMonitor monitor) throws CoreException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		RevWalk rw = new RevWalk(repository);
+		try {
+			if (resources.length == 1 && resources[0] instanceof IFile)
+				compareFile((IFile) resources[0], rw, monitor);
+			else
+				compareResources(rw, monitor);
+		} catch (InterruptedIOException e) {
+			// cancelled by the user
+		} catch (IOException e) {
+			Activator.handleError(errorMessage, e, true);
+		} finally {
+			rw.release();
+			monitor.done();
+		}
+	}
+
+	private void compareFile(IFile file, RevWalk rw, IProgressMonitor monitor)
+			throws IOException {
+		RepositoryMapping mapping = RepositoryMapping.getMapping(file);
+		if (mapping == null || file.getLocation() == null)
+			return;
+		String path = mapping.getRepoRelativePath(file);
+		monitor.beginTask(file.getName(), 2);
+		RevCommit commit = getCommit(rw, path, new SubProgressMonitor(monitor,
+				1));
+		checkCanceled(monitor);
+		if (commit == null)
+			return;
+		Repository fileRepository = mapping.getRepository();
+		File workingFile = file.getLocation().toFile();
+		String rightFilePath;
+		RevisionResolver resolver = new RevisionResolver(fileRepository);
+		try {
+			Revision revision = resolver.resolve(path, commit);
+			if (revision == null)
+				throw new FileNotFoundException(path);
+			if (ContentIdentity.isIdentical(fileRepository, path,
+					workingFile, revision.getBlobId())) {
+				BeyondCompareUtil.showStatusMessage(NLS.bind(
+						UIText.BeyondCompareOperation_Identical,
+						file.getName(), getLabel(commit)));
+				return;
+			}
+			checkCanceled(monitor);
+			rightFilePath = BeyondCompareUtil.getCompareFilePath(revision,
+					fileRepository, new SubProgressMonitor(monitor, 1));
+		} finally {
+			resolver.release();
+		}
+		checkCanceled(monitor);
+		BeyondCompareUtil.execBeyondCompare(workingFile.getAbsolutePath(),
+				rightFilePath);
+	}
+
+	private void compareResources(RevWalk rw, IProgressMonitor monitor)
+			throws IOException {
+		monitor.beginTask("", 2); //$NON-NLS-1$
+		RevCommit commit = getCommit(rw, null, new SubProgressMonitor(monitor,
+				1));
+		checkCanceled(monitor);
+		if (commit == null)
+			return;
+		try {
+			BatchCompare.compareWithCommit(repository, resources, commit,
+					getLabel(commit), new SubProgressMonitor(monitor, 1));
+		} catch (CoreException e) {
+			Activator.handleError(errorMessage, e, true);
+		}
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor)
+			throws InterruptedIOException {
+		if (monitor.isCanceled())
+			throw new InterruptedIOException();
+	}
+
+	public ISchedulingRule getSchedulingRule() {
+		return new RepositorySchedulingRule(repository);
+	}
+}
@@ -0,0 +1,227 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.egit.bc.BeyondCompareLauncher.ExitListener;
+import org.eclipse.egit.bc.BeyondCompareLauncher.Session;
+import org.eclipse.egit.bc.core.IndexEntries;
+import org.eclipse.egit.bc.core.IndexEntries.Conflict;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.core.internal.job.JobUtil;
+import org.eclipse.egit.core.op.IEGitOperation;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Resolves the conflicting files of a selection with Beyond Compare merges.
+ * <p>
+ * The index is read once and the base, ours and theirs stages of all
+ * conflicting files in the selection are written through the revision
+ * cache before the first merge starts. The merges are then run one after
+ * another, each saving into the working tree file. When Beyond Compare
+ * exits with code 0 after saving the file, it is added to the index, which
+ * resolves the conflict, and the next merge starts. A merge that is not
+ * saved stops the sequence.
+ * <p>
+ * Files deleted on one side and conflicts of submodules or symbolic links
+ * cannot be merged this way and are skipped. The Beyond Compare executable
+ * must wait for the merge to finish; one that hands the merge over to a
+ * running instance exits before the file is saved, which stops the
+ * sequence without staging anything.
+ */
+public class ConflictMerge {
+
+	private static class Merge {
+		final String path;
+
+		final File output;
+
+		final String base;
+
+		final String ours;
+
+		final String theirs;
+
+		Merge(String path, File output, String base, String ours,
+				String theirs) {
+			this.path = path;
+			this.output = output;
+			this.base = base;
+			this.ours = ours;
+			this.theirs = theirs;
+		}
+	}
+
+	/**
+	 * Adds a merged file to the index and starts the next merge.
+	 */
+	private class StageOperation implements IEGitOperation {
+
+		private final Merge merge;
+
+		StageOperation(Merge merge) {
+			this.merge = merge;
+		}
+
+		public void execute(IProgressMonitor monitor) throws CoreException {
+			try {
+				new Git(repository).add().addFilepattern(merge.path).call();
+			} catch (GitAPIException e) {
+				Activator.handleError(NLS.bind(UIText.ConflictMerge_StageFailed,
+						merge.path), e, true);
+				return;
+			}
+			IResource resource = ResourceUtil2.getResourceForLocation(new Path(
+					merge.output.getAbsolutePath()));
+			if (resource != null)
+				resource.refreshLocal(IResource.DEPTH_ZERO, monitor);
+			launchNext();
+		}
+
+		public ISchedulingRule getSchedulingRule() {
+			return new RepositorySchedulingRule(repository);
+		}
+	}
+
+	private final Repository repository;
+
+	private final List<Merge> merges;
+
+	private int next;
+
+	private ConflictMerge(Repository repository, List<Merge> merges) {
+		this.repository = repository;
+		this.merges = merges;
+	}
+
+	/**
+	 * Prepares the merges of the conflicting files in the selection and
+	 * starts the first one.
+	 *
+	 * @param repository
+	 *            the repository all resources belong to
+	 * @param resources
+	 *            the selected files and folders
+	 * @param monitor
+	 * @throws IOException
+	 *             if the index or a stage could not be read, an
+	 *             {@link InterruptedIOException} if the monitor was cancelled
+	 */
+	public static void merge(Repository repository, IResource[] resources,
+			IProgressMonitor monitor) throws IOException {
+		Set<String> scope = new LinkedHashSet<String>();
+		for (IResource resource : resources) {
+			RepositoryMapping mapping = RepositoryMapping.getMapping(resource);
+			String path = mapping != null ? mapping.getRepoRelativePath(resource) : null;
+			if (path != null)
+				scope.add(path);
+		}
+		if (scope.isEmpty() || repository.isBare())
+			return;
+
+		DirCache index = repository.readDirCache();
+		List<Conflict> conflicts = IndexEntries.getConflicts(index, scope);
+		if (conflicts.isEmpty()) {
+			BeyondCompareUtil.showStatusMessage(UIText.ConflictMerge_NoConflicts);
+			return;
+		}
+		List<Merge> merges = new ArrayList<Merge>();
+		RevisionResolver resolver = new RevisionResolver(repository);
+		monitor.beginTask(UIText.BeyondCompareOperation_TaskName,
+				conflicts.size());
+		try {
+			for (Conflict conflict : conflicts) {
+				if (monitor.isCanceled())
+					throw new InterruptedIOException();
+				if (!isMergeable(conflict.getOurs())
+						|| !isMergeable(conflict.getTheirs())
+						|| (conflict.getBase() != null && !isMergeable(conflict
+								.getBase())))
+					continue;
+				String path = conflict.getPath();
+				merges.add(new Merge(path, new File(repository.getWorkTree(),
+						path), getFile(repository, resolver, path,
+						conflict.getBase()), getFile(repository, resolver,
+						path, conflict.getOurs()), getFile(repository,
+						resolver, path, conflict.getTheirs())));
+				monitor.worked(1);
+			}
+		} finally {
+			resolver.release();
+			monitor.done();
+		}
+		if (merges.size() < conflicts.size())
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.ConflictMerge_Skipped,
+					Integer.valueOf(conflicts.size() - merges.size())));
+		if (!merges.isEmpty())
+			new ConflictMerge(repository, merges).launchNext();
+	}
+
+	private static boolean isMergeable(DirCacheEntry entry) {
+		if (entry == null)
+			return false;
+		FileMode mode = entry.getFileMode();
+		return mode == FileMode.REGULAR_FILE
+				|| mode == FileMode.EXECUTABLE_FILE;
+	}
+
+	private static String getFile(Repository repository,
+			RevisionResolver resolver, String path, DirCacheEntry entry)
+			throws IOException {
+		if (entry == null)
+			return null;
+		return BeyondCompareUtil.getCompareFilePath(
+				resolver.resolve(path, entry.getObjectId()), repository, null);
+	}
+
+	private synchronized void launchNext() {
+		if (next == merges.size()) {
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.ConflictMerge_AllResolved,
+					Integer.valueOf(merges.size())));
+			return;
+		}
+		final Merge merge = merges.get(next++);
+		final long lastModified = merge.output.lastModified();
+		String name = merge.output.getName();
+		BeyondCompareUtil.execBeyondMerge(merge.ours,
+				NLS.bind(UIText.ConflictMerge_OursTitle, name), merge.theirs,
+				NLS.bind(UIText.ConflictMerge_TheirsTitle, name), merge.base,
+				NLS.bind(UIText.ConflictMerge_BaseTitle, name),
+				merge.output.getAbsolutePath(), new ExitListener() {
+					public void exited(Session session, int exitCode) {
+						finished(merge, lastModified, exitCode);
+					}
+				});
+	}
+
+	private synchronized void finished(Merge merge, long lastModified,
+			int exitCode) {
+		if (exitCode != 0 || merge.output.lastModified() == lastModified) {
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.ConflictMerge_NotSaved, merge.path,
+					Integer.valueOf(merges.size() - next)));
+			return;
+		}
+		JobUtil.scheduleUserJob(new StageOperation(merge),
+				NLS.bind(UIText.ConflictMerge_Staging, merge.path), null);
+	}
+}
@@ -0,0 +1,121 @@
+package org.eclipse.egit.bc;
+
+import java.io.IOException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.core.RevisionCache;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
+import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
+import org.eclipse.egit.core.AdapterUtils;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Prepares "Compare with HEAD" for the selected file while the user is still
+ * looking at it.
+ * <p>
+ * When enabled in the preferences, a selection of a single file schedules
+ * this low priority job after a short delay. It looks the file up in the
+ * tree of HEAD and writes that version into the {@link RevisionCache}, so
+ * the compare itself finds everything cached. A new selection cancels a pending or running prefetch; as there is
+ * only one job, at most one prefetch runs at a time. Files above the
+ * streaming threshold are not prefetched.
+ */
+public class HeadRevisionPrefetcher extends Job {
+
+	/** Selections held for a shorter time are not prefetched */
+	private static final long DEBOUNCE_DELAY = 300;
+
+	private static final HeadRevisionPrefetcher INSTANCE = new HeadRevisionPrefetcher();
+
+	private volatile IFile file;
+
+	/**
+	 * @return the prefetcher
+	 */
+	public static HeadRevisionPrefetcher getDefault() {
+		return INSTANCE;
+	}
+
+	private HeadRevisionPrefetcher() {
+		super("Preparing Beyond Compare HEAD revision"); //$NON-NLS-1$
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	/**
+	 * Cancels the current prefetch and schedules one for the new selection
+	 * if it is a single file.
+	 *
+	 * @param selection
+	 */
+	public void selectionChanged(ISelection selection) {
+		cancel();
+		file = null;
+		if (!BeyondCompareEgitPreferencePage.isPrefetchHeadRevision()
+				|| !(selection instanceof IStructuredSelection)
+				|| ((IStructuredSelection) selection).size() != 1)
+			return;
+		IResource resource = AdapterUtils.adapt(
+				((IStructuredSelection) selection).getFirstElement(),
+				IResource.class);
+		if (resource instanceof IFile) {
+			file = (IFile) resource;
+			schedule(DEBOUNCE_DELAY);
+		}
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		IFile target = file;
+		if (target == null || monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		try {
+			prefetch(target, monitor);
+		} catch (IOException e) {
+			// the compare reports problems if the user actually runs it
+		}
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+
+	private static void prefetch(IFile target, IProgressMonitor monitor)
+			throws IOException {
+		RepositoryMapping mapping = RepositoryMapping.getMapping(target);
+		if (mapping == null)
+			return;
+		String path = mapping.getRepoRelativePath(target);
+		Repository repository = mapping.getRepository();
+		if (path == null || path.length() == 0 || repository == null)
+			return;
+		Ref head = repository.getRef(Constants.HEAD);
+		if (head == null || head.getObjectId() == null)
+			return;
+
+		RevisionResolver resolver = new RevisionResolver(repository);
+		RevWalk rw = new RevWalk(repository);
+		try {
+			RevCommit commit = rw.parseCommit(head.getObjectId());
+			Revision revision = resolver.resolve(path, commit);
+			if (revision != null && !monitor.isCanceled()
+					&& revision.getSize() <= BeyondCompareEgitPreferencePage
+							.getStreamThreshold())
+				BeyondCompareUtil.getCompareFilePath(revision, repository,
+						null);
+		} finally {
+			rw.release();
+			resolver.release();
+		}
+	}
+}
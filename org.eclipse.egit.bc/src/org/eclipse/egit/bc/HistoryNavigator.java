@@ -0,0 +1,267 @@
+package org.eclipse.egit.bc;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.core.CompareMetrics;
+import org.eclipse.egit.bc.core.FileHistory;
+import org.eclipse.egit.bc.core.FileHistory.Change;
+import org.eclipse.egit.bc.core.RevisionResolver;
+import org.eclipse.egit.bc.core.RevisionResolver.Revision;
+import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Steps through the history of a file, comparing one pair of neighbouring
+ * revisions after the other.
+ * <p>
+ * The navigator keeps a {@link FileHistory} and a cursor per file, so
+ * stepping reads the history only as far as needed and never walks it
+ * again. At cursor <code>p</code> the revision of the <code>p</code>th
+ * change, newest first, is shown on the right and the next newer one on the
+ * left, the working tree file for the newest change. After each step the
+ * revisions around the cursor are written into the revision cache in the
+ * background, so the following steps find them there. Revisions above the
+ * streaming threshold are not prefetched.
+ * <p>
+ * A navigator is dropped when HEAD moves, the next step starts again at the
+ * newest change.
+ */
+public class HistoryNavigator {
+
+	/** Maximum number of files whose history is kept */
+	private static final int MAX_NAVIGATORS = 8;
+
+	/** Number of revisions prefetched on each side of the cursor */
+	private static final int PREFETCH_DISTANCE = 5;
+
+	private static final Map<String, HistoryNavigator> NAVIGATORS = new LinkedHashMap<String, HistoryNavigator>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, HistoryNavigator> eldest) {
+			if (size() <= MAX_NAVIGATORS)
+				return false;
+			eldest.getValue().dispose();
+			return true;
+		}
+	};
+
+	private final Repository repository;
+
+	private final IFile file;
+
+	private final FileHistory history;
+
+	private final Prefetch prefetch = new Prefetch();
+
+	/** Index of the change shown on the right, -1 before the first step */
+	private int cursor = -1;
+
+	private HistoryNavigator(Repository repository, IFile file, String path,
+			ObjectId head) throws IOException {
+		this.repository = repository;
+		this.file = file;
+		this.history = new FileHistory(repository,
+				BeyondCompareUtil.getChangedPathIndex(repository), head, path);
+	}
+
+	/**
+	 * @param file
+	 *            a file in a Git repository
+	 * @return the navigator of the file, or <code>null</code> if the file is
+	 *         not in a repository or the repository has no HEAD commit
+	 * @throws IOException
+	 */
+	public static HistoryNavigator get(IFile file) throws IOException {
+		RepositoryMapping mapping = RepositoryMapping.getMapping(file);
+		if (mapping == null)
+			return null;
+		Repository repository = mapping.getRepository();
+		String path = mapping.getRepoRelativePath(file);
+		ObjectId head = repository.resolve(Constants.HEAD);
+		if (path == null || head == null)
+			return null;
+		String key = repository.getDirectory().getAbsolutePath() + '\n' + path;
+		synchronized (NAVIGATORS) {
+			HistoryNavigator navigator = NAVIGATORS.get(key);
+			if (navigator != null && navigator.history.getStart().equals(head))
+				return navigator;
+			if (navigator != null)
+				navigator.dispose();
+			navigator = new HistoryNavigator(repository, file, path, head);
+			NAVIGATORS.put(key, navigator);
+			return navigator;
+		}
+	}
+
+	/**
+	 * Forgets all histories.
+	 */
+	public static void disposeAll() {
+		synchronized (NAVIGATORS) {
+			for (HistoryNavigator navigator : NAVIGATORS.values())
+				navigator.dispose();
+			NAVIGATORS.clear();
+		}
+	}
+
+	/**
+	 * Compares the next older pair of revisions.
+	 *
+	 * @param monitor
+	 * @throws IOException
+	 *             if the history could not be read or a revision could not
+	 *             be written
+	 */
+	public synchronized void older(IProgressMonitor monitor) throws IOException {
+		if (!show(cursor + 1, monitor))
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.HistoryNavigator_NoOlderRevision, file.getName()));
+	}
+
+	/**
+	 * Compares the next newer pair of revisions.
+	 *
+	 * @param monitor
+	 * @throws IOException
+	 *             if the history could not be read or a revision could not
+	 *             be written
+	 */
+	public synchronized void newer(IProgressMonitor monitor) throws IOException {
+		if (cursor <= 0 || !show(cursor - 1, monitor))
+			BeyondCompareUtil.showStatusMessage(NLS.bind(
+					UIText.HistoryNavigator_NoNewerRevision, file.getName()));
+	}
+
+	/**
+	 * @return <code>false</code> if the file has no change at the position
+	 */
+	private boolean show(int position, IProgressMonitor monitor)
+			throws IOException {
+		prefetch.cancel();
+		Change right = getChange(position);
+		Change left = position > 0 ? getChange(position - 1) : null;
+		if (right == null)
+			return false;
+
+		String leftFile;
+		String leftTitle = null;
+		RevisionResolver resolver = new RevisionResolver(repository);
+		try {
+			if (left != null) {
+				leftFile = getCompareFilePath(resolver, left, monitor);
+				leftTitle = getTitle(left);
+			} else
+				leftFile = file.getLocation().toFile().getAbsolutePath();
+			String rightFile = getCompareFilePath(resolver, right, monitor);
+			BeyondCompareUtil.execBeyondCompare(leftFile, leftTitle,
+					rightFile, getTitle(right));
+		} finally {
+			resolver.release();
+		}
+		cursor = position;
+		prefetch.restart(position);
+		return true;
+	}
+
+	private Change getChange(int position) throws IOException {
+		long start = CompareMetrics.start();
+		try {
+			return history.get(position);
+		} finally {
+			CompareMetrics.getDefault().findRevision.record(start);
+		}
+	}
+
+	private String getCompareFilePath(RevisionResolver resolver,
+			Change change, IProgressMonitor monitor) throws IOException {
+		Revision revision = resolver.resolve(change.getPath(),
+				change.getCommit());
+		if (revision == null)
+			throw new FileNotFoundException(change.getPath());
+		return BeyondCompareUtil.getCompareFilePath(revision, repository,
+				monitor);
+	}
+
+	private static String getTitle(Change change) {
+		String path = change.getPath();
+		return NLS.bind(UIText.HistoryNavigator_RevisionTitle,
+				path.substring(path.lastIndexOf('/') + 1), change.getCommit()
+						.abbreviate(7).name());
+	}
+
+	private void dispose() {
+		prefetch.cancel();
+		history.release();
+	}
+
+	/**
+	 * Writes the revisions next to the cursor into the revision cache,
+	 * nearest first.
+	 */
+	private class Prefetch extends Job {
+
+		private volatile int center;
+
+		Prefetch() {
+			super("Preparing Beyond Compare revisions"); //$NON-NLS-1$
+			setSystem(true);
+			setPriority(DECORATE);
+		}
+
+		void restart(int position) {
+			cancel();
+			center = position;
+			schedule();
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			int position = center;
+			RevisionResolver resolver = new RevisionResolver(repository);
+			try {
+				// the cursor and its left neighbour are written already
+				for (int distance = 1; distance <= PREFETCH_DISTANCE
+						&& !monitor.isCanceled(); distance++) {
+					prefetch(resolver, position + distance, monitor);
+					if (position - 1 - distance >= 0)
+						prefetch(resolver, position - 1 - distance, monitor);
+				}
+			} catch (IOException e) {
+				// the compare reports problems if the user actually steps
+			} finally {
+				resolver.release();
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS
+					: Status.OK_STATUS;
+		}
+
+		private void prefetch(RevisionResolver resolver, int position,
+				IProgressMonitor monitor) throws IOException {
+			Change change = history.get(position);
+			if (change == null || monitor.isCanceled())
+				return;
+			Revision revision = resolver.resolve(change.getPath(),
+					change.getCommit());
+			if (revision != null
+					&& revision.getSize() <= BeyondCompareEgitPreferencePage
+							.getStreamThreshold())
+				BeyondCompareUtil.getCompareFilePath(revision, repository,
+						monitor);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.BeyondCompareLauncher.ExitListener;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Collects the compare requests of a short time window and starts them one
+ * after another.
+ * <p>
+ * Identical requests within the window are started only once. When no
+ * Beyond Compare process of this plugin is running, the first request of a
+ * window is given some time to come up so that the following ones are
+ * handed over to it and open as tabs of the same window instead of each
+ * starting an instance of its own.
+ */
+public class LaunchQueue extends Job {
+
+	/** Requests arriving within this time are started together */
+	private static final long WINDOW = 300;
+
+	/** Time given to the first instance before handing requests over to it */
+	private static final long HANDOVER_DELAY = 1500;
+
+	private final BeyondCompareLauncher launcher;
+
+	private final Map<List<String>, Request> pending = new LinkedHashMap<List<String>, Request>();
+
+	/**
+	 * Whether a run is scheduled that has not taken the pending requests yet,
+	 * guarded by {@link #pending}
+	 */
+	private boolean scheduled;
+
+	private static class Request {
+		final List<String> command;
+
+		final Collection<File> files;
+
+		final File tempDirectory;
+
+		final ExitListener listener;
+
+		Request(List<String> command, Collection<File> files,
+				File tempDirectory, ExitListener listener) {
+			this.command = command;
+			this.files = files;
+			this.tempDirectory = tempDirectory;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * @param launcher
+	 *            the launcher starting the processes
+	 */
+	public LaunchQueue(BeyondCompareLauncher launcher) {
+		super("Starting Beyond Compare"); //$NON-NLS-1$
+		this.launcher = launcher;
+		setSystem(true);
+		setPriority(INTERACTIVE);
+	}
+
+	/**
+	 * Queues a compare. It is started when the current window closes.
+	 *
+	 * @param command
+	 *            executable and arguments
+	 * @param files
+	 *            files shown by the process
+	 * @param tempDirectory
+	 *            directory deleted when the process exits, may be
+	 *            <code>null</code>
+	 */
+	public void submit(List<String> command, Collection<File> files,
+			File tempDirectory) {
+		submit(command, files, tempDirectory, null);
+	}
+
+	/**
+	 * Queues a compare whose exit is reported. It is started when the
+	 * current window closes.
+	 *
+	 * @param command
+	 *            executable and arguments
+	 * @param files
+	 *            files shown by the process
+	 * @param tempDirectory
+	 *            directory deleted when the process exits, may be
+	 *            <code>null</code>
+	 * @param listener
+	 *            notified when the process exits, may be <code>null</code>
+	 */
+	public void submit(List<String> command, Collection<File> files,
+			File tempDirectory, ExitListener listener) {
+		synchronized (pending) {
+			if (pending.containsKey(command))
+				return;
+			pending.put(command, new Request(command, files, tempDirectory,
+					listener));
+			// a waiting job picks the request up; a running one has taken
+			// its requests already and is run once more when it finishes
+			if (!scheduled) {
+				scheduled = true;
+				schedule(WINDOW);
+			}
+		}
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		List<Request> requests;
+		synchronized (pending) {
+			requests = new ArrayList<Request>(pending.values());
+			pending.clear();
+			scheduled = false;
+		}
+		boolean handover = launcher.getSessions().isEmpty();
+		for (int i = 0; i < requests.size(); i++) {
+			Request request = requests.get(i);
+			try {
+				launcher.launch(request.command, request.files,
+						request.tempDirectory, request.listener);
+			} catch (IOException e) {
+				Activator.handleError(NLS.bind(
+						UIText.BeyondCompareLauncher_LaunchFailed,
+						request.command.get(0)), e, true);
+				continue;
+			}
+			if (handover && i + 1 < requests.size()) {
+				handover = false;
+				try {
+					Thread.sleep(HANDOVER_DELAY);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		return Status.OK_STATUS;
+	}
+}
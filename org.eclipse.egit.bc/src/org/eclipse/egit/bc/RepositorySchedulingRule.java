@@ -0,0 +1,31 @@
+package org.eclipse.egit.bc;
+
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Scheduling rule serializing the compare jobs of one repository. Jobs of
+ * different repositories and workspace operations such as builds are not
+ * blocked by it.
+ */
+public class RepositorySchedulingRule implements ISchedulingRule {
+
+	private final Repository repository;
+
+	/**
+	 * @param repository
+	 */
+	public RepositorySchedulingRule(Repository repository) {
+		this.repository = repository;
+	}
+
+	public boolean contains(ISchedulingRule rule) {
+		return isConflicting(rule);
+	}
+
+	public boolean isConflicting(ISchedulingRule rule) {
+		return rule instanceof RepositorySchedulingRule
+				&& ((RepositorySchedulingRule) rule).repository.getDirectory()
+						.equals(repository.getDirectory());
+	}
+}
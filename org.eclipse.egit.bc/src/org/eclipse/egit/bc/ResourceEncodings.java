@@ -0,0 +1,111 @@
+package org.eclipse.egit.bc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.egit.core.internal.CompareCoreUtils;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Caches the encodings of repository files.
+ * <p>
+ * Looking up the encoding of a file maps its path to a workspace resource
+ * and asks it for its charset. The result is kept per repository and path
+ * until the encoding of any resource changes, which Eclipse reports with an
+ * {@link IResourceDelta#ENCODING} delta also for project and workspace
+ * settings.
+ */
+public class ResourceEncodings {
+
+	/** Maximum number of paths remembered */
+	private static final int MAX_ENTRIES = 1000;
+
+	private static final Map<String, String> ENCODINGS = new LinkedHashMap<String, String>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private static IResourceChangeListener listener;
+
+	private ResourceEncodings() {
+		// utility class
+	}
+
+	/**
+	 * @param repository
+	 * @param path
+	 *            repository relative path of a file
+	 * @return the encoding of the file, the workspace default if the file is
+	 *         not in the workspace
+	 */
+	public static String getEncoding(Repository repository, String path) {
+		String key = repository.getDirectory().getAbsolutePath() + '\n' + path;
+		synchronized (ENCODINGS) {
+			String encoding = ENCODINGS.get(key);
+			if (encoding != null)
+				return encoding;
+			if (listener == null)
+				addListener();
+		}
+		String encoding = CompareCoreUtils.getResourceEncoding(repository,
+				path);
+		synchronized (ENCODINGS) {
+			ENCODINGS.put(key, encoding);
+		}
+		return encoding;
+	}
+
+	/**
+	 * Stops listening for encoding changes and forgets all encodings.
+	 */
+	public static void dispose() {
+		synchronized (ENCODINGS) {
+			if (listener != null) {
+				ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+						listener);
+				listener = null;
+			}
+			ENCODINGS.clear();
+		}
+	}
+
+	private static void addListener() {
+		listener = new IResourceChangeListener() {
+			public void resourceChanged(IResourceChangeEvent event) {
+				if (event.getDelta() != null && hasEncodingChange(event.getDelta()))
+					synchronized (ENCODINGS) {
+						ENCODINGS.clear();
+					}
+			}
+		};
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(listener,
+				IResourceChangeEvent.POST_CHANGE);
+	}
+
+	private static boolean hasEncodingChange(IResourceDelta delta) {
+		final boolean[] changed = new boolean[1];
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta child) {
+					if ((child.getFlags() & IResourceDelta.ENCODING) != 0)
+						changed[0] = true;
+					return !changed[0];
+				}
+			});
+		} catch (CoreException e) {
+			return true;
+		}
+		return changed[0];
+	}
+}
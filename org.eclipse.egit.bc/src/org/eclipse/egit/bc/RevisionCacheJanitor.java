@@ -0,0 +1,105 @@
+package org.eclipse.egit.bc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.bc.core.RevisionCache;
+import org.eclipse.egit.bc.preferences.BeyondCompareEgitPreferencePage;
+
+/**
+ * Low priority background job keeping the revision cache within the budgets
+ * configured in the preferences.
+ * <p>
+ * The job evicts the least recently used cache entries, removes the mirror
+ * trees of old batch compares and revision files written by plugin versions
+ * before the cache existed, and reschedules itself while the plugin is
+ * active.
+ */
+public class RevisionCacheJanitor extends Job {
+
+	/** Delay between two runs of the janitor */
+	private static final long INTERVAL = 30 * 60 * 1000L;
+
+	/** Entries used within this time are considered in use by a compare */
+	private static final long MIN_IDLE = 60 * 60 * 1000L;
+
+	/** <code>name_&lt;commit id&gt;.ext</code> as written before the cache */
+	private static final Pattern LEGACY_FILE = Pattern
+			.compile(".*_[0-9a-f]{40}(\\.[^.]*)?"); //$NON-NLS-1$
+
+	private volatile boolean active = true;
+
+	/**
+	 * Creates the janitor
+	 */
+	public RevisionCacheJanitor() {
+		super("Cleaning up Beyond Compare revision cache"); //$NON-NLS-1$
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		try {
+			RevisionCache cache = BeyondCompareUtil.getRevisionCache();
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			cache.evict(BeyondCompareEgitPreferencePage.getCacheMaxBytes(),
+					BeyondCompareEgitPreferencePage.getCacheMaxEntries(),
+					MIN_IDLE);
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			deleteLegacyFiles(BeyondCompareUtil.getBCTempDirectory());
+			deleteBatchDirectories(BeyondCompareUtil.getBatchRootDirectory());
+			cache.saveAccessTimes();
+		} catch (IOException e) {
+			Activator.logError("Error while cleaning up the revision cache", e); //$NON-NLS-1$
+		} finally {
+			if (active)
+				schedule(INTERVAL);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Stops rescheduling and cancels a pending run.
+	 */
+	public void shutdown() {
+		active = false;
+		cancel();
+	}
+
+	private static void deleteBatchDirectories(File batchRoot) {
+		File[] dirs = batchRoot.listFiles();
+		if (dirs == null)
+			return;
+		long idleSince = System.currentTimeMillis() - MIN_IDLE;
+		for (File dir : dirs)
+			if (dir.isDirectory() && dir.lastModified() < idleSince)
+				deleteTree(dir);
+	}
+
+	private static void deleteTree(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				deleteTree(child);
+		file.delete();
+	}
+
+	private static void deleteLegacyFiles(File tempDir) {
+		File[] files = tempDir.listFiles();
+		if (files == null)
+			return;
+		long idleSince = System.currentTimeMillis() - MIN_IDLE;
+		for (File file : files)
+			if (file.isFile() && file.lastModified() < idleSince
+					&& LEGACY_FILE.matcher(file.getName()).matches())
+				file.delete();
+	}
+}
@@ -10,6 +10,42 @@ public class UIText extends NLS {
 	
 	public static String BeyondCompareEgit_ExecutablePath;
 	
+	public static String BeyondCompareEgit_RevisionEncoding;
+	
+	public static String BeyondCompareEgit_StreamThreshold;
+	
+	public static String BeyondCompareEgit_CacheMaxSize;
+	
+	public static String BeyondCompareEgit_CacheMaxEntries;
+	
+	public static String BeyondCompareEgit_PrefetchHeadRevision;
+	
+	public static String BeyondCompareEgit_LinkUnchangedFiles;
+	
+	public static String BeyondCompareEgit_ApplyCheckoutFilters;
+	
+	public static String BeyondCompareLauncher_LaunchFailed;
+	
+	public static String BeyondCompareOperation_TaskName;
+	
+	public static String BeyondCompareOperation_Identical;
+	
+	public static String BeyondCompareOperation_AllIdentical;
+	
+	public static String BeyondCompareOperation_CommitsIdentical;
+	
+	public static String CompareCommitsActionHandler_onError;
+	
+	public static String CompareCommitsActionHandler_OldTitle;
+	
+	public static String CompareCommitsActionHandler_OldMessage;
+	
+	public static String CompareCommitsActionHandler_NewTitle;
+	
+	public static String CompareCommitsActionHandler_NewMessage;
+	
+	public static String CompareWithCommitActionHandler_onError;
+	
 	public static String CompareWithHeadActionHandler_NoHeadTitle;
 			
 	public static String CompareWithHeadActionHandler_NoHeadMessage;
@@ -18,6 +54,40 @@ public class UIText extends NLS {
 	
 	public static String CompareWithIndexActionHandler_onError;
 	
+	public static String CompareWithIndexActionHandler_label;
+	
+	public static String CompareWithRefActionHandler_onError;
+	
+	public static String CompareWithRefActionHandler_unresolved;
+	
+	public static String HistoryNavigator_NoOlderRevision;
+	
+	public static String HistoryNavigator_NoNewerRevision;
+	
+	public static String HistoryNavigator_RevisionTitle;
+	
+	public static String HistoryNavigator_onError;
+	
+	public static String ConflictMerge_onError;
+	
+	public static String ConflictMerge_NoConflicts;
+	
+	public static String ConflictMerge_Skipped;
+	
+	public static String ConflictMerge_AllResolved;
+	
+	public static String ConflictMerge_NotSaved;
+	
+	public static String ConflictMerge_Staging;
+	
+	public static String ConflictMerge_StageFailed;
+	
+	public static String ConflictMerge_OursTitle;
+	
+	public static String ConflictMerge_TheirsTitle;
+	
+	public static String ConflictMerge_BaseTitle;
+	
 	static {
 		initializeMessages(BUNDLE_NAME, UIText.class);
 	}
@@ -1,13 +1,19 @@
 package org.eclipse.egit.bc.preferences;
 
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+
 import org.eclipse.core.runtime.preferences.DefaultScope;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.egit.bc.Activator;
 import org.eclipse.egit.bc.UIText;
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.FileFieldEditor;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
+import org.eclipse.jface.preference.StringFieldEditor;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 import org.eclipse.ui.preferences.ScopedPreferenceStore;
@@ -17,6 +23,16 @@ public class BeyondCompareEgitPreferencePage extends FieldEditorPreferencePage
 		implements IWorkbenchPreferencePage {
 	private static final String SETTING_BEYONDCOMPARE_EXECUTABLE_PATH = "egit.bc.BeyondCompareExecutableLocation";
 	private static final String DEFAULT_BEYONDCOMPARE_EXECUTABLE_PATH = "C:/Program Files (x86)/Beyond Compare 3/BComp.exe";
+	private static final String SETTING_REVISION_ENCODING = "egit.bc.RevisionEncoding";
+	private static final String SETTING_STREAM_THRESHOLD = "egit.bc.StreamThresholdKB";
+	private static final int DEFAULT_STREAM_THRESHOLD = 1024;
+	private static final String SETTING_CACHE_MAX_SIZE = "egit.bc.CacheMaxSizeMB";
+	private static final int DEFAULT_CACHE_MAX_SIZE = 512;
+	private static final String SETTING_CACHE_MAX_ENTRIES = "egit.bc.CacheMaxEntries";
+	private static final int DEFAULT_CACHE_MAX_ENTRIES = 5000;
+	private static final String SETTING_PREFETCH_HEAD_REVISION = "egit.bc.PrefetchHeadRevision";
+	private static final String SETTING_LINK_UNCHANGED_FILES = "egit.bc.LinkUnchangedFiles";
+	private static final String SETTING_APPLY_CHECKOUT_FILTERS = "egit.bc.ApplyCheckoutFilters";
 	
 	
 	public BeyondCompareEgitPreferencePage() {
@@ -33,6 +49,40 @@ public class BeyondCompareEgitPreferencePage extends FieldEditorPreferencePage
 				SETTING_BEYONDCOMPARE_EXECUTABLE_PATH,
 				UIText.BeyondCompareEgit_ExecutablePath,
 				getFieldEditorParent()));
+		addField(new StringFieldEditor(
+				SETTING_REVISION_ENCODING,
+				UIText.BeyondCompareEgit_RevisionEncoding,
+				getFieldEditorParent()));
+		IntegerFieldEditor streamThreshold = new IntegerFieldEditor(
+				SETTING_STREAM_THRESHOLD,
+				UIText.BeyondCompareEgit_StreamThreshold,
+				getFieldEditorParent());
+		streamThreshold.setValidRange(0, Integer.MAX_VALUE);
+		addField(streamThreshold);
+		IntegerFieldEditor cacheMaxSize = new IntegerFieldEditor(
+				SETTING_CACHE_MAX_SIZE,
+				UIText.BeyondCompareEgit_CacheMaxSize,
+				getFieldEditorParent());
+		cacheMaxSize.setValidRange(1, Integer.MAX_VALUE);
+		addField(cacheMaxSize);
+		IntegerFieldEditor cacheMaxEntries = new IntegerFieldEditor(
+				SETTING_CACHE_MAX_ENTRIES,
+				UIText.BeyondCompareEgit_CacheMaxEntries,
+				getFieldEditorParent());
+		cacheMaxEntries.setValidRange(1, Integer.MAX_VALUE);
+		addField(cacheMaxEntries);
+		addField(new BooleanFieldEditor(
+				SETTING_PREFETCH_HEAD_REVISION,
+				UIText.BeyondCompareEgit_PrefetchHeadRevision,
+				getFieldEditorParent()));
+		addField(new BooleanFieldEditor(
+				SETTING_LINK_UNCHANGED_FILES,
+				UIText.BeyondCompareEgit_LinkUnchangedFiles,
+				getFieldEditorParent()));
+		addField(new BooleanFieldEditor(
+				SETTING_APPLY_CHECKOUT_FILTERS,
+				UIText.BeyondCompareEgit_ApplyCheckoutFilters,
+				getFieldEditorParent()));
 	}
 
 	public void init(IWorkbench workbench) {
@@ -41,13 +91,100 @@ public class BeyondCompareEgitPreferencePage extends FieldEditorPreferencePage
 	
 	public static void initializeDefaultPreferences(IPreferenceStore store) {
 		store.setDefault(SETTING_BEYONDCOMPARE_EXECUTABLE_PATH, DEFAULT_BEYONDCOMPARE_EXECUTABLE_PATH);
+		store.setDefault(SETTING_REVISION_ENCODING, "");
+		store.setDefault(SETTING_STREAM_THRESHOLD, DEFAULT_STREAM_THRESHOLD);
+		store.setDefault(SETTING_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE);
+		store.setDefault(SETTING_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES);
+		store.setDefault(SETTING_PREFETCH_HEAD_REVISION, false);
+		store.setDefault(SETTING_LINK_UNCHANGED_FILES, true);
+		store.setDefault(SETTING_APPLY_CHECKOUT_FILTERS, true);
 	}
 	
 	public static String getBeyondCompareExecutablePath() {
+		return getPreference(SETTING_BEYONDCOMPARE_EXECUTABLE_PATH);
+	}
+	
+	/**
+	 * @return the encoding revisions are transcoded to, or <code>null</code>
+	 *         if revisions are written as raw bytes
+	 */
+	public static String getRevisionEncoding() {
+		String encoding = getPreference(SETTING_REVISION_ENCODING);
+		if (encoding == null || encoding.trim().length() == 0)
+			return null;
+		encoding = encoding.trim();
+		try {
+			if (Charset.isSupported(encoding))
+				return encoding;
+		} catch (IllegalCharsetNameException e) {
+			// fall through
+		}
+		Activator.logError("Unsupported revision encoding: " + encoding, null);
+		return null;
+	}
+	
+	/**
+	 * @return size in bytes above which revisions are streamed instead of
+	 *         being loaded into the heap
+	 */
+	public static long getStreamThreshold() {
+		return getIntPreference(SETTING_STREAM_THRESHOLD, DEFAULT_STREAM_THRESHOLD) * 1024L;
+	}
+	
+	/**
+	 * @return maximum size in bytes of the revision cache
+	 */
+	public static long getCacheMaxBytes() {
+		return getIntPreference(SETTING_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE) * 1024L * 1024L;
+	}
+	
+	/**
+	 * @return maximum number of revisions kept in the revision cache
+	 */
+	public static int getCacheMaxEntries() {
+		return getIntPreference(SETTING_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES);
+	}
+	
+	/**
+	 * @return whether the HEAD revision of a selected file is prepared in
+	 *         the background
+	 */
+	public static boolean isPrefetchHeadRevision() {
+		return Boolean.parseBoolean(getPreference(SETTING_PREFETCH_HEAD_REVISION));
+	}
+	
+	/**
+	 * @return whether folder compares show unchanged files as links
+	 */
+	public static boolean isLinkUnchangedFiles() {
+		String value = getPreference(SETTING_LINK_UNCHANGED_FILES);
+		return value == null || Boolean.parseBoolean(value);
+	}
+	
+	/**
+	 * @return whether revisions are written as Git checks them out, with
+	 *         Git LFS objects, smudge filters and line ending conversion
+	 */
+	public static boolean isApplyCheckoutFilters() {
+		String value = getPreference(SETTING_APPLY_CHECKOUT_FILTERS);
+		return value == null || Boolean.parseBoolean(value);
+	}
+	
+	private static int getIntPreference(String key, int defaultValue) {
+		String value = getPreference(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
+	private static String getPreference(String key) {
 		IEclipsePreferences d = DefaultScope.INSTANCE.getNode(Activator.getPluginId());
 		IEclipsePreferences p = InstanceScope.INSTANCE.getNode(Activator.getPluginId());
-		String beyondCompareExecutablePath = p.get(SETTING_BEYONDCOMPARE_EXECUTABLE_PATH, d.get(SETTING_BEYONDCOMPARE_EXECUTABLE_PATH, null));
-		return beyondCompareExecutablePath;
+		return p.get(key, d.get(key, null));
 	}
 	
 }